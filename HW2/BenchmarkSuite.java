@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import model.AdaptiveRLESequence;
+import model.PersistentRLESequence;
+import model.RLEMetrics;
+import model.RLESequence;
+import model.RLESequenceV1;
+import model.RLESequenceV2;
+import model.RLESequenceV3;
+import model.RopeRLESequence;
+
+/**
+ * Measures throughput and allocation of every RLESequence implementation, for every benchmarked operation, across
+ * several shapes of input
+ *
+ * Each case is warmed up and then run for a fixed time budget on the current thread. Throughput is reported in
+ * operations per second and allocation in bytes per operation, as counted by the JVM for the benchmarking thread
+ * (and reported as 0 on a JVM that does not count them).
+ * Any setup that an operation needs (such as fresh copies for destructive operations) happens outside of the
+ * measured window.
+ *
+ * To benchmark a new implementation, register it in IMPLEMENTATIONS. Passing arguments only runs the cases whose
+ * name (implementation, shape and operation) contains every argument, e.g. "RLESequenceV3 GET_AT".
+ */
+public class BenchmarkSuite {
+	private static final int SCANLINE_LENGTH = 16384;
+	private static final int PREPARED_COPIES = 256;
+	private static final long WARM_UP_NANOS = 100000000L;
+	private static final long MEASURE_NANOS = 300000000L;
+	private static final long SEED = 42;
+
+	private static final Map<String, Function<List<Integer>, RLESequence<Integer, Integer, ?>>> IMPLEMENTATIONS = new LinkedHashMap<String, Function<List<Integer>, RLESequence<Integer, Integer, ?>>>();
+	static {
+		IMPLEMENTATIONS.put("RLESequenceV1", RLESequenceV1::new);
+		IMPLEMENTATIONS.put("RLESequenceV2", RLESequenceV2::new);
+		IMPLEMENTATIONS.put("RLESequenceV3", RLESequenceV3::new);
+		IMPLEMENTATIONS.put("PersistentRLESequence", PersistentRLESequence::new);
+		IMPLEMENTATIONS.put("AdaptiveRLESequence", AdaptiveRLESequence::new);
+		IMPLEMENTATIONS.put("RopeRLESequence", RopeRLESequence::new);
+	}
+
+	public static void main(String... filters) {
+		System.out.println(String.format("%-22s %-12s %-20s %16s %14s", "implementation", "shape", "operation", "ops/s", "bytes/op"));
+		for (Map.Entry<String, Function<List<Integer>, RLESequence<Integer, Integer, ?>>> implementation : IMPLEMENTATIONS.entrySet()) {
+			for (InputShape shape : InputShape.values()) {
+				List<Integer> pixels = shape.generate(SCANLINE_LENGTH, new Random(SEED));
+				for (Operation operation : Operation.values()) {
+					String caseName = implementation.getKey() + " " + shape.name() + " " + operation.name();
+					if (matchesAll(caseName, filters)) {
+						runCase(implementation.getKey(), implementation.getValue(), shape, pixels, operation);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean matchesAll(String caseName, String[] filters) {
+		for (String filter : filters) {
+			if (!caseName.contains(filter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void runCase(String implementationName, Function<List<Integer>, RLESequence<Integer, Integer, ?>> factory,
+			InputShape shape, List<Integer> pixels, Operation operation) {
+		RLESequence<Integer, Integer, ?> base = factory.apply(pixels);
+		Random random = new Random(SEED);
+		measure(base, operation, random, WARM_UP_NANOS);
+		long[] operationsAndBytes = measure(base, operation, random, MEASURE_NANOS);
+		System.out.println(String.format("%-22s %-12s %-20s %16.0f %14.1f", implementationName, shape.name(), operation.name(),
+				operationsAndBytes[0] * 1e9 / operationsAndBytes[2], (double)operationsAndBytes[1] / operationsAndBytes[0]));
+	}
+
+	// Returns the number of operations run, the bytes allocated while running them, and the nanoseconds they took
+	private static long[] measure(RLESequence<Integer, Integer, ?> base, Operation operation, Random random, long budgetNanos) {
+		long operations = 0;
+		long bytes = 0;
+		long nanos = 0;
+		while (nanos < budgetNanos) {
+			List<RLESequence<Integer, Integer, ?>> targets = prepareTargets(base, operation);
+			long startBytes = RLEMetrics.allocatedBytes();
+			long start = System.nanoTime();
+			for (RLESequence<Integer, Integer, ?> target : targets) {
+				operation.run(target, random);
+			}
+			nanos += System.nanoTime() - start;
+			bytes += RLEMetrics.allocatedBytes() - startBytes;
+			operations += targets.size();
+		}
+		return new long[] {operations, bytes, nanos};
+	}
+
+	// Destructive operations each get their own fresh copy, while every other operation reuses the same sequence
+	private static List<RLESequence<Integer, Integer, ?>> prepareTargets(RLESequence<Integer, Integer, ?> base, Operation operation) {
+		List<RLESequence<Integer, Integer, ?>> targets = new ArrayList<RLESequence<Integer, Integer, ?>>(PREPARED_COPIES);
+		for (int i = 0; i < PREPARED_COPIES; i++) {
+			targets.add(operation.isDestructive() ? base.copy() : base);
+		}
+		return targets;
+	}
+
+	private enum InputShape {
+		NOISE {
+			List<Integer> generate(int length, Random random) {
+				List<Integer> pixels = new ArrayList<Integer>(length);
+				for (int i = 0; i < length; i++) {
+					pixels.add(random.nextInt(256));
+				}
+				return pixels;
+			}
+		},
+		LONG_RUNS {
+			List<Integer> generate(int length, Random random) {
+				return runsOf(length, random, 512, 2048);
+			}
+		},
+		ALTERNATING {
+			List<Integer> generate(int length, Random random) {
+				List<Integer> pixels = new ArrayList<Integer>(length);
+				for (int i = 0; i < length; i++) {
+					pixels.add(i % 2 == 0 ? 0 : 255);
+				}
+				return pixels;
+			}
+		},
+		// Resembles a scanned document: white paper, with short dark strokes that have gray anti-aliased edges
+		SCANLINE {
+			List<Integer> generate(int length, Random random) {
+				List<Integer> pixels = new ArrayList<Integer>(length);
+				while (pixels.size() < length) {
+					addRun(pixels, length, 255, 20 + random.nextInt(200));
+					addRun(pixels, length, 128 + random.nextInt(64), 1);
+					addRun(pixels, length, random.nextInt(16), 2 + random.nextInt(6));
+					addRun(pixels, length, 128 + random.nextInt(64), 1);
+				}
+				return pixels;
+			}
+		};
+
+		abstract List<Integer> generate(int length, Random random);
+
+		private static List<Integer> runsOf(int length, Random random, int minimumRunLength, int maximumRunLength) {
+			List<Integer> pixels = new ArrayList<Integer>(length);
+			while (pixels.size() < length) {
+				addRun(pixels, length, random.nextInt(256), minimumRunLength + random.nextInt(maximumRunLength - minimumRunLength));
+			}
+			return pixels;
+		}
+
+		private static void addRun(List<Integer> pixels, int length, int pixel, int count) {
+			for (int i = 0; i < count && pixels.size() < length; i++) {
+				pixels.add(pixel);
+			}
+		}
+	}
+
+	private enum Operation {
+		GET_AT(false) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				sequence.getAt(random.nextInt(sequence.length()));
+			}
+		},
+		INSERT(true) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				sequence.insert(random.nextInt(256), random.nextInt(sequence.length()));
+			}
+		},
+		REPLACE_ALL(true) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				int oldPixel = sequence.getAt(random.nextInt(sequence.length()));
+				// Always replaces with a different pixel, so that every call actually rewrites runs
+				sequence.replaceAll(oldPixel, (oldPixel + 1 + random.nextInt(255)) % 256);
+			}
+		},
+		REMOVE_ALL(true) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				sequence.removeAll(sequence.getAt(random.nextInt(sequence.length())));
+			}
+		},
+		CONTAINS_SUBSEQUENCE(false) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				int start = random.nextInt(sequence.length() - PATTERN_LENGTH);
+				sequence.containsSubsequence(sequence.subsequenceBetween(start, start + PATTERN_LENGTH));
+			}
+		},
+		ADD_TO_TAIL(true) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				sequence.addToTail(sequence.subsequenceTo(PATTERN_LENGTH));
+			}
+		},
+		COPY(false) {
+			void run(RLESequence<Integer, Integer, ?> sequence, Random random) {
+				sequence.copy();
+			}
+		};
+
+		Operation(boolean inIsDestructive) {
+			isDestructive = inIsDestructive;
+		}
+
+		abstract void run(RLESequence<Integer, Integer, ?> sequence, Random random);
+
+		boolean isDestructive() {
+			return isDestructive;
+		}
+
+		private final boolean isDestructive;
+
+		private static final int PATTERN_LENGTH = 64;
+	}
+}
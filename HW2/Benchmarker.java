@@ -0,0 +1,463 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import func.RLEConverter;
+import model.ConcurrentRLESequence;
+import model.FieldCodePair;
+import model.MeteredRLESequence;
+import model.PersistentRLESequence;
+import model.RLEMetrics;
+import model.RLESequenceV1;
+import model.RLESequenceV2;
+import model.RLESequenceV3;
+import model.RopeRLESequence;
+
+/**
+ * Times the RLESequence implementations against each other on large, highly repetitive scanlines
+ *
+ * Run it directly (not through Runner) as it takes noticeably longer than the happy case tests.
+ */
+public class Benchmarker {
+	private static final int SCANLINE_LENGTH = 4000000;
+	private static final int RUN_LENGTH = 4096;
+	private static final int ROUND_TRIP_OPERATIONS = 20;
+	private static final int NATIVE_OPERATIONS = 200000;
+	private static final int NATIVE_EDITS = 10000;
+	private static final int MEMORY_SCANLINE_LENGTH = 1000000;
+	private static final int FRAME_LENGTH = 8000000;
+	private static final int TIMED_RUNS = 5;
+	private static final int TILES = 2000;
+	private static final int TILE_LENGTH = 512;
+	private static final int CANVAS_LENGTH = 1 << 20;
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+	private static final int PAINTS = 100000;
+	private static final int STRESS_ROUNDS = 2000;
+	private static final long SEED = 42;
+
+	public static void main(String... args) {
+		Integer[] scanline = buildRepetitiveScanline(SCANLINE_LENGTH, RUN_LENGTH);
+		System.out.println("Scanline of " + SCANLINE_LENGTH + " pixels in runs of " + RUN_LENGTH + " pixels:");
+		benchmarkGetAt(scanline);
+		benchmarkReplaceAt(scanline);
+		benchmarkInsert(scanline);
+		benchmarkLength(scanline);
+		benchmarkBatchEdit(scanline);
+
+		System.out.println("Heap retained per pixel:");
+		benchmarkMemory("repetitive scanline", scanline);
+		benchmarkMemory("noisy scanline", buildNoisyScanline(MEMORY_SCANLINE_LENGTH));
+
+		System.out.println("Encoding a frame of " + FRAME_LENGTH + " pixels by pool parallelism:");
+		benchmarkParallelEncoding(buildFrame(FRAME_LENGTH));
+
+		System.out.println("Decoding a frame of " + FRAME_LENGTH + " pixels:");
+		benchmarkDecoding("short runs", buildFrame(FRAME_LENGTH));
+		benchmarkDecoding("long runs", buildRepetitiveScanline(FRAME_LENGTH, RUN_LENGTH));
+
+		System.out.println("Stitching " + TILES + " tiles of " + TILE_LENGTH + " pixels, each added to the head:");
+		benchmarkStitching();
+
+		System.out.println("Painting disjoint regions of " + CANVAS_LENGTH + " pixels from several threads (" + Runtime.getRuntime().availableProcessors() + " cores):");
+		stressConcurrentSequence();
+		for (int threadCount : THREAD_COUNTS) {
+			benchmarkConcurrentPainting(threadCount);
+		}
+
+		System.out.println("Metrics of an editing session on a RLESequenceV2 of " + MEMORY_SCANLINE_LENGTH + " pixels:");
+		reportMetrics(buildRepetitiveScanline(MEMORY_SCANLINE_LENGTH, RUN_LENGTH));
+	}
+
+	private static Integer[] buildRepetitiveScanline(int length, int runLength) {
+		Integer[] scanline = new Integer[length];
+		for (int i = 0; i < length; i++) {
+			scanline[i] = (i / runLength) % 256;
+		}
+		return scanline;
+	}
+
+	private static Integer[] buildNoisyScanline(int length) {
+		Random random = new Random(SEED);
+		Integer[] scanline = new Integer[length];
+		for (int i = 0; i < length; i++) {
+			scanline[i] = random.nextInt(256);
+		}
+		return scanline;
+	}
+
+	// Runs of random length from 1 to 64 pixels, with pixels below 128 so that every boxed pixel is a shared cached Integer
+	private static Integer[] buildFrame(int length) {
+		Random random = new Random(SEED);
+		Integer[] frame = new Integer[length];
+		int i = 0;
+		while (i < length) {
+			Integer pixel = random.nextInt(128);
+			int runEnd = Math.min(length, i + 1 + random.nextInt(64));
+			while (i < runEnd) {
+				frame[i++] = pixel;
+			}
+		}
+		return frame;
+	}
+
+	private static void benchmarkParallelEncoding(Integer[] frame) {
+		List<FieldCodePair<Integer>> expectedPairs = RLEConverter.toSpace(frame);
+		long sequentialNanos = bestOf(() -> RLEConverter.toSpace(frame));
+		System.out.println(String.format("%-12s %8.1f ms", "sequential", sequentialNanos / 1e6));
+		for (int parallelism = 1; parallelism <= Runtime.getRuntime().availableProcessors(); parallelism *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			List<FieldCodePair<Integer>> parallelPairs = RLEConverter.toSpaceInParallel(frame, pool);
+			if (!haveSameRuns(parallelPairs, expectedPairs)) {
+				throw new IllegalStateException("The parallel encoder disagrees with the sequential encoder");
+			}
+			long parallelNanos = bestOf(() -> RLEConverter.toSpaceInParallel(frame, pool));
+			pool.shutdown();
+			System.out.println(String.format("%-12s %8.1f ms (%.1fx the sequential encoder)",
+					parallelism + " thread(s)", parallelNanos / 1e6, (double)sequentialNanos / parallelNanos));
+		}
+	}
+
+	private static void benchmarkDecoding(String shape, Integer[] frame) {
+		List<FieldCodePair<Integer>> pairs = RLEConverter.toSpace(frame);
+		byte[] buffer = new byte[frame.length];
+		RLEConverter.decodeInto(pairs, buffer);
+		for (int i = 0; i < frame.length; i++) {
+			if ((buffer[i] & 0xFF) != frame[i]) {
+				throw new IllegalStateException("#decodeInto disagrees with the frame at index " + i);
+			}
+		}
+		long listNanos = bestOf(() -> RLEConverter.toAPI(pairs));
+		long bufferNanos = bestOf(() -> RLEConverter.decodeInto(pairs, buffer));
+		System.out.println(String.format("%-12s #toAPI: %8.1f ms, #decodeInto: %8.1f ms (%.1fx faster, %.0f MB/s)", shape,
+				listNanos / 1e6, bufferNanos / 1e6, (double)listNanos / bufferNanos, frame.length / (bufferNanos / 1e3)));
+	}
+
+	private static boolean haveSameRuns(List<FieldCodePair<Integer>> pairs, List<FieldCodePair<Integer>> otherPairs) {
+		if (pairs.size() != otherPairs.size()) {
+			return false;
+		}
+		for (int i = 0; i < pairs.size(); i++) {
+			if (pairs.get(i).getCount() != otherPairs.get(i).getCount()
+					|| !pairs.get(i).getElement().equals(otherPairs.get(i).getElement())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// The fastest of several timed runs, which filters out warm-up and garbage collection noise
+	private static long bestOf(Runnable operation) {
+		long bestNanos = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_RUNS; i++) {
+			long start = System.nanoTime();
+			operation.run();
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+		}
+		return bestNanos;
+	}
+
+	private static void benchmarkMemory(String shape, Integer[] scanline) {
+		Integer[] pixels = Arrays.copyOf(scanline, MEMORY_SCANLINE_LENGTH);
+		long before = usedHeap();
+		RLESequenceV1 sequenceV1 = new RLESequenceV1(pixels);
+		long afterV1 = usedHeap();
+		RLESequenceV2 sequenceV2 = new RLESequenceV2(pixels);
+		long afterV2 = usedHeap();
+		RLESequenceV3 sequenceV3 = new RLESequenceV3(pixels);
+		// Forces the lazily built run index into existence, as it would be after the first lookup
+		sequenceV3.getAt(pixels.length - 1);
+		long afterV3 = usedHeap();
+		System.out.println(String.format("%-20s RLESequenceV1: %6.2f B/pixel, RLESequenceV2: %6.2f B/pixel, RLESequenceV3: %6.2f B/pixel",
+				shape, (double)(afterV1 - before) / pixels.length, (double)(afterV2 - afterV1) / pixels.length,
+				(double)(afterV3 - afterV2) / pixels.length));
+		// Keeps every sequence reachable until all of them have been measured
+		sequenceV1.length();
+		sequenceV2.length();
+		sequenceV3.length();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void benchmarkGetAt(Integer[] scanline) {
+		List<FieldCodePair<Integer>> pairs = RLEConverter.toSpace(scanline);
+		RLESequenceV2 sequence = new RLESequenceV2(scanline);
+		Random random = new Random(SEED);
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUND_TRIP_OPERATIONS; i++) {
+			new RLESequenceV1(RLEConverter.toAPI(pairs)).getAt(random.nextInt(scanline.length));
+		}
+		long roundTripNanos = System.nanoTime() - start;
+		random = new Random(SEED);
+		start = System.nanoTime();
+		for (int i = 0; i < NATIVE_OPERATIONS; i++) {
+			sequence.getAt(random.nextInt(scanline.length));
+		}
+		report("#getAt", roundTripNanos, System.nanoTime() - start, NATIVE_OPERATIONS);
+	}
+
+	private static void benchmarkReplaceAt(Integer[] scanline) {
+		List<FieldCodePair<Integer>> pairs = RLEConverter.toSpace(scanline);
+		RLESequenceV2 sequence = new RLESequenceV2(scanline);
+		Random random = new Random(SEED);
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUND_TRIP_OPERATIONS; i++) {
+			RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(pairs));
+			tempSequence.replaceAt(random.nextInt(scanline.length), random.nextInt(256));
+			pairs = RLEConverter.toSpace(tempSequence.getAll());
+		}
+		long roundTripNanos = System.nanoTime() - start;
+		random = new Random(SEED);
+		start = System.nanoTime();
+		for (int i = 0; i < NATIVE_EDITS; i++) {
+			sequence.replaceAt(random.nextInt(scanline.length), random.nextInt(256));
+		}
+		report("#replaceAt", roundTripNanos, System.nanoTime() - start, NATIVE_EDITS);
+	}
+
+	private static void benchmarkInsert(Integer[] scanline) {
+		List<FieldCodePair<Integer>> pairs = RLEConverter.toSpace(scanline);
+		RLESequenceV2 sequence = new RLESequenceV2(scanline);
+		Random random = new Random(SEED);
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUND_TRIP_OPERATIONS; i++) {
+			RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(pairs));
+			tempSequence.insert(random.nextInt(256), random.nextInt(scanline.length));
+			pairs = RLEConverter.toSpace(tempSequence.getAll());
+		}
+		long roundTripNanos = System.nanoTime() - start;
+		random = new Random(SEED);
+		start = System.nanoTime();
+		for (int i = 0; i < NATIVE_EDITS; i++) {
+			sequence.insert(random.nextInt(256), random.nextInt(scanline.length));
+		}
+		report("#insert", roundTripNanos, System.nanoTime() - start, NATIVE_EDITS);
+	}
+
+	private static void benchmarkLength(Integer[] scanline) {
+		List<FieldCodePair<Integer>> pairs = RLEConverter.toSpace(scanline);
+		RLESequenceV2 sequence = new RLESequenceV2(scanline);
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUND_TRIP_OPERATIONS; i++) {
+			new RLESequenceV1(RLEConverter.toAPI(pairs)).length();
+		}
+		long roundTripNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < NATIVE_OPERATIONS; i++) {
+			sequence.length();
+		}
+		report("#length", roundTripNanos, System.nanoTime() - start, NATIVE_OPERATIONS);
+	}
+
+	// Brush strokes applied one #replaceAt at a time versus all of them in one EditBatch
+	private static void benchmarkBatchEdit(Integer[] scanline) {
+		RLESequenceV2 sequence = new RLESequenceV2(scanline);
+		RLESequenceV2 batchedSequence = new RLESequenceV2(scanline);
+		Random random = new Random(SEED);
+		long start = System.nanoTime();
+		for (int i = 0; i < NATIVE_EDITS; i++) {
+			sequence.replaceAt(random.nextInt(scanline.length), random.nextInt(256));
+		}
+		long oneByOneNanos = System.nanoTime() - start;
+		Random batchRandom = new Random(SEED);
+		start = System.nanoTime();
+		batchedSequence.edit(batch -> {
+			for (int i = 0; i < NATIVE_EDITS; i++) {
+				batch.replaceAt(batchRandom.nextInt(scanline.length), batchRandom.nextInt(256));
+			}
+		});
+		long batchNanos = System.nanoTime() - start;
+		if (!sequence.equals(batchedSequence)) {
+			throw new IllegalStateException("The batch disagrees with the edits applied one by one");
+		}
+		System.out.println(String.format("%-12s %d edits one by one: %10.1f ms, in one batch: %10.1f ms (%.1fx faster)",
+				"#edit", NATIVE_EDITS, oneByOneNanos / 1e6, batchNanos / 1e6, (double)oneByOneNanos / batchNanos));
+	}
+
+	private static void benchmarkStitching() {
+		Random random = new Random(SEED);
+		RLESequenceV3[] tiles = new RLESequenceV3[TILES];
+		for (int i = 0; i < TILES; i++) {
+			tiles[i] = new RLESequenceV3(buildRepetitiveScanline(TILE_LENGTH, 1 + random.nextInt(TILE_LENGTH)));
+		}
+		RLESequenceV1 listSequence = new RLESequenceV1();
+		long start = System.nanoTime();
+		for (RLESequenceV3 tile : tiles) {
+			listSequence.addToHead(tile);
+		}
+		long listNanos = System.nanoTime() - start;
+		RLESequenceV3 arraySequence = new RLESequenceV3();
+		start = System.nanoTime();
+		for (RLESequenceV3 tile : tiles) {
+			arraySequence.addToHead(tile);
+		}
+		long arrayNanos = System.nanoTime() - start;
+		RopeRLESequence ropeSequence = new RopeRLESequence();
+		start = System.nanoTime();
+		for (RLESequenceV3 tile : tiles) {
+			ropeSequence.addToHead(tile);
+		}
+		// Reading a pixel joins the segments, so the timing covers the whole assembly
+		ropeSequence.getAt(0);
+		long ropeNanos = System.nanoTime() - start;
+		if (!ropeSequence.getAll().equals(arraySequence.getAll()) || !listSequence.getAll().equals(arraySequence.getAll())) {
+			throw new IllegalStateException("The stitched sequences disagree");
+		}
+		System.out.println(String.format("%-12s RLESequenceV1: %8.1f ms, RLESequenceV3: %8.1f ms, RopeRLESequence: %8.1f ms",
+				"#addToHead", listNanos / 1e6, arrayNanos / 1e6, ropeNanos / 1e6));
+	}
+
+	/**
+	 * Each painter repeatedly fills its whole region, spread over many segments, while another thread grows and shrinks
+	 * the sequence and a reader checks that every snapshot shows each region in a single color. A torn fill, a torn
+	 * snapshot or a lost write makes this throw.
+	 */
+	private static void stressConcurrentSequence() {
+		int painterCount = THREAD_COUNTS[THREAD_COUNTS.length - 1];
+		int regionLength = CANVAS_LENGTH / painterCount;
+		ConcurrentRLESequence sequence = new ConcurrentRLESequence(new byte[CANVAS_LENGTH]);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] painters = new Thread[painterCount];
+		for (int i = 0; i < painterCount; i++) {
+			int region = i;
+			painters[i] = new Thread(() -> {
+				for (int round = 1; round <= STRESS_ROUNDS; round++) {
+					sequence.fillBetween(region * regionLength, (region + 1) * regionLength, 1 + (region + round) % 255);
+				}
+			});
+		}
+		Thread resizer = new Thread(() -> {
+			for (int round = 0; round < STRESS_ROUNDS; round++) {
+				sequence.append(0);
+				sequence.removeLast(0);
+			}
+		});
+		Thread reader = new Thread(() -> {
+			while (painters[painterCount - 1].isAlive()) {
+				PersistentRLESequence snapshot = sequence.snapshot();
+				int length = snapshot.length();
+				if (length != CANVAS_LENGTH && length != CANVAS_LENGTH + 1) {
+					throw new IllegalStateException("A snapshot of " + length + " pixels");
+				}
+				for (int region = 0; region < painterCount; region++) {
+					if (snapshot.subsequenceBetween(region * regionLength, (region + 1) * regionLength).runCount() != 1) {
+						throw new IllegalStateException("Region " + region + " was torn");
+					}
+				}
+			}
+		});
+		Thread[] threads = Arrays.copyOf(painters, painterCount + 2);
+		threads[painterCount] = resizer;
+		threads[painterCount + 1] = reader;
+		for (Thread thread : threads) {
+			thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+			thread.start();
+		}
+		joinAll(threads);
+		if (failure.get() != null) {
+			throw new IllegalStateException("The stress check failed", failure.get());
+		}
+		for (int region = 0; region < painterCount; region++) {
+			int expected = 1 + (region + STRESS_ROUNDS) % 255;
+			if (sequence.getAtInt(region * regionLength) != expected || sequence.getAtInt((region + 1) * regionLength - 1) != expected) {
+				throw new IllegalStateException("Region " + region + " lost its last fill");
+			}
+		}
+		if (sequence.length() != CANVAS_LENGTH) {
+			throw new IllegalStateException("The sequence ended with " + sequence.length() + " pixels");
+		}
+		System.out.println(String.format("%-12s %d painters, a resizer and a reader over %d rounds: consistent", "stress", painterCount, STRESS_ROUNDS));
+	}
+
+	// Splits a fixed number of single pixel writes between the threads, each writing only within its own region
+	private static void benchmarkConcurrentPainting(int threadCount) {
+		int regionLength = CANVAS_LENGTH / threadCount;
+		ConcurrentRLESequence concurrentSequence = new ConcurrentRLESequence(new byte[CANVAS_LENGTH]);
+		long concurrentNanos = timePainters(threadCount, (region, random) ->
+				concurrentSequence.replaceAt(region * regionLength + random.nextInt(regionLength), random.nextInt(256)));
+		// The same storage behind a single lock, so that only the locking differs
+		PersistentRLESequence lockedSequence = new PersistentRLESequence(new byte[CANVAS_LENGTH]);
+		long lockedNanos = timePainters(threadCount, (region, random) -> {
+			int index = region * regionLength + random.nextInt(regionLength);
+			int pixel = random.nextInt(256);
+			synchronized (lockedSequence) {
+				lockedSequence.replaceAt(index, pixel);
+			}
+		});
+		if (!concurrentSequence.snapshot().equals(lockedSequence)) {
+			throw new IllegalStateException("The concurrent sequence disagrees with the locked one");
+		}
+		System.out.println(String.format("%-12s %d threads, ConcurrentRLESequence: %8.1f ms, synchronized PersistentRLESequence: %8.1f ms",
+				"#replaceAt", threadCount, concurrentNanos / 1e6, lockedNanos / 1e6));
+	}
+
+	private interface Painter {
+		void paint(int region, Random random);
+	}
+
+	// Every thread seeds its own Random from its region, so that both sequences receive exactly the same writes
+	private static long timePainters(int threadCount, Painter painter) {
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			int region = i;
+			threads[i] = new Thread(() -> {
+				Random random = new Random(SEED + region);
+				for (int j = 0; j < PAINTS / threadCount; j++) {
+					painter.paint(region, random);
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		joinAll(threads);
+		return System.nanoTime() - start;
+	}
+
+	private static void joinAll(Thread[] threads) {
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	// Mixes cheap edits with the calls that decode or rebuild the whole sequence, so that both show up in the report
+	private static void reportMetrics(Integer[] scanline) {
+		RLEMetrics metrics = new RLEMetrics();
+		RLEConverter.setMetrics(metrics);
+		RLESequenceV2 sequence = new RLESequenceV2(scanline);
+		sequence.enableMetrics(metrics);
+		MeteredRLESequence meteredSequence = new MeteredRLESequence(sequence, metrics);
+		Random random = new Random(SEED);
+		for (int i = 0; i < NATIVE_EDITS; i++) {
+			meteredSequence.replaceAt(random.nextInt(scanline.length), random.nextInt(256));
+			meteredSequence.getAt(random.nextInt(scanline.length));
+			if (i % 1000 == 0) {
+				meteredSequence.replaceAll(meteredSequence.getAt(0), random.nextInt(256));
+				meteredSequence.getAll();
+			}
+		}
+		RLEConverter.setMetrics(null);
+		System.out.println(metrics);
+	}
+
+	// Compares the average cost of one operation under each strategy
+	private static void report(String operation, long roundTripNanos, long nativeNanos, int nativeOperations) {
+		double roundTripPerOperation = (double)roundTripNanos / ROUND_TRIP_OPERATIONS;
+		double nativePerOperation = (double)nativeNanos / nativeOperations;
+		System.out.println(String.format("%-12s round trip through RLESequenceV1: %14.1f ns/op, native RLESequenceV2: %10.1f ns/op (%.0fx faster)",
+				operation, roundTripPerOperation, nativePerOperation, roundTripPerOperation / nativePerOperation));
+	}
+}
@@ -1,16 +1,43 @@
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import func.RLEBinaryFormat;
+import func.RLEStreamEncoder;
+import model.AdaptiveRLESequence;
+import model.ConcurrentRLESequence;
+import model.FieldCodePair;
+import model.MappedRLESequence;
+import model.PersistentRLESequence;
+import model.PixelCountable;
+import model.RLEImage;
 import model.RLESequence;
 import model.RLESequenceV1;
 import model.RLESequenceV2;
+import model.RLESequenceV3;
+import model.RopeRLESequence;
 
 
 public class Tester {
 	private static final Integer[] TEST_PIXELS = {0, 255, 1, 2, 3, 4, 5, 5, 254, 253, 252, 251};
 	private static final Integer[] TEST_PIXELS_SUBARRAY = {0, 255, 1, 2};
 	private static final Integer[] DIFFERENT_TEST_PIXELS = {72, 73};
+	private static final int ROUND_TRIP_REPEATS = 100;
+	// Two long runs, few enough for an AdaptiveRLESequence to store them as runs rather than raw bytes
+	private static final Integer[] RUNNY_TEST_PIXELS = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255, 255};
+	private static final Integer[] RUNNY_TEST_PIXELS_SUBARRAY = {0, 0, 0, 0};
+	// Long enough to span several of a ConcurrentRLESequence's segments
+	private static final int CONCURRENT_TEST_LENGTH = 3 * 4096 + 100;
+	private static final int CONCURRENT_WRITERS = 4, CONCURRENT_READERS = 4, CONCURRENT_ROUNDS = 5, CONCURRENT_READS = 100000;
 	
 	public static void executeAllTests() {
 		testEmptySequenceV1();
@@ -20,6 +47,758 @@ public class Tester {
 		testEmptySequenceV2();
 		testOnePixelSequenceV2();
 		testBasicSequenceV2();
+		
+		testEmptySequenceV3();
+		testOnePixelSequenceV3();
+		testBasicSequenceV3();
+		testSequenceV3RunUnhappyCases();
+		
+		testEmptyPersistentSequence();
+		testOnePixelPersistentSequence();
+		testBasicPersistentSequence();
+		
+		testEmptyBinaryFormatRoundTrip();
+		testBasicBinaryFormatRoundTrip();
+		testBinaryFormatUnhappyCase();
+		
+		testEmptyAdaptiveSequence();
+		testOnePixelAdaptiveSequence();
+		testBasicAdaptiveSequence();
+		testRunnyAdaptiveSequence();
+		
+		testEmptyRopeSequence();
+		testOnePixelRopeSequence();
+		testBasicRopeSequence();
+		testRopeSegments();
+		
+		testEmptyConcurrentSequence();
+		testOnePixelConcurrentSequence();
+		testBasicConcurrentSequence();
+		testConcurrentFillBetween();
+		testConcurrentReplaceAndRead();
+		
+		testEmptyImage();
+		testBasicImage();
+		testImageUnhappyCases();
+		
+		testStreamEncoderOverflow();
+	}
+	
+	// Runs are only ever pushed, never held pixel by pixel, so runs longer than Integer.MAX_VALUE cost nothing to test
+	private static void testStreamEncoderOverflow() {
+		int max = Integer.MAX_VALUE;
+		System.out.println("The following regards a stream encoder pushed runs of " + TEST_PIXELS[0] + " adding up to around Integer.MAX_VALUE");
+		testStreamEncoderRuns(new int[] {max - 1, 1});
+		System.out.println("That should have returned [" + max + " 0]");
+		testStreamEncoderRuns(new int[] {max, 1});
+		System.out.println("That should have returned [" + max + " 0] [1 0]");
+		testStreamEncoderRuns(new int[] {max - 5, 10, max});
+		System.out.println("That should have returned [" + max + " 0] [" + max + " 0] [5 0]");
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testStreamEncoderRuns(int[] counts) {
+		List<FieldCodePair<Integer>> runs = new ArrayList<FieldCodePair<Integer>>();
+		RLEStreamEncoder<Integer> encoder = new RLEStreamEncoder<Integer>(runs::add);
+		for (int count : counts) {
+			encoder.push(TEST_PIXELS[0], count);
+		}
+		encoder.flush();
+		System.out.println("#push with counts of " + Arrays.toString(counts) + ", then #flush, emits the following runs: ");
+		for (FieldCodePair<Integer> run : runs) {
+			System.out.print("[" + run.getCount() + " " + run.getElement() + "] ");
+		}
+		System.out.println();
+	}
+	
+	private static void testImageUnhappyCases() {
+		System.out.println("The following regards an image initialized to be 4 by 3 with a background of 0");
+		RLEImage image = new RLEImage(4, 3);
+		System.out.println("#getAt with x of -1 and y of 0 throws the following: ");
+		try {
+			image.getAt(-1, 0);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("#replaceAt with x of 0 and y of 3 throws the following: ");
+		try {
+			image.replaceAt(0, 3, DIFFERENT_TEST_PIXELS[0]);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		Rectangle partlyOutside = new Rectangle(2, 1, 3, 2);
+		System.out.println("#crop with region of " + partlyOutside + " throws the following: ");
+		try {
+			image.crop(partlyOutside);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("#fill with element of 256 throws the following: ");
+		try {
+			image.fill(image.bounds(), 256);
+			System.out.println("No exception was thrown");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out.println("The image is still: ");
+		System.out.println(image);
+		System.out.println("Constructing an image of width 3 from 4 elements throws the following: ");
+		try {
+			new RLEImage(3, new byte[4]);
+			System.out.println("No exception was thrown");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out.println("Constructing an image of width -1 and height 2 throws the following: ");
+		try {
+			new RLEImage(-1, 2);
+			System.out.println("No exception was thrown");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	// Uses the test pixels as a 4 by 3 image, one row of 4 after another
+	private static void testBasicImage() {
+		byte[] pixels = new byte[TEST_PIXELS.length];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte)(int)TEST_PIXELS[i];
+		}
+		System.out.println("The following regards a 4 wide image initialized to have elements of " + Arrays.toString(TEST_PIXELS) + ":");
+		RLEImage image = new RLEImage(4, pixels);
+		RLEImage original = image.copy();
+		System.out.println(image);
+		System.out.println("#height returns the following: ");
+		System.out.println(image.height());
+		System.out.println("That should have returned 3");
+		System.out.println("#getAt with x of 1 and y of 2 returns the following: ");
+		System.out.println(image.getAt(1, 2));
+		System.out.println("That should have returned " + TEST_PIXELS[9]);
+		System.out.println("#toByteArray returns the original elements: ");
+		System.out.println(Arrays.equals(image.toByteArray(), pixels));
+		System.out.println("That should have returned true");
+		
+		Rectangle inside = new Rectangle(1, 1, 2, 2);
+		System.out.println("#crop with region of " + inside + " returns the following: ");
+		System.out.println(image.crop(inside));
+		System.out.println("That should have returned [[1 4] [1 5]] then [[1 253] [1 252]]");
+		System.out.println("#crop with region of " + image.bounds() + " returns the following: ");
+		System.out.println(image.crop(image.bounds()).equals(image));
+		System.out.println("That should have returned true");
+		
+		RLESequenceV3 row = image.rowAt(0);
+		row.replaceAt(0, DIFFERENT_TEST_PIXELS[0]);
+		System.out.println("#rowAt with y of 0, after replacing the row's first element, leaves the image's first element as: ");
+		System.out.println(image.getAt(0, 0));
+		System.out.println("That should have returned " + TEST_PIXELS[0]);
+		
+		Rectangle partlyOutside = new Rectangle(-1, 2, 3, 5);
+		System.out.println("#fill with region of " + partlyOutside + " and element of " + DIFFERENT_TEST_PIXELS[0] + " makes the image now: ");
+		image.fill(partlyOutside, DIFFERENT_TEST_PIXELS[0]);
+		System.out.println(image);
+		System.out.println("That should have only changed the first two elements of the last row");
+		Rectangle outside = new Rectangle(4, 0, 2, 2);
+		System.out.println("#fill with region of " + outside + " and element of " + DIFFERENT_TEST_PIXELS[1] + " makes the image now: ");
+		image.fill(outside, DIFFERENT_TEST_PIXELS[1]);
+		System.out.println(image);
+		System.out.println("That should have left the image unchanged");
+		
+		RLEImage source = new RLEImage(2, 2, DIFFERENT_TEST_PIXELS[1]);
+		System.out.println("#blit with a 2 by 2 image of " + DIFFERENT_TEST_PIXELS[1] + ", x of 3 and y of -1 makes the image now: ");
+		image.blit(source, 3, -1);
+		System.out.println(image);
+		System.out.println("That should have only changed the last element of the first row");
+		System.out.println("#blit with the image itself, x of 1 and y of 1 makes the image now: ");
+		image.blit(image, 1, 1);
+		System.out.println(image);
+		System.out.println("That should have shifted the top left 3 by 2 elements one down and to the right");
+		System.out.println("The copy taken before any modification is still: ");
+		System.out.println(original);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testEmptyImage() {
+		System.out.println("The following regards an image initialized to be 0 by 0");
+		RLEImage emptyImage = new RLEImage(0, 0);
+		System.out.println("#bounds returns the following: ");
+		System.out.println(emptyImage.bounds());
+		System.out.println("#crop with region of " + emptyImage.bounds() + " returns the following: ");
+		System.out.println(emptyImage.crop(emptyImage.bounds()).equals(emptyImage));
+		System.out.println("That should have returned true");
+		System.out.println("#fill with region of " + new Rectangle(0, 0, 5, 5) + " leaves the image equal to a new 0 by 0 image: ");
+		emptyImage.fill(new Rectangle(0, 0, 5, 5), DIFFERENT_TEST_PIXELS[0]);
+		System.out.println(emptyImage.equals(new RLEImage(0, 0)));
+		System.out.println("That should have returned true, as there is nothing to fill");
+		System.out.println("#blit with a 2 by 2 image, x of 0 and y of 0 leaves the image equal to a new 0 by 0 image: ");
+		emptyImage.blit(new RLEImage(2, 2, DIFFERENT_TEST_PIXELS[1]), 0, 0);
+		System.out.println(emptyImage.equals(new RLEImage(0, 0)));
+		System.out.println("That should have returned true, as there is nothing to blit onto");
+		System.out.println("#toByteArray returns the following number of elements: ");
+		System.out.println(emptyImage.toByteArray().length);
+		System.out.println("That should have returned 0");
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	/*
+	 * Each writer owns the indexes that are equal to its number modulo the number of writers, and replaces each of them
+	 * with one of its own two pixels every round, ending on the second. Meanwhile each reader reads random indexes,
+	 * each of which must only ever hold the background or one of its owner's pixels.
+	 */
+	private static void testConcurrentReplaceAndRead() {
+		System.out.println("The following regards a concurrent sequence of " + CONCURRENT_TEST_LENGTH + " elements of 0, replaced by " 
+				+ CONCURRENT_WRITERS + " threads while read by " + CONCURRENT_READERS + " threads:");
+		ConcurrentRLESequence sequence = new ConcurrentRLESequence(new byte[CONCURRENT_TEST_LENGTH]);
+		AtomicInteger invalidReads = new AtomicInteger();
+		AtomicInteger failedThreads = new AtomicInteger();
+		Thread[] threads = new Thread[CONCURRENT_WRITERS + CONCURRENT_READERS];
+		for (int t = 0; t < CONCURRENT_WRITERS; t++) {
+			int writer = t;
+			threads[t] = new Thread(() -> {
+				for (int round = 1; round <= CONCURRENT_ROUNDS; round++) {
+					int pixel = pixelOfWriter(writer, round == CONCURRENT_ROUNDS || round % 2 == 0);
+					for (int i = writer; i < CONCURRENT_TEST_LENGTH; i += CONCURRENT_WRITERS) {
+						sequence.replaceAt(i, pixel);
+					}
+				}
+			});
+		}
+		for (int t = CONCURRENT_WRITERS; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int read = 0; read < CONCURRENT_READS; read++) {
+					int index = random.nextInt(CONCURRENT_TEST_LENGTH);
+					int pixel = sequence.getAt(index);
+					int writer = index % CONCURRENT_WRITERS;
+					if (pixel != 0 && pixel != pixelOfWriter(writer, false) && pixel != pixelOfWriter(writer, true)) {
+						invalidReads.incrementAndGet();
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.setUncaughtExceptionHandler((failedThread, e) -> {
+				failedThreads.incrementAndGet();
+				e.printStackTrace();
+			});
+			thread.start();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("InterruptedException thrown while waiting for the threads to finish");
+			return;
+		}
+		
+		System.out.println("The number of threads that threw an exception is the following: ");
+		System.out.println(failedThreads.get());
+		System.out.println("That should have been 0");
+		System.out.println("The number of reads of an element no thread wrote there is the following: ");
+		System.out.println(invalidReads.get());
+		System.out.println("That should have been 0");
+		int wrongElements = 0;
+		for (int i = 0; i < CONCURRENT_TEST_LENGTH; i++) {
+			if (sequence.getAtInt(i) != pixelOfWriter(i % CONCURRENT_WRITERS, true)) {
+				wrongElements++;
+			}
+		}
+		System.out.println("#length returns the following: ");
+		System.out.println(sequence.length());
+		System.out.println("That should have returned " + CONCURRENT_TEST_LENGTH);
+		System.out.println("The number of elements not left as their writer's last pixel is the following: ");
+		System.out.println(wrongElements);
+		System.out.println("That should have been 0");
+		if (failedThreads.get() == 0 && invalidReads.get() == 0 && wrongElements == 0) {
+			System.out.println("The concurrent replacements and reads correctly kept every element valid");
+		}
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static int pixelOfWriter(int writer, boolean isLastPixel) {
+		return 2 * writer + (isLastPixel ? 2 : 1);
+	}
+	
+	private static void testConcurrentFillBetween() {
+		System.out.println("The following regards a concurrent sequence of " + CONCURRENT_TEST_LENGTH + " elements of 0:");
+		ConcurrentRLESequence sequence = new ConcurrentRLESequence(new byte[CONCURRENT_TEST_LENGTH]);
+		int startIndex = 4000, endIndex = 8300;
+		sequence.fillBetween(startIndex, endIndex, DIFFERENT_TEST_PIXELS[0]);
+		System.out.println("#fillBetween with startIndex of " + startIndex + ", endIndex of " + endIndex + " and element of " 
+				+ DIFFERENT_TEST_PIXELS[0] + " makes the sequence now: ");
+		System.out.println(sequence);
+		System.out.println("That should have returned [[4000 0] [4300 72] [" + (CONCURRENT_TEST_LENGTH - endIndex) + " 0]], though the fill crosses two segments");
+		System.out.println("#fillBetween with startIndex of " + startIndex + " and endIndex of " + startIndex + " makes the sequence now: ");
+		sequence.fillBetween(startIndex, startIndex, DIFFERENT_TEST_PIXELS[1]);
+		System.out.println(sequence);
+		System.out.println("That should have left the sequence unchanged");
+		System.out.println("#fillBetween with startIndex of " + endIndex + " and endIndex of " + startIndex + " throws the following: ");
+		try {
+			sequence.fillBetween(endIndex, startIndex, DIFFERENT_TEST_PIXELS[1]);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("#fillBetween with startIndex of 0 and endIndex of " + (CONCURRENT_TEST_LENGTH + 1) + " throws the following: ");
+		try {
+			sequence.fillBetween(0, CONCURRENT_TEST_LENGTH + 1, DIFFERENT_TEST_PIXELS[1]);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("#fillBetween with element of 256 throws the following: ");
+		try {
+			sequence.fillBetween(startIndex, endIndex, 256);
+			System.out.println("No exception was thrown");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out.println("The sequence is still: ");
+		System.out.println(sequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testBasicConcurrentSequence() {
+		System.out.println("The following regards a concurrent sequence initialized to have elements of " + Arrays.toString(TEST_PIXELS) + ":");
+		ConcurrentRLESequence sequence = new ConcurrentRLESequence(TEST_PIXELS);
+		PersistentRLESequence snapshot = sequence.snapshot();
+		testAllHappyCases(sequence, TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[0], TEST_PIXELS_SUBARRAY, 
+				DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+		testSubsequenceHappyCases(sequence, new ConcurrentRLESequence(DIFFERENT_TEST_PIXELS));
+		testUnhappyCases(sequence);
+		System.out.println("The snapshot taken before any modification is still: ");
+		System.out.println(snapshot);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testOnePixelConcurrentSequence() {
+		for (int pixel : TEST_PIXELS) {
+			System.out.println("The following regards a concurrent sequence initialized to have one element of " + pixel + ":");
+			ConcurrentRLESequence onePixelSequence = new ConcurrentRLESequence(pixel);
+			testAllHappyCases(onePixelSequence, pixel, DIFFERENT_TEST_PIXELS[0], new Integer[] {pixel}, 
+					DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+			testSubsequenceHappyCases(onePixelSequence, new ConcurrentRLESequence(DIFFERENT_TEST_PIXELS));
+			System.out.println();
+			System.out.println();
+			System.out.println();
+		}
+	}
+	
+	private static void testEmptyConcurrentSequence() {
+		System.out.println("The following regards a concurrent sequence initialized to be empty");
+		ConcurrentRLESequence emptySequence = new ConcurrentRLESequence();
+		testAllHappyCases(emptySequence, 0, 0, new Integer[0], 72, 73);
+		testSubsequenceHappyCases(emptySequence, new ConcurrentRLESequence(TEST_PIXELS));
+		testUnhappyCases(emptySequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testRopeSegments() {
+		System.out.println("The following regards a rope sequence initialized to have elements of " + Arrays.toString(TEST_PIXELS) + ":");
+		RopeRLESequence sequence = new RopeRLESequence(TEST_PIXELS);
+		RopeRLESequence tail = new RopeRLESequence(DIFFERENT_TEST_PIXELS);
+		for (int i = 0; i < 3; i++) {
+			sequence.addToTail(tail);
+			System.out.println("#addToTail with sequence of " + tail + " makes #segmentCount return the following: ");
+			System.out.println(sequence.segmentCount());
+		}
+		System.out.println("That should have returned 4, as adding to the tail only queues the added sequence");
+		System.out.println("Appending " + DIFFERENT_TEST_PIXELS[0] + " to the sequence added to the tail leaves the sequence as: ");
+		tail.append(DIFFERENT_TEST_PIXELS[0]);
+		System.out.println(sequence);
+		System.out.println("That should have ended in three runs of [1 72] [1 73], as the added sequence was copied");
+		System.out.println("#getAt with index of " + TEST_PIXELS.length + " returns the following: ");
+		System.out.println(sequence.getAt(TEST_PIXELS.length));
+		System.out.println("That should have returned " + DIFFERENT_TEST_PIXELS[0]);
+		System.out.println("#segmentCount now returns the following: ");
+		System.out.println(sequence.segmentCount());
+		System.out.println("That should have returned 1, as reading a pixel joins the queued segments");
+		testUnhappyCases(sequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testBasicRopeSequence() {
+		System.out.println("The following regards a rope sequence initialized to have elements of " + Arrays.toString(TEST_PIXELS) + ":");
+		RopeRLESequence sequence = new RopeRLESequence(TEST_PIXELS);
+		testAllHappyCases(sequence, TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[0], TEST_PIXELS_SUBARRAY, 
+				DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+		testSubsequenceHappyCases(sequence, new RopeRLESequence(DIFFERENT_TEST_PIXELS));
+		testUnhappyCases(sequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testOnePixelRopeSequence() {
+		for (int pixel : TEST_PIXELS) {
+			System.out.println("The following regards a rope sequence initialized to have one element of " + pixel + ":");
+			RopeRLESequence onePixelSequence = new RopeRLESequence(pixel);
+			testAllHappyCases(onePixelSequence, pixel, DIFFERENT_TEST_PIXELS[0], new Integer[] {pixel}, 
+					DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+			testSubsequenceHappyCases(onePixelSequence, new RopeRLESequence(DIFFERENT_TEST_PIXELS));
+			System.out.println();
+			System.out.println();
+			System.out.println();
+		}
+	}
+	
+	private static void testEmptyRopeSequence() {
+		System.out.println("The following regards a rope sequence initialized to be empty");
+		RopeRLESequence emptySequence = new RopeRLESequence();
+		testAllHappyCases(emptySequence, 0, 0, new Integer[0], 72, 73);
+		testSubsequenceHappyCases(emptySequence, new RopeRLESequence(TEST_PIXELS));
+		testUnhappyCases(emptySequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testBasicAdaptiveSequence() {
+		System.out.println("The following regards an adaptive sequence initialized to have elements of " + Arrays.toString(TEST_PIXELS) + ":");
+		AdaptiveRLESequence sequence = new AdaptiveRLESequence(TEST_PIXELS);
+		testIsRunLengthEncoded(sequence);
+		System.out.println("That should have returned false, as the elements are too noisy to be worth encoding");
+		testAllHappyCases(sequence, TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[0], TEST_PIXELS_SUBARRAY, 
+				DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+		testSubsequenceHappyCases(sequence, new AdaptiveRLESequence(DIFFERENT_TEST_PIXELS));
+		testUnhappyCases(sequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testRunnyAdaptiveSequence() {
+		System.out.println("The following regards an adaptive sequence initialized to have elements of " + Arrays.toString(RUNNY_TEST_PIXELS) + ":");
+		AdaptiveRLESequence sequence = new AdaptiveRLESequence(RUNNY_TEST_PIXELS);
+		testIsRunLengthEncoded(sequence);
+		System.out.println("That should have returned true, as the elements are two long runs");
+		testAllHappyCases(sequence, RUNNY_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[0], RUNNY_TEST_PIXELS_SUBARRAY, 
+				DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+		testSubsequenceHappyCases(sequence, new AdaptiveRLESequence(DIFFERENT_TEST_PIXELS));
+		System.out.println("After alternating every other element between " + DIFFERENT_TEST_PIXELS[0] + " and " + DIFFERENT_TEST_PIXELS[1] + ":");
+		for (int i = 0; i < sequence.length(); i++) {
+			sequence.replaceAt(i, DIFFERENT_TEST_PIXELS[i % 2]);
+		}
+		testIsRunLengthEncoded(sequence);
+		System.out.println("That should have returned false, as every run is now a single element");
+		testGetAll(sequence);
+		testUnhappyCases(sequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testOnePixelAdaptiveSequence() {
+		for (int pixel : TEST_PIXELS) {
+			System.out.println("The following regards an adaptive sequence initialized to have one element of " + pixel + ":");
+			AdaptiveRLESequence onePixelSequence = new AdaptiveRLESequence(new Integer[] {pixel});
+			testAllHappyCases(onePixelSequence, pixel, DIFFERENT_TEST_PIXELS[0], new Integer[] {pixel}, 
+					DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+			testSubsequenceHappyCases(onePixelSequence, new AdaptiveRLESequence(DIFFERENT_TEST_PIXELS));
+			System.out.println();
+			System.out.println();
+			System.out.println();
+		}
+	}
+	
+	private static void testEmptyAdaptiveSequence() {
+		System.out.println("The following regards an adaptive sequence initialized to be empty");
+		AdaptiveRLESequence emptySequence = new AdaptiveRLESequence();
+		testAllHappyCases(emptySequence, 0, 0, new Integer[0], 72, 73);
+		testSubsequenceHappyCases(emptySequence, new AdaptiveRLESequence(TEST_PIXELS));
+		testUnhappyCases(emptySequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testIsRunLengthEncoded(AdaptiveRLESequence sequence) {
+		System.out.println("#isRunLengthEncoded returns the following: ");
+		System.out.println(sequence.isRunLengthEncoded());
+	}
+	
+	// Searches for the middle half of the sequence, which it must contain however the happy cases before have modified it
+	private static <S extends RLESequence<Integer, Integer, S>> void testSubsequenceHappyCases(S sequence, S nonContainedSubsequence) {
+		int length = sequence.length();
+		S containedSubsequence = sequence.subsequenceBetween(length / 4, length - length / 4);
+		System.out.println("#containsSubsequence with sequence of " + containedSubsequence + " returns the following: ");
+		System.out.println(sequence.containsSubsequence(containedSubsequence));
+		System.out.println("That should have returned true");
+		System.out.println("#indexOfSubsequence with sequence of " + containedSubsequence + " returns the following: ");
+		System.out.println(sequence.indexOfSubsequence(containedSubsequence));
+		System.out.println("That should have returned " + (length / 4) + " or earlier");
+		System.out.println("#containsSubsequence with sequence of " + nonContainedSubsequence + " returns the following: ");
+		System.out.println(sequence.containsSubsequence(nonContainedSubsequence));
+		System.out.println("That should have returned false");
+		
+		System.out.println("#subsequenceFrom with startIndex of 0 returns the following: ");
+		System.out.println(sequence.subsequenceFrom(0));
+		System.out.println("That should have returned the original sequence");
+		System.out.println("#subsequenceTo with endIndex of " + length + " returns the following: ");
+		System.out.println(sequence.subsequenceTo(length));
+		System.out.println("That should have returned the original sequence");
+		if (length > 1) {
+			System.out.println("#subsequenceFrom with startIndex of 1 returns the following: ");
+			System.out.println(sequence.subsequenceFrom(1));
+			System.out.println("That should have returned a sequence missing the original sequence's first index");
+			System.out.println("#subsequenceTo with endIndex of " + (length - 1) + " returns the following: ");
+			System.out.println(sequence.subsequenceTo(length - 1));
+			System.out.println("That should have returned a sequence missing the original sequence's last index");
+			System.out.println("#subsequenceBetween with startIndex of " + (length - 1) + " and endIndex of " + length + " returns the following: ");
+			System.out.println(sequence.subsequenceBetween(length - 1, length));
+			System.out.println("That should have returned a sequence of just the last element");
+		}
+		
+		S copy = sequence.copy();
+		System.out.println("#addToHead with sequence of " + nonContainedSubsequence + " makes the sequence now: ");
+		sequence.addToHead(nonContainedSubsequence);
+		System.out.println(sequence);
+		System.out.println("#addToTail with sequence of " + nonContainedSubsequence + " makes the sequence now: ");
+		sequence.addToTail(nonContainedSubsequence);
+		System.out.println(sequence);
+		System.out.println("The copy taken before adding to the head and tail is still: ");
+		System.out.println(copy);
+	}
+	
+	private static void testUnhappyCases(RLESequence<Integer, Integer, ?> sequence) {
+		int length = sequence.length();
+		System.out.println("#getAt with index of " + length + " throws the following: ");
+		try {
+			sequence.getAt(length);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("#insert with index of " + (length + 1) + " throws the following: ");
+		try {
+			sequence.insert(DIFFERENT_TEST_PIXELS[0], length + 1);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("#append with element of 256 throws the following: ");
+		try {
+			sequence.append(256);
+			System.out.println("No exception was thrown");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out.println("#subsequenceBetween with startIndex of 1 and endIndex of 0 throws the following: ");
+		try {
+			sequence.subsequenceBetween(1, 0);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("The sequence is still: ");
+		System.out.println(sequence);
+	}
+	
+	private static void testEmptyBinaryFormatRoundTrip() {
+		System.out.println("The following regards an empty sequence written to a file and mapped back:");
+		testBinaryFormatRoundTrip(new RLESequenceV2());
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	// Repeats the pixels enough times for the mapped sequence to index its runs with several checkpoints
+	private static void testBasicBinaryFormatRoundTrip() {
+		System.out.println("The following regards a sequence of " + ROUND_TRIP_REPEATS + " repeats of " + Arrays.toString(TEST_PIXELS) + " written to a file and mapped back:");
+		RLESequenceV2 sequence = new RLESequenceV2();
+		for (int i = 0; i < ROUND_TRIP_REPEATS; i++) {
+			sequence.addToTail(new RLESequenceV2(TEST_PIXELS));
+		}
+		testBinaryFormatRoundTrip(sequence);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testBinaryFormatRoundTrip(RLESequenceV2 sequence) {
+		File file = null;
+		try {
+			file = File.createTempFile("sequence", ".rle");
+			RLEBinaryFormat.write(sequence, file);
+			MappedRLESequence mappedSequence = RLEBinaryFormat.map(file);
+			System.out.println("#length and #runCount of the mapped sequence return the following: ");
+			System.out.println(mappedSequence.length() + ", " + mappedSequence.runCount());
+			boolean allPixelsMatch = mappedSequence.length() == sequence.length();
+			for (int i = 0; allPixelsMatch && i < sequence.length(); i++) {
+				allPixelsMatch = mappedSequence.getAtInt(i) == sequence.getAt(i);
+			}
+			byte[] copiedPixels = new byte[mappedSequence.length()];
+			mappedSequence.copyInto(copiedPixels, 0);
+			for (int i = 0; allPixelsMatch && i < copiedPixels.length; i++) {
+				allPixelsMatch = (copiedPixels[i] & 0xFF) == sequence.getAt(i);
+			}
+			if (allPixelsMatch) {
+				System.out.println("Every pixel read back through #getAtInt and #copyInto correctly matches the written sequence");
+			} else {
+				System.out.println("The pixels read back do not match the written sequence");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (file != null) {
+				file.delete();
+			}
+		}
+	}
+	
+	private static void testBinaryFormatUnhappyCase() {
+		System.out.println("The following regards mapping a file that does not start with an RLE sequence header:");
+		File file = null;
+		try {
+			file = File.createTempFile("sequence", ".rle");
+			OutputStream fileStream = new FileOutputStream(file);
+			try {
+				fileStream.write(new byte[] {'N', 'O', 'T', 'R', 'L', 'E', 0, 0, 0, 0, 0, 0, 0});
+			} finally {
+				fileStream.close();
+			}
+			RLEBinaryFormat.map(file);
+			System.out.println("No IOException was thrown");
+		} catch (IOException e) {
+			System.out.println("IOException correctly thrown: " + e.getMessage());
+		} finally {
+			if (file != null) {
+				file.delete();
+			}
+		}
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testBasicPersistentSequence() {
+		System.out.println("The following regards a persistent sequence initialized to have one elements of " + TEST_PIXELS.toString() + ":");
+		PersistentRLESequence sequence = new PersistentRLESequence(TEST_PIXELS);
+		PersistentRLESequence original = sequence.copy();
+		testAllHappyCases(sequence, TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[0], TEST_PIXELS_SUBARRAY, 
+				DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+		System.out.println("The copy taken before any modification is still: ");
+		System.out.println(original.toString());
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testOnePixelPersistentSequence() {
+		for (int pixel : TEST_PIXELS) {
+			System.out.println("The following regards a persistent sequence initialized to have one element of " + pixel + ":");
+			PersistentRLESequence onePixelSequence = new PersistentRLESequence(new byte[] {(byte)pixel});
+			testAllHappyCases(onePixelSequence, pixel, DIFFERENT_TEST_PIXELS[0], new Integer[] {pixel}, 
+					DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+			System.out.println();
+			System.out.println();
+			System.out.println();
+		}
+	}
+	
+	private static void testEmptyPersistentSequence() {
+		System.out.println("The following regards a persistent sequence initialized to be empty");
+		PersistentRLESequence emptySequence = new PersistentRLESequence();
+		testAllHappyCases(emptySequence, 0, 0, new Integer[0], 72, 73);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testBasicSequenceV3() {
+		System.out.println("The following regards a sequence initialized to have one elements of " + TEST_PIXELS.toString() + ":");
+		RLESequenceV3 sequence = new RLESequenceV3(TEST_PIXELS);
+		testPixelCountableHappyCases(sequence, TEST_PIXELS[6]);
+		sequence.enableHistogram();
+		testAllHappyCases(sequence, TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[0], TEST_PIXELS_SUBARRAY, 
+				DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+		System.out.println("With a histogram kept up to date through all of the above:");
+		testPixelCountableHappyCases(sequence, TEST_PIXELS[6]);
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testSequenceV3RunUnhappyCases() {
+		System.out.println("The following regards building and filling runs of a sequence initialized to have elements of " + Arrays.toString(TEST_PIXELS) + ":");
+		RLESequenceV3 sequence = new RLESequenceV3(TEST_PIXELS);
+		System.out.println("#ofRun with element of " + DIFFERENT_TEST_PIXELS[0] + " and count of -3 throws the following: ");
+		try {
+			RLESequenceV3.ofRun(DIFFERENT_TEST_PIXELS[0], -3);
+			System.out.println("No exception was thrown");
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out.println("#fillBetween with startIndex of 5 and endIndex of 2 throws the following: ");
+		try {
+			sequence.fillBetween(5, 2, DIFFERENT_TEST_PIXELS[0]);
+			System.out.println("No exception was thrown");
+		} catch (IndexOutOfBoundsException e) {
+			System.out.println("IndexOutOfBoundsException correctly thrown");
+		}
+		System.out.println("The sequence is still: ");
+		System.out.println(sequence);
+		System.out.println("#ofRun with element of " + DIFFERENT_TEST_PIXELS[0] + " and count of 0 returns the following: ");
+		System.out.println(RLESequenceV3.ofRun(DIFFERENT_TEST_PIXELS[0], 0));
+		System.out.println("That should have returned an empty sequence");
+		System.out.println();
+		System.out.println();
+		System.out.println();
+	}
+	
+	private static void testPixelCountableHappyCases(PixelCountable sequence, Integer containedElement) {
+		System.out.println("#countOf with element of " + containedElement + " returns the following: ");
+		System.out.println(sequence.countOf(containedElement));
+		System.out.println("#distinctValues returns the following: ");
+		System.out.println(sequence.distinctValues());
+		System.out.println("#mean returns the following: ");
+		System.out.println(sequence.mean());
+		System.out.println("#entropy returns the following: ");
+		System.out.println(sequence.entropy());
+	}
+	
+	private static void testOnePixelSequenceV3() {
+		for (int pixel : TEST_PIXELS) {
+			System.out.println("The following regards a sequence initialized to have one element of " + pixel + ":");
+			RLESequenceV3 onePixelSequence = new RLESequenceV3(new byte[] {(byte)pixel});
+			testAllHappyCases(onePixelSequence, pixel, DIFFERENT_TEST_PIXELS[0], new Integer[] {pixel}, 
+					DIFFERENT_TEST_PIXELS[0], DIFFERENT_TEST_PIXELS[1]);
+			System.out.println();
+			System.out.println();
+			System.out.println();
+		}
+	}
+	
+	private static void testEmptySequenceV3() {
+		System.out.println("The following regards a sequence initialized to be empty");
+		RLESequenceV3 emptySequence = new RLESequenceV3();
+		testAllHappyCases(emptySequence, 0, 0, new Integer[0], 72, 73);
+		System.out.println();
+		System.out.println();
+		System.out.println();
 	}
 	
 	private static void testBasicSequenceV2() {
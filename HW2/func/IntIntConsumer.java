@@ -0,0 +1,9 @@
+package func;
+
+/**
+ * Accepts two int values without boxing them, such as a run's pixel and the number of times it repeats
+ */
+@FunctionalInterface
+public interface IntIntConsumer {
+	public void accept(int first, int second);
+}
@@ -0,0 +1,124 @@
+package func;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import model.MappedRLESequence;
+import model.PixelRetrievable;
+
+/**
+ * Compact, versioned binary format for persisting a pixel sequence in its run-length encoded form
+ *
+ * Layout, with fixed-width fields in big-endian order:
+ * 
+ * <pre>
+ * magic      4 bytes  'R' 'L' 'E' 'S'
+ * version    1 byte   currently 1
+ * run count  4 bytes
+ * length     4 bytes  total number of pixels
+ * runs       run count times: count as an unsigned LEB128 varint, then the pixel as one unsigned byte
+ * </pre>
+ *
+ * Runs written by this class are canonical, so readers may rely on neighboring runs having different pixels.
+ */
+public class RLEBinaryFormat {
+
+	/**
+	 * Writes the sequence to the file, replacing anything already there
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(PixelRetrievable sequence, File file) throws IOException {
+		OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(sequence, fileStream);
+		} finally {
+			fileStream.close();
+		}
+	}
+
+	/**
+	 * Writes the sequence to the stream, leaving the stream open
+	 * 
+	 * @throws IOException
+	 *             if the stream cannot be written to
+	 */
+	public static void write(PixelRetrievable sequence, OutputStream stream) throws IOException {
+		int[] runCountAndLength = new int[2];
+		sequence.forEachRun((pixel, count) -> {
+			runCountAndLength[0]++;
+			runCountAndLength[1] += count;
+		});
+		DataOutputStream dataStream = new DataOutputStream(stream);
+		dataStream.write(MAGIC);
+		dataStream.writeByte(VERSION);
+		dataStream.writeInt(runCountAndLength[0]);
+		dataStream.writeInt(runCountAndLength[1]);
+		try {
+			sequence.forEachRun((pixel, count) -> {
+				try {
+					writeVarint(count, dataStream);
+					dataStream.writeByte(pixel);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		dataStream.flush();
+	}
+
+	/**
+	 * Memory-maps the file and serves the sequence straight from the mapping, without copying runs onto the heap
+	 *
+	 * A file is mapped as one buffer, so it can be at most Integer.MAX_VALUE bytes. Since the header limits a sequence
+	 * to Integer.MAX_VALUE pixels, only a sequence of almost all single-pixel runs can be written past that.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read, is not in this format, or is more than Integer.MAX_VALUE bytes
+	 */
+	public static MappedRLESequence map(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is " + size + " bytes, more than the " + Integer.MAX_VALUE
+						+ " bytes an RLE sequence file can be mapped in");
+			}
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return new MappedRLESequence(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void writeVarint(int value, DataOutputStream dataStream) throws IOException {
+		while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+			dataStream.writeByte((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT);
+			value >>>= VARINT_PAYLOAD_BITS;
+		}
+		dataStream.writeByte(value);
+	}
+
+	public static final byte[] MAGIC = {'R', 'L', 'E', 'S'};
+	public static final int VERSION = 1;
+	public static final int VERSION_OFFSET = MAGIC.length;
+	public static final int RUN_COUNT_OFFSET = VERSION_OFFSET + 1;
+	public static final int LENGTH_OFFSET = RUN_COUNT_OFFSET + 4;
+	public static final int HEADER_LENGTH = LENGTH_OFFSET + 4;
+
+	public static final int VARINT_PAYLOAD_BITS = 7;
+	public static final int VARINT_PAYLOAD_MASK = 0x7F;
+	public static final int VARINT_CONTINUATION_BIT = 0x80;
+}
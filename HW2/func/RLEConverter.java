@@ -1,36 +1,107 @@
 package func;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import model.FieldCodePair;
+import model.RLEMetrics;
 
 public class RLEConverter<T> {
 
+	/**
+	 * Reports every full decode into elements and every full encode into runs to the given metrics, or to none once
+	 * passed null. The streaming and incremental conversions are never reported, as they never hold a whole sequence.
+	 */
+	public static void setMetrics(RLEMetrics inMetrics) {
+		metrics = inMetrics;
+	}
+
+	private static void recordDecode(int length) {
+		RLEMetrics currentMetrics = metrics;
+		if (currentMetrics != null) {
+			currentMetrics.recordDecode(length);
+		}
+	}
+
+	private static void recordEncode(int length) {
+		RLEMetrics currentMetrics = metrics;
+		if (currentMetrics != null) {
+			currentMetrics.recordEncode(length);
+		}
+	}
+
 	public static <T> List<T> toAPI(List<FieldCodePair<T>> fieldCodePairs) {
-		List<T> elements = new ArrayList<T>();
+		List<T> elements = new ArrayList<T>(lengthOf(fieldCodePairs));
 		for (FieldCodePair<T> fieldCodePair : fieldCodePairs) {
 			allocateElements(fieldCodePair, elements);
 		}
+		recordDecode(elements.size());
 		return elements;
 	}
 	
 	private static <T> void allocateElements(FieldCodePair<T> fieldCodePair, List<T> elements){
-		for (int i = 0; i < fieldCodePair.getCount(); i++) {
-			elements.add(fieldCodePair.getElement());
+		// Copies the whole run in one bulk write rather than growing the list one element at a time
+		elements.addAll(Collections.nCopies(fieldCodePair.getCount(), fieldCodePair.getElement()));
+	}
+	
+	private static int lengthOf(Iterable<? extends FieldCodePair<?>> fieldCodePairs) {
+		int length = 0;
+		for (FieldCodePair<?> fieldCodePair : fieldCodePairs) {
+			length += fieldCodePair.getCount();
 		}
+		return length;
+	}
+	
+	/**
+	 * Decodes runs of 0 to 255 pixels straight into a buffer, one unsigned byte per pixel, writing each run with a
+	 * single Arrays#fill instead of adding its pixels one by one
+	 * 
+	 * @return the number of pixels written, starting at dst[offset]
+	 */
+	public static int decodeInto(List<? extends FieldCodePair<? extends Number>> fieldCodePairs, byte[] dst, int offset) throws IndexOutOfBoundsException {
+		int length = lengthOf(fieldCodePairs);
+		if (offset < 0 || offset > dst.length - length) {
+			throw new IndexOutOfBoundsException("Cannot decode " + length + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+		int runStart = offset;
+		for (FieldCodePair<? extends Number> fieldCodePair : fieldCodePairs) {
+			int runEnd = runStart + fieldCodePair.getCount();
+			Arrays.fill(dst, runStart, runEnd, fieldCodePair.getElement().byteValue());
+			runStart = runEnd;
+		}
+		recordDecode(length);
+		return length;
+	}
+	
+	public static int decodeInto(List<? extends FieldCodePair<? extends Number>> fieldCodePairs, byte[] dst) throws IndexOutOfBoundsException {
+		return decodeInto(fieldCodePairs, dst, 0);
 	}
 	
 	public static <T> List<T> toAPI(FieldCodePair<T>... fieldCodePairs) {
 		// Does not use other #toAPI method to avoid computational inefficiency of Array#asList
-		List<T> elements = new ArrayList<T>();
+		int length = 0;
+		for (FieldCodePair<T> fieldCodePair : fieldCodePairs) {
+			length += fieldCodePair.getCount();
+		}
+		List<T> elements = new ArrayList<T>(length);
 		for (FieldCodePair<T> fieldCodePair : fieldCodePairs) {
 			allocateElements(fieldCodePair, elements);
 		}
+		recordDecode(elements.size());
 		return elements;
 	}
 	
 	public static <T> List<FieldCodePair<T>> toSpace(List<T> elements) {
+		recordEncode(elements.size());
 		List<FieldCodePair<T>> fieldCodePairs = new ArrayList<FieldCodePair<T>>();
 		if (elements.isEmpty()) {
 			return fieldCodePairs;
@@ -40,7 +111,7 @@ public class RLEConverter<T> {
 			if(elements.get(i).equals(currentFieldCodePair.getElement())) {
 				currentFieldCodePair.incrementCount();
 			} else {
-				currentFieldCodePair = allocateFieldCodePair(elements.get(0), fieldCodePairs);
+				currentFieldCodePair = allocateFieldCodePair(elements.get(i), fieldCodePairs);
 			}
 		}
 		return fieldCodePairs;
@@ -54,6 +125,7 @@ public class RLEConverter<T> {
 	
 	public static <T> List<FieldCodePair<T>> toSpace(T... elements) {
 		// Does not use other #toSpace method to avoid computational inefficiency of Array#asList
+		recordEncode(elements.length);
 		List<FieldCodePair<T>> fieldCodePairs = new ArrayList<FieldCodePair<T>>();
 		if (elements.length == 0) {
 			return fieldCodePairs;
@@ -63,9 +135,37 @@ public class RLEConverter<T> {
 			if(elements[i].equals(currentFieldCodePair.getElement())) {
 				currentFieldCodePair.incrementCount();
 			} else {
-				currentFieldCodePair = allocateFieldCodePair(elements[0], fieldCodePairs);
+				currentFieldCodePair = allocateFieldCodePair(elements[i], fieldCodePairs);
 			}
 		}
 		return fieldCodePairs;
 	}
+	
+	public static <T> List<FieldCodePair<T>> toSpaceInParallel(T[] elements) {
+		return toSpaceInParallel(elements, ForkJoinPool.commonPool());
+	}
+	
+	// Produces exactly the same runs as #toSpace, but encodes chunks of the elements on every worker of the pool
+	public static <T> List<FieldCodePair<T>> toSpaceInParallel(T[] elements, ForkJoinPool pool) {
+		recordEncode(elements.length);
+		return pool.invoke(new RLEParallelEncoder<T>(elements));
+	}
+	
+	// The following never materialize a whole List, so they suit streams too long to hold in memory
+	
+	public static <T> RLEStreamEncoder<T> toSpaceIncrementally(Consumer<? super FieldCodePair<T>> sink) {
+		return new RLEStreamEncoder<T>(sink);
+	}
+	
+	public static <T> Iterator<T> toAPILazily(Iterable<? extends FieldCodePair<T>> fieldCodePairs) {
+		return new RLEStreamDecoder<T>(fieldCodePairs.iterator());
+	}
+	
+	public static <T> Stream<T> toAPIStream(Iterable<? extends FieldCodePair<T>> fieldCodePairs) {
+		Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(toAPILazily(fieldCodePairs), Spliterator.ORDERED);
+		return StreamSupport.stream(spliterator, false);
+	}
+
+	// Null unless set, and shared by every caller
+	private static volatile RLEMetrics metrics;
 }
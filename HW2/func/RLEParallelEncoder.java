@@ -0,0 +1,81 @@
+package func;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import model.FieldCodePair;
+
+/**
+ * Run-length encodes a slice of an array on a ForkJoinPool by halving it until the slices are small enough to scan,
+ * then joining the halves back together
+ *
+ * When one half ends with the same element that the other half starts with, the two boundary runs are merged, so
+ * the result is exactly what the sequential {@link RLEConverter#toSpace(Object...)} produces.
+ */
+@SuppressWarnings("serial")
+public class RLEParallelEncoder<T> extends RecursiveTask<List<FieldCodePair<T>>> {
+
+	public RLEParallelEncoder(T[] elements) {
+		this(elements, 0, elements.length);
+	}
+
+	private RLEParallelEncoder(T[] inElements, int inStart, int inEnd) {
+		elements = inElements;
+		start = inStart;
+		end = inEnd;
+	}
+
+	@Override
+	protected List<FieldCodePair<T>> compute() {
+		if (end - start <= SEQUENTIAL_THRESHOLD) {
+			return encodeSequentially();
+		}
+		int middle = (start + end) >>> 1;
+		RLEParallelEncoder<T> headTask = new RLEParallelEncoder<T>(elements, start, middle);
+		RLEParallelEncoder<T> tailTask = new RLEParallelEncoder<T>(elements, middle, end);
+		headTask.fork();
+		List<FieldCodePair<T>> tailPairs = tailTask.compute();
+		return join(headTask.join(), tailPairs);
+	}
+
+	private List<FieldCodePair<T>> encodeSequentially() {
+		List<FieldCodePair<T>> fieldCodePairs = new ArrayList<FieldCodePair<T>>();
+		if (start == end) {
+			return fieldCodePairs;
+		}
+		FieldCodePair<T> currentFieldCodePair = new FieldCodePair<T>(1, elements[start]);
+		fieldCodePairs.add(currentFieldCodePair);
+		for (int i = start + 1; i < end; i++) {
+			if (elements[i].equals(currentFieldCodePair.getElement())) {
+				currentFieldCodePair.incrementCount();
+			} else {
+				currentFieldCodePair = new FieldCodePair<T>(1, elements[i]);
+				fieldCodePairs.add(currentFieldCodePair);
+			}
+		}
+		return fieldCodePairs;
+	}
+
+	// Appends the tail's runs to the head's, merging the run on either side of the boundary when they match
+	private List<FieldCodePair<T>> join(List<FieldCodePair<T>> headPairs, List<FieldCodePair<T>> tailPairs) {
+		if (headPairs.isEmpty()) {
+			return tailPairs;
+		}
+		int firstTailIndex = 0;
+		FieldCodePair<T> lastHeadPair = headPairs.get(headPairs.size() - 1);
+		if (!tailPairs.isEmpty() && lastHeadPair.getElement().equals(tailPairs.get(0).getElement())) {
+			lastHeadPair.setCountTo(lastHeadPair.getCount() + tailPairs.get(0).getCount());
+			firstTailIndex = 1;
+		}
+		headPairs.addAll(tailPairs.subList(firstTailIndex, tailPairs.size()));
+		return headPairs;
+	}
+
+	private final T[] elements;
+	private final int start;
+	private final int end;
+
+	// Below this many elements, splitting costs more than scanning
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+}
@@ -0,0 +1,175 @@
+package func;
+
+import java.util.Arrays;
+import java.util.List;
+
+import model.PixelRetrievable;
+import model.RLESequence;
+
+/**
+ * Finds a pattern of pixels inside a sequence by comparing runs against runs, so that searching for a long
+ * repetitive pattern costs O(runs) instead of O(pixels)
+ *
+ * A pattern of m runs matches wherever the text has m consecutive runs whose pixels agree with the pattern's,
+ * whose inner m - 2 runs have exactly the pattern's counts, and whose first and last runs are at least as long as
+ * the pattern's first and last runs. The inner runs are located with Knuth-Morris-Pratt over (pixel, count) pairs,
+ * and only then are the two edge runs checked.
+ *
+ * A searcher is built once per pattern and can then be reused against any number of sequences.
+ */
+public class RLESearcher {
+
+	public RLESearcher(PixelRetrievable pattern) {
+		patternRuns = new Runs(pattern);
+		failureTable = buildFailureTable();
+	}
+
+	public RLESearcher(List<?> pattern) {
+		patternRuns = new Runs(pattern);
+		failureTable = buildFailureTable();
+	}
+
+	/**
+	 * @return a searcher for the pixels of any RLESequence, reading its runs directly whenever it exposes them
+	 */
+	public static RLESearcher forPattern(RLESequence<?, ?, ?> pattern) {
+		if (pattern instanceof PixelRetrievable) {
+			return new RLESearcher((PixelRetrievable)pattern);
+		}
+		return new RLESearcher(pattern.getAll());
+	}
+
+	/**
+	 * @return the index of the first pixel of the first match of the pattern in the text, or -1 if there is none
+	 */
+	public int indexIn(PixelRetrievable text) {
+		Runs textRuns = new Runs(text);
+		int patternRunCount = patternRuns.runCount;
+		if (patternRunCount == 0) {
+			// The empty pattern matches before the first pixel
+			return 0;
+		} else if (patternRunCount == 1) {
+			return indexOfSingleRunIn(textRuns);
+		}
+		return indexOfInnerRunsIn(textRuns);
+	}
+
+	// A single run pattern fits at the start of the first long enough run of the same pixel
+	private int indexOfSingleRunIn(Runs textRuns) {
+		int pixel = patternRuns.pixels[0];
+		int count = patternRuns.counts[0];
+		for (int i = 0; i < textRuns.runCount; i++) {
+			if (textRuns.pixels[i] == pixel && textRuns.counts[i] >= count) {
+				return textRuns.starts[i];
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	// Knuth-Morris-Pratt over the runs strictly between the pattern's first and last run. With no inner runs,
+	// every pair of neighboring text runs is a candidate instead.
+	private int indexOfInnerRunsIn(Runs textRuns) {
+		int innerRunCount = patternRuns.runCount - 2;
+		int matchedRuns = 0;
+		for (int i = 1; i < textRuns.runCount; i++) {
+			if (innerRunCount > 0) {
+				while (matchedRuns > 0 && !isInnerRunAt(textRuns, i, matchedRuns)) {
+					matchedRuns = failureTable[matchedRuns - 1];
+				}
+				if (isInnerRunAt(textRuns, i, matchedRuns)) {
+					matchedRuns++;
+				}
+				if (matchedRuns < innerRunCount) {
+					continue;
+				}
+				matchedRuns = failureTable[matchedRuns - 1];
+			}
+			// Text run i is the last inner run of a match, or the first run of a pair when there are no inner runs
+			int firstRun = innerRunCount > 0 ? i - innerRunCount : i - 1;
+			int lastRun = firstRun + patternRuns.runCount - 1;
+			if (lastRun < textRuns.runCount && hasMatchingEdgesAt(textRuns, firstRun, lastRun)) {
+				return textRuns.starts[firstRun] + textRuns.counts[firstRun] - patternRuns.counts[0];
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	private boolean isInnerRunAt(Runs textRuns, int textRun, int innerRun) {
+		return textRuns.pixels[textRun] == patternRuns.pixels[innerRun + 1]
+				&& textRuns.counts[textRun] == patternRuns.counts[innerRun + 1];
+	}
+
+	private boolean hasMatchingEdgesAt(Runs textRuns, int firstRun, int lastRun) {
+		int lastPatternRun = patternRuns.runCount - 1;
+		return textRuns.pixels[firstRun] == patternRuns.pixels[0]
+				&& textRuns.counts[firstRun] >= patternRuns.counts[0]
+				&& textRuns.pixels[lastRun] == patternRuns.pixels[lastPatternRun]
+				&& textRuns.counts[lastRun] >= patternRuns.counts[lastPatternRun];
+	}
+
+	// failureTable[k] is the length of the longest proper prefix of the first k + 1 inner runs that is also a suffix of them
+	private int[] buildFailureTable() {
+		int innerRunCount = Math.max(patternRuns.runCount - 2, 0);
+		int[] table = new int[innerRunCount];
+		int prefixLength = 0;
+		for (int k = 1; k < innerRunCount; k++) {
+			while (prefixLength > 0 && !isSameInnerRun(k, prefixLength)) {
+				prefixLength = table[prefixLength - 1];
+			}
+			if (isSameInnerRun(k, prefixLength)) {
+				prefixLength++;
+			}
+			table[k] = prefixLength;
+		}
+		return table;
+	}
+
+	private boolean isSameInnerRun(int innerRun, int anotherInnerRun) {
+		return patternRuns.pixels[innerRun + 1] == patternRuns.pixels[anotherInnerRun + 1]
+				&& patternRuns.counts[innerRun + 1] == patternRuns.counts[anotherInnerRun + 1];
+	}
+
+	// The canonical runs of a pixel sequence along with the index of each run's first pixel
+	private static class Runs {
+
+		Runs(PixelRetrievable sequence) {
+			sequence.forEachRun(this::add);
+		}
+
+		Runs(List<?> pixels) {
+			for (Object pixel : pixels) {
+				add(((Number)pixel).intValue(), 1);
+			}
+		}
+
+		private void add(int pixel, int count) {
+			if (runCount > 0 && pixels[runCount - 1] == pixel) {
+				counts[runCount - 1] += count;
+			} else {
+				if (runCount == pixels.length) {
+					int newCapacity = Math.max(runCount * 2, MINIMUM_RUN_CAPACITY);
+					pixels = Arrays.copyOf(pixels, newCapacity);
+					counts = Arrays.copyOf(counts, newCapacity);
+					starts = Arrays.copyOf(starts, newCapacity);
+				}
+				pixels[runCount] = pixel;
+				counts[runCount] = count;
+				starts[runCount] = length;
+				runCount++;
+			}
+			length += count;
+		}
+
+		private int[] pixels = new int[0];
+		private int[] counts = new int[0];
+		private int[] starts = new int[0];
+		private int runCount;
+		private int length;
+	}
+
+	private final Runs patternRuns;
+	private final int[] failureTable;
+
+	private static final int MINIMUM_RUN_CAPACITY = 8;
+	private static final int UNFOUND_INDEX = -1;
+}
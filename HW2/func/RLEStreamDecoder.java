@@ -0,0 +1,40 @@
+package func;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import model.FieldCodePair;
+
+/**
+ * Lazily expands runs into their elements, reading the next run only once the current one is used up
+ *
+ * Nothing is materialized, so decoding takes O(1) memory no matter how long the runs are.
+ */
+public class RLEStreamDecoder<T> implements Iterator<T> {
+
+	public RLEStreamDecoder(Iterator<? extends FieldCodePair<T>> fieldCodePairs) {
+		this.fieldCodePairs = fieldCodePairs;
+	}
+
+	public boolean hasNext() {
+		// Skips empty runs, which a well-formed run list never has but an arbitrary source might
+		while (remainingInRun == 0 && fieldCodePairs.hasNext()) {
+			FieldCodePair<T> fieldCodePair = fieldCodePairs.next();
+			currentElement = fieldCodePair.getElement();
+			remainingInRun = fieldCodePair.getCount();
+		}
+		return remainingInRun > 0;
+	}
+
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("There are no more elements left in the runs");
+		}
+		remainingInRun--;
+		return currentElement;
+	}
+
+	private final Iterator<? extends FieldCodePair<T>> fieldCodePairs;
+	private T currentElement;
+	private int remainingInRun;
+}
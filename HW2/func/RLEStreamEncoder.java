@@ -0,0 +1,124 @@
+package func;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import model.FieldCodePair;
+
+/**
+ * Run-length encodes elements that arrive one at a time or in chunks, handing each run to a sink as soon as it ends
+ *
+ * Only the run currently being counted is held in memory, so streams of any length can be encoded. Runs are emitted
+ * in order and never empty. No two emitted neighbors share an element, except that a run longer than
+ * Integer.MAX_VALUE is emitted as full runs of Integer.MAX_VALUE followed by the remainder. Call {@link #flush()}
+ * once the stream has ended to emit the final run.
+ */
+public class RLEStreamEncoder<T> {
+
+	public RLEStreamEncoder(Consumer<? super FieldCodePair<T>> sink) {
+		this.sink = sink;
+	}
+
+	public void push(T element) {
+		push(element, 1);
+	}
+
+	/**
+	 * Pushes count copies of the element at once, such as a run decoded from another source
+	 */
+	public void push(T element, int count) {
+		if (count <= 0) {
+			return;
+		}
+		if (currentCount > 0 && currentElement.equals(element)) {
+			if (count > Integer.MAX_VALUE - currentCount) {
+				// The run no longer fits in a count, so it is emitted full and the rest carried into a new one
+				count -= Integer.MAX_VALUE - currentCount;
+				currentCount = Integer.MAX_VALUE;
+				emitCurrentRun();
+				currentElement = element;
+				currentCount = count;
+			} else {
+				currentCount += count;
+			}
+		} else {
+			emitCurrentRun();
+			currentElement = element;
+			currentCount = count;
+		}
+	}
+
+	/**
+	 * Emits the run in progress, if any. Pushing afterward starts a new run even if the element matches.
+	 */
+	public void flush() {
+		emitCurrentRun();
+	}
+
+	private void emitCurrentRun() {
+		if (currentCount > 0) {
+			sink.accept(new FieldCodePair<T>(currentCount, currentElement));
+			currentCount = 0;
+			currentElement = null;
+		}
+	}
+
+	/**
+	 * Encodes every remaining unsigned byte of the stream as a pixel, reading it in chunks, and then flushes
+	 * 
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public static void encodePixels(InputStream pixelStream, Consumer<? super FieldCodePair<Integer>> sink) throws IOException {
+		RLEStreamEncoder<Integer> encoder = new RLEStreamEncoder<Integer>(sink);
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int chunkLength = pixelStream.read(chunk);
+		while (chunkLength != END_OF_STREAM) {
+			pushPixels(encoder, chunk, 0, chunkLength);
+			chunkLength = pixelStream.read(chunk);
+		}
+		encoder.flush();
+	}
+
+	/**
+	 * Encodes every remaining unsigned byte of the buffer as a pixel, advancing its position, and then flushes
+	 */
+	public static void encodePixels(ByteBuffer pixelBuffer, Consumer<? super FieldCodePair<Integer>> sink) {
+		RLEStreamEncoder<Integer> encoder = new RLEStreamEncoder<Integer>(sink);
+		if (pixelBuffer.hasArray()) {
+			int start = pixelBuffer.arrayOffset() + pixelBuffer.position();
+			pushPixels(encoder, pixelBuffer.array(), start, pixelBuffer.remaining());
+			pixelBuffer.position(pixelBuffer.limit());
+		} else {
+			byte[] chunk = new byte[Math.min(CHUNK_SIZE, pixelBuffer.remaining())];
+			while (pixelBuffer.hasRemaining()) {
+				int chunkLength = Math.min(chunk.length, pixelBuffer.remaining());
+				pixelBuffer.get(chunk, 0, chunkLength);
+				pushPixels(encoder, chunk, 0, chunkLength);
+			}
+		}
+		encoder.flush();
+	}
+
+	// Counts each run within the chunk first, so a pixel is only boxed once per run instead of once per pixel
+	private static void pushPixels(RLEStreamEncoder<Integer> encoder, byte[] chunk, int offset, int chunkLength) {
+		int end = offset + chunkLength;
+		int runStart = offset;
+		for (int i = offset + 1; i <= end; i++) {
+			if (i == end || chunk[i] != chunk[runStart]) {
+				encoder.push(chunk[runStart] & PIXEL_MASK, i - runStart);
+				runStart = i;
+			}
+		}
+	}
+
+	private final Consumer<? super FieldCodePair<T>> sink;
+	private T currentElement;
+	private int currentCount;
+
+	private static final int CHUNK_SIZE = 8192;
+	private static final int END_OF_STREAM = -1;
+	private static final int PIXEL_MASK = 0xFF;
+}
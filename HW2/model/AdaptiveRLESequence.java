@@ -0,0 +1,305 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+
+/**
+ * A RLESequence that picks its own storage, keeping noisy pixels raw (one byte per pixel) and flat pixels as runs
+ *
+ * Both representations know how many runs they hold at all times, so after every edit the sequence compares what each
+ * would cost and converts once the other would be clearly cheaper. Runs are only adopted once they would take at most
+ * half of the raw bytes, and only abandoned once they would take more than the raw bytes. The gap between the two
+ * thresholds means that at least length / (4 * BYTES_PER_RUN) edits separate any two conversions, so converting costs
+ * O(1) amortized per edit, and a sequence hovering around the break even point never converts back and forth.
+ */
+public class AdaptiveRLESequence implements RLESequence<Integer, Integer, AdaptiveRLESequence>, PixelRetrievable, BatchEditable {
+
+	public AdaptiveRLESequence() {
+		this(new byte[0]);
+	}
+
+	public AdaptiveRLESequence(Integer... inPixels) {
+		this(Arrays.asList(inPixels));
+	}
+
+	public AdaptiveRLESequence(List<Integer> inPixels) {
+		byte[] pixels = new byte[inPixels.size()];
+		for (int i = 0; i < pixels.length; i++) {
+			Integer pixel = inPixels.get(i);
+			if (pixel < 0 || pixel > 255) {
+				throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+			}
+			pixels[i] = (byte)(int)pixel;
+		}
+		raw = new RawPixelSequence(pixels, pixels.length);
+		adapt();
+	}
+
+	public AdaptiveRLESequence(byte[] inPixels) {
+		raw = new RawPixelSequence(Arrays.copyOf(inPixels, inPixels.length), inPixels.length);
+		adapt();
+	}
+
+	private AdaptiveRLESequence(RawPixelSequence inRaw) {
+		raw = inRaw;
+		adapt();
+	}
+
+	private AdaptiveRLESequence(RLESequenceV3 inRuns) {
+		runs = inRuns;
+		adapt();
+	}
+
+	/**
+	 * @return whether the pixels are currently stored as runs rather than as raw bytes
+	 */
+	public boolean isRunLengthEncoded() {
+		return runs != null;
+	}
+
+	// Exactly one of the two representations is in use at any time
+	private RLESequence<Integer, Integer, ?> sequence() {
+		return raw != null ? raw : runs;
+	}
+
+	private PixelRetrievable pixelSequence() {
+		return raw != null ? raw : runs;
+	}
+
+	private void adapt() {
+		if (raw != null) {
+			if ((long)raw.runCount() * BYTES_PER_RUN * 2 <= raw.length()) {
+				runs = RLESequenceV3.ofRuns(raw);
+				raw = null;
+			}
+		} else if ((long)runs.runCount() * BYTES_PER_RUN > runs.length()) {
+			raw = new RawPixelSequence(runs.toByteArray(), runs.length());
+			runs = null;
+		}
+	}
+
+	private static RLESequence<?, ?, ?> unwrap(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof AdaptiveRLESequence) {
+			return ((AdaptiveRLESequence)sequence).sequence();
+		}
+		return sequence;
+	}
+
+	public boolean contains(Integer pixel) {
+		return sequence().contains(pixel);
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		return sequence().containsAll(pixels);
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		return sequence().containsAll(pixels);
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		return sequence().contains(pixelSequence);
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		return sequence().contains(pixelSequence);
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		return sequence().indexOfFirst(pixel);
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		return sequence().indexOfLast(pixel);
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		return sequence().indexesOf(pixel);
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		sequence().replaceAt(index, newPixel);
+		adapt();
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		sequence().replaceFirst(oldPixel, newPixel);
+		adapt();
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		sequence().replaceLast(oldPixel, newPixel);
+		adapt();
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		sequence().replaceAll(oldPixel, newPixel);
+		adapt();
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		sequence().insert(newPixel, index);
+		adapt();
+	}
+
+	public void append(Integer newPixel) {
+		sequence().append(newPixel);
+		adapt();
+	}
+
+	public void prepend(Integer newPixel) {
+		sequence().prepend(newPixel);
+		adapt();
+	}
+
+	public void remove(Integer index) {
+		sequence().remove(index);
+		adapt();
+	}
+
+	public void removeFirst(Integer pixel) {
+		sequence().removeFirst(pixel);
+		adapt();
+	}
+
+	public void removeLast(Integer pixel) {
+		sequence().removeLast(pixel);
+		adapt();
+	}
+
+	public void removeAll(Integer pixel) {
+		sequence().removeAll(pixel);
+		adapt();
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		if (raw != null) {
+			raw.edit(batchRecorder);
+		} else {
+			runs.edit(batchRecorder);
+		}
+		adapt();
+	}
+
+	public boolean isEmpty() {
+		return sequence().isEmpty();
+	}
+
+	public Integer getAt(Integer index) {
+		return sequence().getAt(index);
+	}
+
+	public List<Integer> getAll() {
+		return sequence().getAll();
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		return sequence().getFrom(startIndex);
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		return sequence().getTo(endIndex);
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		return sequence().getBetween(startIndex, endIndex);
+	}
+
+	/**
+	 * @return the pixels of this sequence, one unsigned byte per pixel
+	 */
+	public byte[] toByteArray() {
+		byte[] pixels = new byte[length()];
+		copyInto(pixels, 0);
+		return pixels;
+	}
+
+	public int getAtInt(int index) {
+		return pixelSequence().getAtInt(index);
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		pixelSequence().forEachRun(runConsumer);
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		return pixelSequence().copyInto(dst, offset);
+	}
+
+	public IntStream pixels() {
+		return pixelSequence().pixels();
+	}
+
+	public Integer length() {
+		return sequence().length();
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean containsSubsequence(RLESequence sequence) {
+		return sequence().containsSubsequence(unwrap(sequence));
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		return sequence().indexOfSubsequence(unwrap(sequence));
+	}
+
+	public AdaptiveRLESequence subsequenceFrom(Integer startIndex) {
+		return subsequenceBetween(startIndex, length());
+	}
+
+	public AdaptiveRLESequence subsequenceTo(Integer endIndex) {
+		return subsequenceBetween(0, endIndex);
+	}
+
+	public AdaptiveRLESequence subsequenceBetween(Integer startIndex, Integer endIndex) {
+		if (raw != null) {
+			return new AdaptiveRLESequence(raw.subsequenceBetween(startIndex, endIndex));
+		}
+		return new AdaptiveRLESequence(runs.subsequenceBetween(startIndex, endIndex));
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> sequence) {
+		sequence().addToHead(unwrap(sequence));
+		adapt();
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> sequence) {
+		sequence().addToTail(unwrap(sequence));
+		adapt();
+	}
+
+	public AdaptiveRLESequence copy() {
+		if (raw != null) {
+			return new AdaptiveRLESequence(raw.copy());
+		}
+		return new AdaptiveRLESequence(runs.copy());
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof AdaptiveRLESequence) {
+			AdaptiveRLESequence anotherAdaptiveRLESequence = (AdaptiveRLESequence)anotherObj;
+			return Arrays.equals(toByteArray(), anotherAdaptiveRLESequence.toByteArray());
+		}
+		return false;
+	}
+
+	// The raw and run encoded forms hash the length and runs alike, so equal sequences hash the same in either
+	public int hashCode() {
+		return pixelSequence().hashCode();
+	}
+
+	public String toString() {
+		return sequence().toString();
+	}
+
+	// Null whenever the other representation is in use
+	private RawPixelSequence raw;
+	private RLESequenceV3 runs;
+
+	// One pixel byte, one count and one prefix sum per run, against one byte per raw pixel
+	private static final int BYTES_PER_RUN = 9;
+}
@@ -0,0 +1,8 @@
+package model;
+
+import java.util.function.Consumer;
+
+public interface BatchEditable {
+	// Records edits into a batch through the given consumer, then applies all of them in a single pass over the runs
+	public void edit(Consumer<EditBatch> batchRecorder);
+}
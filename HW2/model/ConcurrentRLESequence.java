@@ -0,0 +1,399 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+
+/**
+ * A RLESequence that any number of threads may read and modify at the same time
+ *
+ * The pixels are split into segments of SEGMENT_LENGTH pixels, each held as an immutable PersistentRLESequence and
+ * replaced whole (by an O(log n) copy on write) whenever it changes. Segment i is guarded by lock i % STRIPES:
+ *
+ * - getAt and getAtInt read the current segment without any lock, as a published segment never changes.
+ * - replaceAt and fillBetween only lock the segments they touch, so writers painting disjoint regions rarely contend.
+ * - Every other read works on a consistent snapshot of all the segments, taken optimistically and only falling back
+ *   to read locks when a writer got in the way.
+ * - Every other write, including all that change the length, locks every stripe and rebuilds the segments.
+ */
+public class ConcurrentRLESequence implements RLESequence<Integer, Integer, ConcurrentRLESequence>, PixelRetrievable, BatchEditable {
+
+	public ConcurrentRLESequence() {
+		this(new PersistentRLESequence());
+	}
+
+	public ConcurrentRLESequence(Integer... inPixels) {
+		this(new PersistentRLESequence(inPixels));
+	}
+
+	public ConcurrentRLESequence(List<Integer> inPixels) {
+		this(new PersistentRLESequence(inPixels));
+	}
+
+	public ConcurrentRLESequence(byte[] inPixels) {
+		this(new PersistentRLESequence(inPixels));
+	}
+
+	private ConcurrentRLESequence(PersistentRLESequence inPixels) {
+		locks = new StampedLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new StampedLock();
+		}
+		layout = new Layout(inPixels);
+	}
+
+	private static void assertIsValid(Integer pixel) throws IllegalArgumentException {
+		if (pixel < 0 || pixel > 255) {
+			throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+		}
+	}
+
+	private static void assertIsInBounds(int index, int length) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+
+	private static void assertIsInRange(int startIndex, int endIndex, int length) throws IndexOutOfBoundsException {
+		if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Start Index: " + startIndex + ", End Index: " + endIndex + ", Length: " + length);
+		}
+	}
+
+	// Locks the stripes of every segment from fromSegment to toSegment (inclusive), always in ascending stripe order
+	private long[] lockSegments(int fromSegment, int toSegment) {
+		long[] stamps = new long[STRIPES];
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			if (toSegment - fromSegment + 1 >= STRIPES || Math.floorMod(stripe - fromSegment, STRIPES) <= toSegment - fromSegment) {
+				stamps[stripe] = locks[stripe].writeLock();
+			}
+		}
+		return stamps;
+	}
+
+	private long[] lockAll() {
+		return lockSegments(0, STRIPES - 1);
+	}
+
+	// A write lock is never granted a stamp of 0, so 0 marks the stripes that were left alone
+	private void unlock(long[] stamps) {
+		for (int stripe = STRIPES - 1; stripe >= 0; stripe--) {
+			if (stamps[stripe] != 0) {
+				locks[stripe].unlockWrite(stamps[stripe]);
+			}
+		}
+	}
+
+	/**
+	 * @return all the pixels as they were at a single point in time, which no later change to this sequence affects
+	 */
+	public PersistentRLESequence snapshot() {
+		long[] stamps = new long[STRIPES];
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			stamps[stripe] = locks[stripe].tryOptimisticRead();
+		}
+		// Every segment read is complete and immutable, so a torn set of segments is merely discarded below
+		PersistentRLESequence pixels = layout.join();
+		if (isStillValid(stamps)) {
+			return pixels;
+		}
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			stamps[stripe] = locks[stripe].readLock();
+		}
+		try {
+			return layout.join();
+		} finally {
+			for (int stripe = STRIPES - 1; stripe >= 0; stripe--) {
+				locks[stripe].unlockRead(stamps[stripe]);
+			}
+		}
+	}
+
+	private boolean isStillValid(long[] stamps) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			if (!locks[stripe].validate(stamps[stripe])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Applies the edit to all the pixels at once, only publishing the result if the edit completes
+	private void editWhole(Consumer<PersistentRLESequence> edit) {
+		long[] stamps = lockAll();
+		try {
+			PersistentRLESequence pixels = layout.join();
+			edit.accept(pixels);
+			layout = new Layout(pixels);
+		} finally {
+			unlock(stamps);
+		}
+	}
+
+	// Reads the pixels of another sequence before any lock is taken, as it may well be this very sequence
+	private static PersistentRLESequence piecesOf(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof ConcurrentRLESequence) {
+			return ((ConcurrentRLESequence)sequence).snapshot();
+		}
+		PersistentRLESequence pieces = new PersistentRLESequence();
+		pieces.addToTail(sequence);
+		return pieces;
+	}
+
+	public boolean contains(Integer pixel) {
+		return snapshot().contains(pixel);
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		return snapshot().containsAll(pixels);
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		return snapshot().containsAll(pixels);
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		return snapshot().contains(pixelSequence);
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		return snapshot().contains(pixelSequence);
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		return snapshot().indexOfFirst(pixel);
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		return snapshot().indexOfLast(pixel);
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		return snapshot().indexesOf(pixel);
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		assertIsValid(newPixel);
+		int segment = Math.max(index, 0) / SEGMENT_LENGTH;
+		long[] stamps = lockSegments(segment, segment);
+		try {
+			// Read only once the lock is held, as the segments can be rebuilt by any write that locks every stripe
+			Layout current = layout;
+			assertIsInBounds(index, current.length);
+			PersistentRLESequence replaced = current.segments.get(segment).copy();
+			replaced.replaceAt(index - segment * SEGMENT_LENGTH, newPixel);
+			current.segments.set(segment, replaced);
+		} finally {
+			unlock(stamps);
+		}
+	}
+
+	// Sets every pixel from startIndex (inclusive) to endIndex (exclusive) to the given pixel, all at once
+	public void fillBetween(int startIndex, int endIndex, int pixel) {
+		assertIsValid(pixel);
+		if (startIndex >= endIndex) {
+			assertIsInRange(startIndex, endIndex, layout.length);
+			return;
+		}
+		int fromSegment = Math.max(startIndex, 0) / SEGMENT_LENGTH;
+		int toSegment = (endIndex - 1) / SEGMENT_LENGTH;
+		long[] stamps = lockSegments(fromSegment, toSegment);
+		try {
+			Layout current = layout;
+			assertIsInRange(startIndex, endIndex, current.length);
+			for (int segment = fromSegment; segment <= toSegment; segment++) {
+				int segmentStart = segment * SEGMENT_LENGTH;
+				PersistentRLESequence original = current.segments.get(segment);
+				int fillStart = Math.max(startIndex - segmentStart, 0);
+				int fillEnd = Math.min(endIndex - segmentStart, original.length());
+				PersistentRLESequence filled = original.subsequenceTo(fillStart);
+				filled.addToTail(RLESequenceV3.ofRun(pixel, fillEnd - fillStart));
+				filled.addToTail(original.subsequenceFrom(fillEnd));
+				current.segments.set(segment, filled);
+			}
+		} finally {
+			unlock(stamps);
+		}
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		editWhole(pixels -> pixels.replaceFirst(oldPixel, newPixel));
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		editWhole(pixels -> pixels.replaceLast(oldPixel, newPixel));
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		editWhole(pixels -> pixels.replaceAll(oldPixel, newPixel));
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		editWhole(pixels -> pixels.insert(newPixel, index));
+	}
+
+	public void append(Integer newPixel) {
+		editWhole(pixels -> pixels.append(newPixel));
+	}
+
+	public void prepend(Integer newPixel) {
+		editWhole(pixels -> pixels.prepend(newPixel));
+	}
+
+	public void remove(Integer index) {
+		editWhole(pixels -> pixels.remove(index));
+	}
+
+	public void removeFirst(Integer pixel) {
+		editWhole(pixels -> pixels.removeFirst(pixel));
+	}
+
+	public void removeLast(Integer pixel) {
+		editWhole(pixels -> pixels.removeLast(pixel));
+	}
+
+	public void removeAll(Integer pixel) {
+		editWhole(pixels -> pixels.removeAll(pixel));
+	}
+
+	// The batch is recorded while every stripe is locked, so it must not touch this sequence itself
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		editWhole(pixels -> pixels.edit(batchRecorder));
+	}
+
+	public boolean isEmpty() {
+		return layout.length == 0;
+	}
+
+	public Integer getAt(Integer index) {
+		return getAtInt(index);
+	}
+
+	public List<Integer> getAll() {
+		return snapshot().getAll();
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		return snapshot().getFrom(startIndex);
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		return snapshot().getTo(endIndex);
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		return snapshot().getBetween(startIndex, endIndex);
+	}
+
+	public int getAtInt(int index) {
+		Layout current = layout;
+		assertIsInBounds(index, current.length);
+		return current.segments.get(index / SEGMENT_LENGTH).getAtInt(index % SEGMENT_LENGTH);
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		snapshot().forEachRun(runConsumer);
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		return snapshot().copyInto(dst, offset);
+	}
+
+	public IntStream pixels() {
+		return snapshot().pixels();
+	}
+
+	public Integer length() {
+		return layout.length;
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean containsSubsequence(RLESequence sequence) {
+		return snapshot().containsSubsequence(sequence);
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		return snapshot().indexOfSubsequence(sequence);
+	}
+
+	public ConcurrentRLESequence subsequenceFrom(Integer startIndex) {
+		return new ConcurrentRLESequence(snapshot().subsequenceFrom(startIndex));
+	}
+
+	public ConcurrentRLESequence subsequenceTo(Integer endIndex) {
+		return new ConcurrentRLESequence(snapshot().subsequenceTo(endIndex));
+	}
+
+	public ConcurrentRLESequence subsequenceBetween(Integer startIndex, Integer endIndex) {
+		return new ConcurrentRLESequence(snapshot().subsequenceBetween(startIndex, endIndex));
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> sequence) {
+		PersistentRLESequence head = piecesOf(sequence);
+		editWhole(pixels -> pixels.addToHead(head));
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> sequence) {
+		PersistentRLESequence tail = piecesOf(sequence);
+		editWhole(pixels -> pixels.addToTail(tail));
+	}
+
+	public ConcurrentRLESequence copy() {
+		return new ConcurrentRLESequence(snapshot());
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof ConcurrentRLESequence) {
+			ConcurrentRLESequence anotherConcurrentRLESequence = (ConcurrentRLESequence)anotherObj;
+			return snapshot().equals(anotherConcurrentRLESequence.snapshot());
+		}
+		return false;
+	}
+
+	// Hashes a consistent snapshot's length and runs, as equals compares them
+	public int hashCode() {
+		return snapshot().hashCode();
+	}
+
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * The segments of the pixels at some length. Every segment but the last holds exactly SEGMENT_LENGTH pixels, so the
+	 * segment of a pixel follows from its index alone. A layout is only ever replaced while every stripe is locked,
+	 * while each of its segments is replaced under its own stripe's lock.
+	 */
+	private static final class Layout {
+
+		Layout(PersistentRLESequence pixels) {
+			length = pixels.length();
+			segments = new AtomicReferenceArray<PersistentRLESequence>((length + SEGMENT_LENGTH - 1) / SEGMENT_LENGTH);
+			for (int i = 0; i < segments.length(); i++) {
+				segments.set(i, pixels.subsequenceBetween(i * SEGMENT_LENGTH, Math.min((i + 1) * SEGMENT_LENGTH, length)));
+			}
+		}
+
+		// Concatenating trees costs O(log n) per segment, and coalesces the runs that meet at segment boundaries
+		PersistentRLESequence join() {
+			PersistentRLESequence pixels = new PersistentRLESequence();
+			for (int i = 0; i < segments.length(); i++) {
+				pixels.addToTail(segments.get(i));
+			}
+			return pixels;
+		}
+
+		final AtomicReferenceArray<PersistentRLESequence> segments;
+		final int length;
+	}
+
+	private final StampedLock[] locks;
+	private volatile Layout layout;
+
+	private static final int SEGMENT_LENGTH = 4096;
+	private static final int STRIPES = 64;
+}
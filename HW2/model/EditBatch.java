@@ -0,0 +1,137 @@
+package model;
+
+import java.util.Arrays;
+
+import func.IntIntConsumer;
+
+/**
+ * A set of pixel edits to be applied to a sequence all at once
+ *
+ * Every index refers to the sequence as it was before the batch, no matter which edits were recorded first, so the
+ * edits can be sorted by position and applied in one merge pass over the runs instead of one pass per edit.
+ * Pixels inserted at the same index keep the order they were recorded in and all go before the pixel at that index.
+ * When the same pixel is both replaced and removed, or edited more than once, the edit recorded last wins.
+ */
+public class EditBatch {
+
+	EditBatch(int inSourceLength) {
+		sourceLength = inSourceLength;
+		edits = new long[0];
+		pixels = new int[0];
+		editCount = 0;
+	}
+
+	public void replaceAt(int index, int newPixel) throws IndexOutOfBoundsException, IllegalArgumentException {
+		assertIsInBounds(index);
+		assertIsValid(newPixel);
+		record(index, OVERWRITE, newPixel);
+	}
+
+	// An index equal to the sequence's length appends the pixel
+	public void insert(int newPixel, int index) throws IndexOutOfBoundsException, IllegalArgumentException {
+		if (index != sourceLength) {
+			assertIsInBounds(index);
+		}
+		assertIsValid(newPixel);
+		record(index, INSERT, newPixel);
+	}
+
+	public void remove(int index) throws IndexOutOfBoundsException {
+		assertIsInBounds(index);
+		record(index, OVERWRITE, REMOVED_PIXEL);
+	}
+
+	public boolean isEmpty() {
+		return editCount == 0;
+	}
+
+	private void assertIsInBounds(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= sourceLength) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + sourceLength);
+		}
+	}
+
+	private void assertIsValid(int pixel) throws IllegalArgumentException {
+		if (pixel < 0 || pixel > 255) {
+			throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+		}
+	}
+
+	// Packs each edit into a single long that sorts by index, then inserts before overwrites, then recording order
+	private void record(int index, int kind, int pixel) {
+		if (editCount == edits.length) {
+			int newCapacity = Math.max(editCount * 2, MINIMUM_CAPACITY);
+			edits = Arrays.copyOf(edits, newCapacity);
+			pixels = Arrays.copyOf(pixels, newCapacity);
+		}
+		edits[editCount] = (long)index << INDEX_SHIFT | (long)kind << KIND_SHIFT | editCount;
+		pixels[editCount] = pixel;
+		editCount++;
+	}
+
+	/**
+	 * Streams the runs of the edited sequence to the sink, given the runs of the sequence the batch was recorded
+	 * against. Neighboring runs passed to the sink may hold the same pixel, so the sink must coalesce them.
+	 */
+	void applyTo(PixelRetrievable source, IntIntConsumer runSink) {
+		long[] sortedEdits = Arrays.copyOf(edits, editCount);
+		Arrays.sort(sortedEdits);
+		int[] nextEdit = {0};
+		int[] runStart = {0};
+		source.forEachRun((pixel, count) -> {
+			int runEnd = runStart[0] + count;
+			int position = runStart[0];
+			while (nextEdit[0] < sortedEdits.length && indexOf(sortedEdits[nextEdit[0]]) < runEnd) {
+				long edit = sortedEdits[nextEdit[0]++];
+				int index = indexOf(edit);
+				runSink.accept(pixel, index - position);
+				position = index;
+				if (kindOf(edit) == INSERT) {
+					runSink.accept(pixels[orderOf(edit)], 1);
+					continue;
+				}
+				// Only the last replacement or removal recorded for this index counts
+				while (nextEdit[0] < sortedEdits.length && indexOf(sortedEdits[nextEdit[0]]) == index) {
+					edit = sortedEdits[nextEdit[0]++];
+				}
+				if (pixels[orderOf(edit)] != REMOVED_PIXEL) {
+					runSink.accept(pixels[orderOf(edit)], 1);
+				}
+				position++;
+			}
+			runSink.accept(pixel, runEnd - position);
+			runStart[0] = runEnd;
+		});
+		// Whatever is left inserts at the very end
+		for (int i = nextEdit[0]; i < sortedEdits.length; i++) {
+			runSink.accept(pixels[orderOf(sortedEdits[i])], 1);
+		}
+	}
+
+	private static int indexOf(long edit) {
+		return (int)(edit >>> INDEX_SHIFT);
+	}
+
+	private static int kindOf(long edit) {
+		return (int)(edit >>> KIND_SHIFT) & 1;
+	}
+
+	private static int orderOf(long edit) {
+		return (int)(edit & ORDER_MASK);
+	}
+
+	private final int sourceLength;
+	// edits[i] holds an edit's index, kind and recording order, and pixels[order] the pixel it writes, if any
+	private long[] edits;
+	private int[] pixels;
+	private int editCount;
+
+	// Replacements and removals overwrite the pixel at their index, so they share a kind and only differ by pixel
+	private static final int INSERT = 0;
+	private static final int OVERWRITE = 1;
+	private static final int REMOVED_PIXEL = -1;
+	private static final int INDEX_SHIFT = 32;
+	private static final int KIND_SHIFT = 31;
+	private static final long ORDER_MASK = 0x7FFFFFFFL;
+	private static final int MINIMUM_CAPACITY = 8;
+}
@@ -0,0 +1,193 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import func.IntIntConsumer;
+import func.RLEBinaryFormat;
+
+/**
+ * Read-only pixel sequence served directly from a buffer in {@link RLEBinaryFormat}, typically a memory-mapped file
+ *
+ * Opening one only checks the header, so it is near-instant regardless of the file's size. The first random access
+ * lays down a sparse index holding one checkpoint every CHECKPOINT_INTERVAL runs, after which {@link #getAtInt(int)}
+ * binary searches the checkpoints and decodes at most CHECKPOINT_INTERVAL runs. Every read uses absolute positions,
+ * so one instance can be read from many threads at once.
+ */
+public class MappedRLESequence implements PixelRetrievable {
+
+	/**
+	 * @throws IOException
+	 *             if the buffer does not start with a supported {@link RLEBinaryFormat} header
+	 */
+	public MappedRLESequence(ByteBuffer inBuffer) throws IOException {
+		buffer = inBuffer.duplicate();
+		assertHasValidHeader();
+		runCount = buffer.getInt(RLEBinaryFormat.RUN_COUNT_OFFSET);
+		length = buffer.getInt(RLEBinaryFormat.LENGTH_OFFSET);
+	}
+
+	private void assertHasValidHeader() throws IOException {
+		if (buffer.limit() < RLEBinaryFormat.HEADER_LENGTH) {
+			throw new IOException("The buffer is too short to hold an RLE sequence header");
+		}
+		for (int i = 0; i < RLEBinaryFormat.MAGIC.length; i++) {
+			if (buffer.get(i) != RLEBinaryFormat.MAGIC[i]) {
+				throw new IOException("The buffer does not hold an RLE sequence");
+			}
+		}
+		int version = buffer.get(RLEBinaryFormat.VERSION_OFFSET);
+		if (version != RLEBinaryFormat.VERSION) {
+			throw new IOException("Unsupported RLE sequence format version " + version);
+		}
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public int runCount() {
+		return runCount;
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	public int getAtInt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+		if (checkpointStarts == null) {
+			buildCheckpoints();
+		}
+		// Finds the last checkpoint starting at or before the pixel
+		int foundCheckpoint = Arrays.binarySearch(checkpointStarts, index);
+		int checkpoint = foundCheckpoint >= 0 ? foundCheckpoint : -(foundCheckpoint + 1) - 1;
+		RunCursor cursor = new RunCursor(checkpointPositions[checkpoint], checkpointStarts[checkpoint]);
+		cursor.advance();
+		while (cursor.runEnd() <= index) {
+			cursor.advance();
+		}
+		return cursor.pixel;
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		RunCursor cursor = new RunCursor(RLEBinaryFormat.HEADER_LENGTH, 0);
+		for (int i = 0; i < runCount; i++) {
+			cursor.advance();
+			runConsumer.accept(cursor.pixel, cursor.count);
+		}
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		if (offset < 0 || offset > dst.length - length) {
+			throw new IndexOutOfBoundsException("Cannot copy " + length + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+		RunCursor cursor = new RunCursor(RLEBinaryFormat.HEADER_LENGTH, 0);
+		for (int i = 0; i < runCount; i++) {
+			cursor.advance();
+			Arrays.fill(dst, offset + cursor.runStart, offset + cursor.runEnd(), (byte)cursor.pixel);
+		}
+		return length;
+	}
+
+	public IntStream pixels() {
+		PrimitiveIterator.OfInt pixelIterator = new PrimitiveIterator.OfInt() {
+			public boolean hasNext() {
+				return pixelsLeftInRun > 0 || runsLeft > 0;
+			}
+
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException("There are no more pixels left in the sequence");
+				}
+				if (pixelsLeftInRun == 0) {
+					cursor.advance();
+					runsLeft--;
+					pixelsLeftInRun = cursor.count;
+				}
+				pixelsLeftInRun--;
+				return cursor.pixel;
+			}
+
+			private final RunCursor cursor = new RunCursor(RLEBinaryFormat.HEADER_LENGTH, 0);
+			private int runsLeft = runCount;
+			private int pixelsLeftInRun = 0;
+		};
+		Spliterator.OfInt spliterator = Spliterators.spliterator(pixelIterator, length,
+				Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+		return StreamSupport.intStream(spliterator, false);
+	}
+
+	// Scans every run once, recording where every CHECKPOINT_INTERVAL-th run starts in the buffer and in the pixels
+	private synchronized void buildCheckpoints() {
+		if (checkpointStarts != null) {
+			return;
+		}
+		int checkpointCount = (runCount + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+		int[] positions = new int[checkpointCount];
+		int[] starts = new int[checkpointCount];
+		RunCursor cursor = new RunCursor(RLEBinaryFormat.HEADER_LENGTH, 0);
+		for (int i = 0; i < runCount; i++) {
+			if (i % CHECKPOINT_INTERVAL == 0) {
+				positions[i / CHECKPOINT_INTERVAL] = cursor.position;
+				starts[i / CHECKPOINT_INTERVAL] = cursor.runEnd();
+			}
+			cursor.advance();
+		}
+		checkpointPositions = positions;
+		checkpointStarts = starts;
+	}
+
+	// Decodes one run at a time from an absolute position in the buffer
+	private class RunCursor {
+
+		RunCursor(int inPosition, int inRunStart) {
+			position = inPosition;
+			runStart = inRunStart;
+			count = 0;
+		}
+
+		void advance() {
+			runStart += count;
+			int value = 0;
+			int shift = 0;
+			byte nextByte;
+			do {
+				nextByte = buffer.get(position++);
+				value |= (nextByte & RLEBinaryFormat.VARINT_PAYLOAD_MASK) << shift;
+				shift += RLEBinaryFormat.VARINT_PAYLOAD_BITS;
+			} while ((nextByte & RLEBinaryFormat.VARINT_CONTINUATION_BIT) != 0);
+			count = value;
+			pixel = buffer.get(position++) & PIXEL_MASK;
+		}
+
+		int runEnd() {
+			return runStart + count;
+		}
+
+		private int position;
+		private int runStart;
+		private int count;
+		private int pixel;
+	}
+
+	private final ByteBuffer buffer;
+	private final int runCount;
+	private final int length;
+	// Built on the first random access. checkpointPositions is written before the volatile checkpointStarts,
+	// so any thread that sees the starts also sees the positions
+	private volatile int[] checkpointStarts;
+	private int[] checkpointPositions;
+
+	private static final int CHECKPOINT_INTERVAL = 64;
+	private static final int PIXEL_MASK = 0xFF;
+}
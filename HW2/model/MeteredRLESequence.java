@@ -0,0 +1,288 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Wraps any RLESequence of 0 to 255 pixels, reporting the latency and allocation of every call that completes to a
+ * RLEMetrics, so that different representations can be compared on the calls a real workload makes
+ *
+ * Calls the wrapped sequence makes on itself are not measured separately, and each measured call costs two clock reads
+ * and two allocation counter reads. Subsequences and copies come back wrapped in the same metrics.
+ */
+public class MeteredRLESequence implements RLESequence<Integer, Integer, MeteredRLESequence> {
+
+	public MeteredRLESequence(RLESequence<Integer, Integer, ?> inSequence, RLEMetrics inMetrics) {
+		sequence = inSequence;
+		metrics = inMetrics;
+	}
+
+	/**
+	 * @return the wrapped sequence, whose calls are not measured
+	 */
+	public RLESequence<Integer, Integer, ?> unwrap() {
+		return sequence;
+	}
+
+	private void begin() {
+		startBytes = RLEMetrics.allocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	private void end(String method) {
+		long latencyNanos = System.nanoTime() - startNanos;
+		metrics.recordCall(method, latencyNanos, RLEMetrics.allocatedBytes() - startBytes);
+	}
+
+	private static RLESequence<?, ?, ?> unwrap(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof MeteredRLESequence) {
+			return ((MeteredRLESequence)sequence).sequence;
+		}
+		return sequence;
+	}
+
+	public boolean contains(Integer pixel) {
+		begin();
+		boolean found = sequence.contains(pixel);
+		end("contains");
+		return found;
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		begin();
+		boolean found = sequence.containsAll(pixels);
+		end("containsAll");
+		return found;
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		begin();
+		boolean found = sequence.containsAll(pixels);
+		end("containsAll");
+		return found;
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		begin();
+		boolean found = sequence.contains(pixelSequence);
+		end("contains");
+		return found;
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		begin();
+		boolean found = sequence.contains(pixelSequence);
+		end("contains");
+		return found;
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		begin();
+		Integer index = sequence.indexOfFirst(pixel);
+		end("indexOfFirst");
+		return index;
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		begin();
+		Integer index = sequence.indexOfLast(pixel);
+		end("indexOfLast");
+		return index;
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		begin();
+		List<Integer> indexes = sequence.indexesOf(pixel);
+		end("indexesOf");
+		return indexes;
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		begin();
+		sequence.replaceAt(index, newPixel);
+		end("replaceAt");
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		begin();
+		sequence.replaceFirst(oldPixel, newPixel);
+		end("replaceFirst");
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		begin();
+		sequence.replaceLast(oldPixel, newPixel);
+		end("replaceLast");
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		begin();
+		sequence.replaceAll(oldPixel, newPixel);
+		end("replaceAll");
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		begin();
+		sequence.insert(newPixel, index);
+		end("insert");
+	}
+
+	public void append(Integer newPixel) {
+		begin();
+		sequence.append(newPixel);
+		end("append");
+	}
+
+	public void prepend(Integer newPixel) {
+		begin();
+		sequence.prepend(newPixel);
+		end("prepend");
+	}
+
+	public void remove(Integer index) {
+		begin();
+		sequence.remove(index);
+		end("remove");
+	}
+
+	public void removeFirst(Integer pixel) {
+		begin();
+		sequence.removeFirst(pixel);
+		end("removeFirst");
+	}
+
+	public void removeLast(Integer pixel) {
+		begin();
+		sequence.removeLast(pixel);
+		end("removeLast");
+	}
+
+	public void removeAll(Integer pixel) {
+		begin();
+		sequence.removeAll(pixel);
+		end("removeAll");
+	}
+
+	public boolean isEmpty() {
+		return sequence.isEmpty();
+	}
+
+	public Integer getAt(Integer index) {
+		begin();
+		Integer pixel = sequence.getAt(index);
+		end("getAt");
+		return pixel;
+	}
+
+	public List<Integer> getAll() {
+		begin();
+		List<Integer> pixels = sequence.getAll();
+		end("getAll");
+		return pixels;
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		begin();
+		List<Integer> pixels = sequence.getFrom(startIndex);
+		end("getFrom");
+		return pixels;
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		begin();
+		List<Integer> pixels = sequence.getTo(endIndex);
+		end("getTo");
+		return pixels;
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		begin();
+		List<Integer> pixels = sequence.getBetween(startIndex, endIndex);
+		end("getBetween");
+		return pixels;
+	}
+
+	public Integer length() {
+		return sequence.length();
+	}
+
+	public boolean containsSubsequence(RLESequence<?, ?, ?> anotherSequence) {
+		RLESequence<?, ?, ?> unwrapped = unwrap(anotherSequence);
+		begin();
+		boolean found = sequence.containsSubsequence(unwrapped);
+		end("containsSubsequence");
+		return found;
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> anotherSequence) {
+		RLESequence<?, ?, ?> unwrapped = unwrap(anotherSequence);
+		begin();
+		Integer index = sequence.indexOfSubsequence(unwrapped);
+		end("indexOfSubsequence");
+		return index;
+	}
+
+	public MeteredRLESequence subsequenceFrom(Integer startIndex) {
+		begin();
+		RLESequence<Integer, Integer, ?> subsequence = sequence.subsequenceFrom(startIndex);
+		end("subsequenceFrom");
+		return new MeteredRLESequence(subsequence, metrics);
+	}
+
+	public MeteredRLESequence subsequenceTo(Integer endIndex) {
+		begin();
+		RLESequence<Integer, Integer, ?> subsequence = sequence.subsequenceTo(endIndex);
+		end("subsequenceTo");
+		return new MeteredRLESequence(subsequence, metrics);
+	}
+
+	public MeteredRLESequence subsequenceBetween(Integer startIndex, Integer endIndex) {
+		begin();
+		RLESequence<Integer, Integer, ?> subsequence = sequence.subsequenceBetween(startIndex, endIndex);
+		end("subsequenceBetween");
+		return new MeteredRLESequence(subsequence, metrics);
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> anotherSequence) {
+		RLESequence<?, ?, ?> unwrapped = unwrap(anotherSequence);
+		begin();
+		sequence.addToHead(unwrapped);
+		end("addToHead");
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> anotherSequence) {
+		RLESequence<?, ?, ?> unwrapped = unwrap(anotherSequence);
+		begin();
+		sequence.addToTail(unwrapped);
+		end("addToTail");
+	}
+
+	public MeteredRLESequence copy() {
+		begin();
+		RLESequence<Integer, Integer, ?> copied = sequence.copy();
+		end("copy");
+		return new MeteredRLESequence(copied, metrics);
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof MeteredRLESequence) {
+			MeteredRLESequence anotherMeteredRLESequence = (MeteredRLESequence)anotherObj;
+			return sequence.equals(anotherMeteredRLESequence.sequence);
+		}
+		return false;
+	}
+
+	// Hashes as the wrapped sequence does, as equals compares it
+	public int hashCode() {
+		return sequence.hashCode();
+	}
+
+	public String toString() {
+		return sequence.toString();
+	}
+
+	private final RLESequence<Integer, Integer, ?> sequence;
+	private final RLEMetrics metrics;
+	// Set by begin() for the one call being measured, as a RLESequence is only ever used by one thread at a time
+	private long startNanos;
+	private long startBytes;
+}
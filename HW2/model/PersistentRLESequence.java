@@ -0,0 +1,653 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+import func.RLESearcher;
+
+/**
+ * A RLESequence whose runs live in an immutable, height balanced (AVL) tree, so that versions of a sequence share
+ * every run they have in common
+ *
+ * Each node holds one run and knows how many pixels and runs its subtree holds. Edits never change a node: they
+ * split the tree around the edited pixels and join the pieces back together, which copies only the O(log runs) nodes
+ * along the way and shares the rest with the previous version. As a result copy() is O(1), subsequences are O(log runs)
+ * and share their runs with the sequence they were taken from, and an undo history of many versions costs little more
+ * than the runs that actually differ between them.
+ */
+public class PersistentRLESequence implements RLESequence<Integer, Integer, PersistentRLESequence>, PixelRetrievable, BatchEditable {
+
+	public PersistentRLESequence() {
+		this((Node)null);
+	}
+
+	public PersistentRLESequence(Integer... inPixels) {
+		RunBuffer runs = new RunBuffer();
+		for (int i = 0; i < inPixels.length; i++) {
+			assertIsValid(inPixels[i]);
+			runs.add(inPixels[i], 1);
+		}
+		root = runs.toTree();
+	}
+
+	public PersistentRLESequence(List<Integer> inPixels) {
+		RunBuffer runs = new RunBuffer();
+		for (Integer pixel : inPixels) {
+			assertIsValid(pixel);
+			runs.add(pixel, 1);
+		}
+		root = runs.toTree();
+	}
+
+	// Every byte is a valid pixel once read back as an unsigned value, so no validation is needed
+	public PersistentRLESequence(byte[] inPixels) {
+		RunBuffer runs = new RunBuffer();
+		for (int i = 0; i < inPixels.length; i++) {
+			runs.add(inPixels[i] & PIXEL_MASK, 1);
+		}
+		root = runs.toTree();
+	}
+
+	private PersistentRLESequence(Node inRoot) {
+		root = inRoot;
+	}
+
+	private static boolean isValid(Integer pixel) {
+		return pixel >= 0 && pixel <= 255;
+	}
+
+	private static void assertIsValid(Integer pixel) throws IllegalArgumentException {
+		if (!isValid(pixel)) {
+			throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+		}
+	}
+
+	private void assertIsInBounds(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length());
+		}
+	}
+
+	private void assertIsInRange(int startIndex, int endIndex) throws IndexOutOfBoundsException {
+		if (startIndex < 0 || endIndex > length() || startIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Start index: " + startIndex + ", End index: " + endIndex + ", Length: " + length());
+		}
+	}
+
+	private void throwNoSuchElement(Integer pixel) throws NoSuchElementException {
+		throw new NoSuchElementException("The RLESequence does not contain the given pixel " + pixel);
+	}
+
+	public boolean contains(Integer pixel) {
+		return isValid(pixel) && indexOfFirstRun(root, pixel, 0) != UNFOUND_INDEX;
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		for (int i = 0; i < pixels.length; i++) {
+			if (!contains(pixels[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		for (Integer pixel : pixels) {
+			if (!contains(pixel)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		return contains(Arrays.asList(pixelSequence));
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		return new RLESearcher(pixelSequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		int index = isValid(pixel) ? indexOfFirstRun(root, pixel, 0) : UNFOUND_INDEX;
+		if (index == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return index;
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		int index = isValid(pixel) ? indexOfLastRun(root, pixel, 0) : UNFOUND_INDEX;
+		if (index == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return index;
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		if (isValid(pixel)) {
+			int[] runStart = {0};
+			forEachRun((runPixel, count) -> {
+				if (runPixel == pixel) {
+					for (int j = 0; j < count; j++) {
+						indexes.add(runStart[0] + j);
+					}
+				}
+				runStart[0] += count;
+			});
+		}
+		if (indexes.isEmpty()) {
+			throwNoSuchElement(pixel);
+		}
+		return indexes;
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		assertIsValid(newPixel);
+		assertIsInBounds(index);
+		Node[] head = split(root, index);
+		Node[] tail = split(head[1], 1);
+		root = concat(concat(head[0], leaf(newPixel, 1)), tail[1]);
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		replaceAt(indexOfFirst(oldPixel), newPixel);
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		replaceAt(indexOfLast(oldPixel), newPixel);
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		assertIsValid(newPixel);
+		if (!contains(oldPixel)) {
+			throwNoSuchElement(oldPixel);
+		}
+		RunBuffer replaced = new RunBuffer();
+		forEachRun((pixel, count) -> replaced.add(pixel == oldPixel ? newPixel : pixel, count));
+		root = replaced.toTree();
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		assertIsValid(newPixel);
+		if (index != lengthOf(root)) {
+			assertIsInBounds(index);
+		}
+		Node[] parts = split(root, index);
+		root = concat(concat(parts[0], leaf(newPixel, 1)), parts[1]);
+	}
+
+	public void append(Integer newPixel) {
+		insert(newPixel, length());
+	}
+
+	public void prepend(Integer newPixel) {
+		insert(newPixel, 0);
+	}
+
+	public void remove(Integer index) {
+		assertIsInBounds(index);
+		Node[] head = split(root, index);
+		Node[] tail = split(head[1], 1);
+		root = concat(head[0], tail[1]);
+	}
+
+	public void removeFirst(Integer pixel) {
+		remove(indexOfFirst(pixel));
+	}
+
+	public void removeLast(Integer pixel) {
+		remove(indexOfLast(pixel));
+	}
+
+	public void removeAll(Integer pixel) {
+		if (!contains(pixel)) {
+			throwNoSuchElement(pixel);
+		}
+		RunBuffer remaining = new RunBuffer();
+		forEachRun((runPixel, count) -> {
+			if (runPixel != pixel) {
+				remaining.add(runPixel, count);
+			}
+		});
+		root = remaining.toTree();
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		EditBatch batch = new EditBatch(length());
+		batchRecorder.accept(batch);
+		if (batch.isEmpty()) {
+			return;
+		}
+		RunBuffer edited = new RunBuffer();
+		batch.applyTo(this, edited::add);
+		root = edited.toTree();
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public Integer getAt(Integer index) {
+		return getAtInt(index);
+	}
+
+	public List<Integer> getAll() {
+		return getBetween(0, length());
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		return getBetween(startIndex, length());
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		return getBetween(0, endIndex);
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		PersistentRLESequence slice = subsequenceBetween(startIndex, endIndex);
+		List<Integer> pixels = new ArrayList<Integer>(slice.length());
+		slice.forEachRun((pixel, count) -> {
+			Integer boxedPixel = pixel;
+			for (int j = 0; j < count; j++) {
+				pixels.add(boxedPixel);
+			}
+		});
+		return pixels;
+	}
+
+	public int getAtInt(int index) {
+		assertIsInBounds(index);
+		Node node = root;
+		while (true) {
+			int leftLength = lengthOf(node.left);
+			if (index < leftLength) {
+				node = node.left;
+			} else if (index < leftLength + node.count) {
+				return node.pixel;
+			} else {
+				index -= leftLength + node.count;
+				node = node.right;
+			}
+		}
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		forEachRunOf(root, runConsumer);
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		int length = length();
+		if (offset < 0 || offset > dst.length - length) {
+			throw new IndexOutOfBoundsException("Cannot copy " + length + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+		int[] runStart = {offset};
+		forEachRun((pixel, count) -> {
+			Arrays.fill(dst, runStart[0], runStart[0] + count, (byte)pixel);
+			runStart[0] += count;
+		});
+		return length;
+	}
+
+	public IntStream pixels() {
+		RunBuffer runs = new RunBuffer();
+		forEachRun(runs::add);
+		return IntStream.range(0, runs.runCount).flatMap(runIndex -> {
+			int pixel = runs.pixels[runIndex];
+			return IntStream.range(0, runs.counts[runIndex]).map(i -> pixel);
+		});
+	}
+
+	public Integer length() {
+		return lengthOf(root);
+	}
+
+	/**
+	 * @return the number of runs in this sequence
+	 */
+	public int runCount() {
+		return runCountOf(root);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean containsSubsequence(RLESequence sequence) {
+		return RLESearcher.forPattern(sequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		int index = RLESearcher.forPattern(sequence).indexIn(this);
+		if (index == UNFOUND_INDEX) {
+			throw new NoSuchElementException("The RLESequence does not contain the given subsequence " + sequence);
+		}
+		return index;
+	}
+
+	public PersistentRLESequence subsequenceFrom(Integer startIndex) {
+		return subsequenceBetween(startIndex, length());
+	}
+
+	public PersistentRLESequence subsequenceTo(Integer endIndex) {
+		return subsequenceBetween(0, endIndex);
+	}
+
+	public PersistentRLESequence subsequenceBetween(Integer startIndex, Integer endIndex) {
+		assertIsInRange(startIndex, endIndex);
+		return new PersistentRLESequence(split(split(root, endIndex)[0], startIndex)[1]);
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> sequence) {
+		root = concat(treeOf(sequence), root);
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> sequence) {
+		root = concat(root, treeOf(sequence));
+	}
+
+	public PersistentRLESequence copy() {
+		return new PersistentRLESequence(root);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Node treeOf(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof PersistentRLESequence) {
+			return ((PersistentRLESequence)sequence).root;
+		}
+		if (sequence instanceof PixelRetrievable) {
+			RunBuffer runs = new RunBuffer();
+			((PixelRetrievable)sequence).forEachRun(runs::add);
+			return runs.toTree();
+		}
+		return new PersistentRLESequence((List<Integer>)sequence.getAll()).root;
+	}
+
+	private static int indexOfFirstRun(Node node, int pixel, int offset) {
+		if (node == null) {
+			return UNFOUND_INDEX;
+		}
+		int index = indexOfFirstRun(node.left, pixel, offset);
+		if (index != UNFOUND_INDEX) {
+			return index;
+		}
+		int runStart = offset + lengthOf(node.left);
+		if (node.pixel == pixel) {
+			return runStart;
+		}
+		return indexOfFirstRun(node.right, pixel, runStart + node.count);
+	}
+
+	private static int indexOfLastRun(Node node, int pixel, int offset) {
+		if (node == null) {
+			return UNFOUND_INDEX;
+		}
+		int runStart = offset + lengthOf(node.left);
+		int index = indexOfLastRun(node.right, pixel, runStart + node.count);
+		if (index != UNFOUND_INDEX) {
+			return index;
+		}
+		if (node.pixel == pixel) {
+			return runStart + node.count - 1;
+		}
+		return indexOfLastRun(node.left, pixel, offset);
+	}
+
+	// Walks the tree in order with an explicit stack, which never needs to be deeper than the tree is tall
+	private static void forEachRunOf(Node node, IntIntConsumer runConsumer) {
+		Node[] ancestors = new Node[heightOf(node)];
+		int depth = 0;
+		while (node != null || depth > 0) {
+			while (node != null) {
+				ancestors[depth++] = node;
+				node = node.left;
+			}
+			node = ancestors[--depth];
+			runConsumer.accept(node.pixel, node.count);
+			node = node.right;
+		}
+	}
+
+	// Every tree is built by the following few methods, none of which ever modifies an existing node
+
+	private static Node leaf(int pixel, int count) {
+		return new Node(null, pixel, count, null);
+	}
+
+	// Splits the tree into the pixels before index and the pixels from index on, cutting a run in two if need be
+	private static Node[] split(Node node, int index) {
+		if (node == null) {
+			return new Node[] {null, null};
+		}
+		int leftLength = lengthOf(node.left);
+		if (index <= leftLength) {
+			Node[] parts = split(node.left, index);
+			return new Node[] {parts[0], join(parts[1], node.pixel, node.count, node.right)};
+		}
+		if (index >= leftLength + node.count) {
+			Node[] parts = split(node.right, index - leftLength - node.count);
+			return new Node[] {join(node.left, node.pixel, node.count, parts[0]), parts[1]};
+		}
+		int offset = index - leftLength;
+		return new Node[] {join(node.left, node.pixel, offset, null), join(null, node.pixel, node.count - offset, node.right)};
+	}
+
+	// Joins two trees end to end, merging the runs where they meet if they hold the same pixel
+	private static Node concat(Node left, Node right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		Node last = lastOf(left);
+		Node first = firstOf(right);
+		if (last.pixel == first.pixel) {
+			return join(withoutLast(left), last.pixel, last.count + first.count, withoutFirst(right));
+		}
+		return join(withoutLast(left), last.pixel, last.count, right);
+	}
+
+	// Joins two trees around a run that goes between them, rebalancing only along the taller tree's spine
+	private static Node join(Node left, int pixel, int count, Node right) {
+		int leftHeight = heightOf(left);
+		int rightHeight = heightOf(right);
+		if (leftHeight > rightHeight + 1) {
+			return rebalance(new Node(left.left, left.pixel, left.count, join(left.right, pixel, count, right)));
+		}
+		if (rightHeight > leftHeight + 1) {
+			return rebalance(new Node(join(left, pixel, count, right.left), right.pixel, right.count, right.right));
+		}
+		return new Node(left, pixel, count, right);
+	}
+
+	private static Node rebalance(Node node) {
+		int balance = heightOf(node.left) - heightOf(node.right);
+		if (balance > 1) {
+			Node left = node.left;
+			if (heightOf(left.left) < heightOf(left.right)) {
+				left = rotateLeft(left);
+			}
+			return rotateRight(new Node(left, node.pixel, node.count, node.right));
+		}
+		if (balance < -1) {
+			Node right = node.right;
+			if (heightOf(right.right) < heightOf(right.left)) {
+				right = rotateRight(right);
+			}
+			return rotateLeft(new Node(node.left, node.pixel, node.count, right));
+		}
+		return node;
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		return new Node(new Node(node.left, node.pixel, node.count, right.left), right.pixel, right.count, right.right);
+	}
+
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		return new Node(left.left, left.pixel, left.count, new Node(left.right, node.pixel, node.count, node.right));
+	}
+
+	private static Node firstOf(Node node) {
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node;
+	}
+
+	private static Node lastOf(Node node) {
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	private static Node withoutFirst(Node node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		return join(withoutFirst(node.left), node.pixel, node.count, node.right);
+	}
+
+	private static Node withoutLast(Node node) {
+		if (node.right == null) {
+			return node.left;
+		}
+		return join(node.left, node.pixel, node.count, withoutLast(node.right));
+	}
+
+	private static int heightOf(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static int lengthOf(Node node) {
+		return node == null ? 0 : node.length;
+	}
+
+	private static int runCountOf(Node node) {
+		return node == null ? 0 : node.runCount;
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof PersistentRLESequence) {
+			PersistentRLESequence anotherPersistentRLESequence = (PersistentRLESequence)anotherObj;
+			if (root == anotherPersistentRLESequence.root) {
+				return true;
+			}
+			if (lengthOf(root) != lengthOf(anotherPersistentRLESequence.root) || runCount() != anotherPersistentRLESequence.runCount()) {
+				return false;
+			}
+			// Both sequences are canonical, so equal pixels imply equal runs, though not necessarily equally shaped trees
+			RunBuffer runs = new RunBuffer();
+			forEachRun(runs::add);
+			RunBuffer anotherRuns = new RunBuffer();
+			anotherPersistentRLESequence.forEachRun(anotherRuns::add);
+			for (int i = 0; i < runs.runCount; i++) {
+				if (runs.pixels[i] != anotherRuns.pixels[i] || runs.counts[i] != anotherRuns.counts[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	// Hashes the length and the runs, which are canonical, so equal sequences hash the same however their trees are
+	// shaped
+	public int hashCode() {
+		int[] hash = {lengthOf(root)};
+		forEachRun((pixel, count) -> {
+			hash[0] = 31 * hash[0] + pixel;
+			hash[0] = 31 * hash[0] + count;
+		});
+		return hash[0];
+	}
+
+	public String toString() {
+		if (isEmpty()) {
+			return "[]";
+		}
+		StringBuilder builder = new StringBuilder("[");
+		forEachRun((pixel, count) -> {
+			builder.append("[" + count + " " + pixel + "]");
+			builder.append(" ");
+		});
+		int currentLength = builder.length();
+		builder.replace(currentLength - 1, currentLength, "]");
+		return builder.toString();
+	}
+
+	// One run of the sequence, along with the totals of the subtree it roots. Nodes are never modified once built,
+	// which is what lets any number of sequences share them
+	private static final class Node {
+
+		Node(Node inLeft, int inPixel, int inCount, Node inRight) {
+			left = inLeft;
+			pixel = inPixel;
+			count = inCount;
+			right = inRight;
+			height = Math.max(heightOf(inLeft), heightOf(inRight)) + 1;
+			length = lengthOf(inLeft) + inCount + lengthOf(inRight);
+			runCount = runCountOf(inLeft) + 1 + runCountOf(inRight);
+		}
+
+		private final Node left;
+		private final Node right;
+		private final int pixel;
+		private final int count;
+		private final int height;
+		// Total number of pixels and of runs in the subtree rooted at this node
+		private final int length;
+		private final int runCount;
+	}
+
+	// Collects runs in canonical form, so that a perfectly balanced tree can then be built from them in O(runs)
+	private static class RunBuffer {
+
+		private void add(int pixel, int count) {
+			if (count == 0) {
+				return;
+			}
+			if (runCount > 0 && pixels[runCount - 1] == pixel) {
+				counts[runCount - 1] += count;
+				return;
+			}
+			if (runCount == pixels.length) {
+				int newCapacity = Math.max(runCount * 2, MINIMUM_RUN_CAPACITY);
+				pixels = Arrays.copyOf(pixels, newCapacity);
+				counts = Arrays.copyOf(counts, newCapacity);
+			}
+			pixels[runCount] = pixel;
+			counts[runCount] = count;
+			runCount++;
+		}
+
+		private Node toTree() {
+			return build(0, runCount);
+		}
+
+		private Node build(int fromRun, int toRun) {
+			if (fromRun == toRun) {
+				return null;
+			}
+			int middleRun = (fromRun + toRun) >>> 1;
+			return new Node(build(fromRun, middleRun), pixels[middleRun], counts[middleRun], build(middleRun + 1, toRun));
+		}
+
+		private int[] pixels = new int[0];
+		private int[] counts = new int[0];
+		private int runCount;
+	}
+
+	// Null for the empty sequence
+	private Node root;
+
+	private static final int PIXEL_MASK = 0xFF;
+	private static final int MINIMUM_RUN_CAPACITY = 8;
+	private static final int UNFOUND_INDEX = -1;
+}
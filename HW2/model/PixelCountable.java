@@ -0,0 +1,12 @@
+package model;
+
+public interface PixelCountable {
+	// Keeps a PixelHistogram up to date through every edit from now on, which makes the following methods O(1)
+	public void enableHistogram();
+	public void disableHistogram();
+	
+	public int countOf(Integer pixel);
+	public int distinctValues();
+	public double mean();
+	public double entropy();
+}
@@ -0,0 +1,116 @@
+package model;
+
+/**
+ * Counts the pixels and runs of each of the 256 pixel values in a sequence
+ *
+ * A sequence that keeps a histogram updates it with every run it adds, removes or resizes, so that membership and
+ * summary statistics are answered in constant time instead of by scanning the sequence.
+ */
+public class PixelHistogram {
+
+	public PixelHistogram() {
+		pixelCounts = new int[PIXEL_VALUES];
+		runCounts = new int[PIXEL_VALUES];
+	}
+
+	/**
+	 * @return a histogram of the given sequence's current runs
+	 */
+	public static PixelHistogram of(PixelRetrievable sequence) {
+		PixelHistogram histogram = new PixelHistogram();
+		sequence.forEachRun(histogram::addRun);
+		return histogram;
+	}
+
+	public PixelHistogram copy() {
+		PixelHistogram copied = new PixelHistogram();
+		System.arraycopy(pixelCounts, 0, copied.pixelCounts, 0, PIXEL_VALUES);
+		System.arraycopy(runCounts, 0, copied.runCounts, 0, PIXEL_VALUES);
+		copied.length = length;
+		copied.pixelSum = pixelSum;
+		copied.distinctValues = distinctValues;
+		return copied;
+	}
+
+	void addRun(int pixel, int count) {
+		runCounts[pixel]++;
+		resizeRun(pixel, count);
+	}
+
+	void removeRun(int pixel, int count) {
+		runCounts[pixel]--;
+		resizeRun(pixel, -count);
+	}
+
+	// Adds (or, for a negative difference, takes away) pixels of an existing run without changing how many runs there are
+	void resizeRun(int pixel, int difference) {
+		if (pixelCounts[pixel] == 0) {
+			distinctValues++;
+		}
+		pixelCounts[pixel] += difference;
+		if (pixelCounts[pixel] == 0) {
+			distinctValues--;
+		}
+		length += difference;
+		pixelSum += (long)pixel * difference;
+	}
+
+	public boolean contains(int pixel) {
+		return isValid(pixel) && pixelCounts[pixel] > 0;
+	}
+
+	/**
+	 * @return how many pixels of the given value there are
+	 */
+	public int countOf(int pixel) {
+		return isValid(pixel) ? pixelCounts[pixel] : 0;
+	}
+
+	/**
+	 * @return how many runs of the given value there are
+	 */
+	public int runCountOf(int pixel) {
+		return isValid(pixel) ? runCounts[pixel] : 0;
+	}
+
+	/**
+	 * @return how many different pixel values appear at least once
+	 */
+	public int distinctValues() {
+		return distinctValues;
+	}
+
+	/**
+	 * @return the average pixel value, or NaN when there are no pixels
+	 */
+	public double mean() {
+		return (double)pixelSum / length;
+	}
+
+	/**
+	 * @return the Shannon entropy of the pixel values in bits per pixel, from 0 (a single value) to 8 (all values equally often)
+	 */
+	public double entropy() {
+		double entropy = 0;
+		for (int pixel = 0; pixel < PIXEL_VALUES; pixel++) {
+			if (pixelCounts[pixel] > 0) {
+				double probability = (double)pixelCounts[pixel] / length;
+				entropy -= probability * Math.log(probability);
+			}
+		}
+		return entropy / LN_2;
+	}
+
+	private static boolean isValid(int pixel) {
+		return pixel >= 0 && pixel < PIXEL_VALUES;
+	}
+
+	private final int[] pixelCounts;
+	private final int[] runCounts;
+	private int length;
+	private long pixelSum;
+	private int distinctValues;
+
+	private static final int PIXEL_VALUES = 256;
+	private static final double LN_2 = Math.log(2);
+}
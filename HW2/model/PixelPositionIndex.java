@@ -0,0 +1,47 @@
+package model;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Maps each of the 256 pixel values to the ordinals of the runs holding it, in increasing order
+ *
+ * The index is immutable and only valid for the runs it was built from, so sequences rebuild it lazily after their
+ * runs are inserted, removed or recolored. Resizing a run keeps every ordinal, and with it the index, valid.
+ */
+final class PixelPositionIndex {
+
+	PixelPositionIndex(PixelRetrievable sequence) {
+		offsets = new int[PIXEL_VALUES + 1];
+		sequence.forEachRun((pixel, count) -> offsets[pixel + 1]++);
+		for (int pixel = 0; pixel < PIXEL_VALUES; pixel++) {
+			offsets[pixel + 1] += offsets[pixel];
+		}
+		runOrdinals = new int[offsets[PIXEL_VALUES]];
+		int[] nextOffsets = new int[PIXEL_VALUES];
+		System.arraycopy(offsets, 0, nextOffsets, 0, PIXEL_VALUES);
+		int[] runOrdinal = {0};
+		sequence.forEachRun((pixel, count) -> runOrdinals[nextOffsets[pixel]++] = runOrdinal[0]++);
+	}
+
+	// Both return -1 when no run holds the pixel
+	int firstRunOf(int pixel) {
+		return offsets[pixel] == offsets[pixel + 1] ? UNFOUND_INDEX : runOrdinals[offsets[pixel]];
+	}
+
+	int lastRunOf(int pixel) {
+		return offsets[pixel] == offsets[pixel + 1] ? UNFOUND_INDEX : runOrdinals[offsets[pixel + 1] - 1];
+	}
+
+	void forEachRunOf(int pixel, IntConsumer runConsumer) {
+		for (int i = offsets[pixel]; i < offsets[pixel + 1]; i++) {
+			runConsumer.accept(runOrdinals[i]);
+		}
+	}
+
+	// The ordinals of the runs holding pixel p are runOrdinals[offsets[p]] up to, but not including, runOrdinals[offsets[p + 1]]
+	private final int[] offsets;
+	private final int[] runOrdinals;
+
+	private static final int PIXEL_VALUES = 256;
+	private static final int UNFOUND_INDEX = -1;
+}
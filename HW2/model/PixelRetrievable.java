@@ -0,0 +1,18 @@
+package model;
+
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+
+// Primitive counterparts of Retrievable for sequences of 0 to 255 pixels, so that scanning code never boxes a pixel
+public interface PixelRetrievable {
+	public int getAtInt(int index) throws IndexOutOfBoundsException;
+	
+	// Calls the consumer with each run's pixel and count, from head to tail
+	public void forEachRun(IntIntConsumer runConsumer);
+	
+	// Writes every pixel as an unsigned byte starting at dst[offset] and returns how many were written
+	public int copyInto(byte[] dst, int offset) throws IndexOutOfBoundsException;
+	
+	public IntStream pixels();
+}
@@ -0,0 +1,12 @@
+package model;
+
+import func.IntIntConsumer;
+
+public interface PositionIndexed {
+	// Keeps an index from each pixel to the runs holding it, which makes finding the first or last pixel O(1)
+	public void enablePositionIndex();
+	public void disablePositionIndex();
+	
+	// Calls the consumer with the start index and length of each run of the pixel, from head to tail, without boxing any index
+	public void forEachRangeOf(Integer pixel, IntIntConsumer rangeConsumer);
+}
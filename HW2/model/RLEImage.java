@@ -0,0 +1,193 @@
+package model;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A two dimensional image of 0 to 255 pixels, stored as one run length encoded RLESequenceV3 per row
+ *
+ * Every region operation works on the runs of the rows it touches, so the cost of cropping, filling or blitting a
+ * region depends on how many runs those rows hold rather than on how many pixels the region covers. Rows are
+ * independent of each other, so bulk transforms can process them in parallel through rowSpliterator() or
+ * rowsParallel().
+ */
+public class RLEImage {
+
+	public RLEImage(int inWidth, int inHeight) {
+		this(inWidth, inHeight, 0);
+	}
+
+	public RLEImage(int inWidth, int inHeight, int inBackground) {
+		assertIsValidSize(inWidth, inHeight);
+		width = inWidth;
+		rows = new RLESequenceV3[inHeight];
+		for (int y = 0; y < inHeight; y++) {
+			rows[y] = RLESequenceV3.ofRun(inBackground, inWidth);
+		}
+	}
+
+	// Reads the pixels row by row, one unsigned byte per pixel
+	public RLEImage(int inWidth, byte[] inPixels) {
+		if (inWidth <= 0 || inPixels.length % inWidth != 0) {
+			throw new IllegalArgumentException("Cannot split " + inPixels.length + " pixels into rows of width " + inWidth);
+		}
+		width = inWidth;
+		rows = new RLESequenceV3[inPixels.length / inWidth];
+		for (int y = 0; y < rows.length; y++) {
+			rows[y] = new RLESequenceV3(Arrays.copyOfRange(inPixels, y * inWidth, (y + 1) * inWidth));
+		}
+	}
+
+	private RLEImage(int inWidth, RLESequenceV3[] inRows) {
+		width = inWidth;
+		rows = inRows;
+	}
+
+	private static void assertIsValidSize(int width, int height) throws IllegalArgumentException {
+		if (width < 0 || height < 0) {
+			throw new IllegalArgumentException("Width: " + width + ", Height: " + height);
+		}
+	}
+
+	private void assertIsInBounds(int x, int y) throws IndexOutOfBoundsException {
+		if (x < 0 || x >= width || y < 0 || y >= rows.length) {
+			throw new IndexOutOfBoundsException("X: " + x + ", Y: " + y + ", Width: " + width + ", Height: " + rows.length);
+		}
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return rows.length;
+	}
+
+	public Rectangle bounds() {
+		return new Rectangle(0, 0, width, rows.length);
+	}
+
+	public int getAt(int x, int y) {
+		assertIsInBounds(x, y);
+		return rows[y].getAtInt(x);
+	}
+
+	public void replaceAt(int x, int y, int newPixel) {
+		assertIsInBounds(x, y);
+		rows[y].replaceAt(x, newPixel);
+	}
+
+	/**
+	 * @return a copy of the row at y, which can be modified without affecting this image
+	 */
+	public RLESequenceV3 rowAt(int y) {
+		assertIsInBounds(0, y);
+		return rows[y].copy();
+	}
+
+	/**
+	 * @return a new image of the pixels inside the region, which must lie entirely within this image
+	 */
+	public RLEImage crop(Rectangle region) throws IndexOutOfBoundsException {
+		if (region.x < 0 || region.y < 0 || region.width < 0 || region.height < 0
+				|| region.x + region.width > width || region.y + region.height > rows.length) {
+			throw new IndexOutOfBoundsException("Region: " + region + ", Width: " + width + ", Height: " + rows.length);
+		}
+		RLESequenceV3[] croppedRows = new RLESequenceV3[region.height];
+		for (int i = 0; i < croppedRows.length; i++) {
+			croppedRows[i] = rows[region.y + i].subsequenceBetween(region.x, region.x + region.width);
+		}
+		return new RLEImage(region.width, croppedRows);
+	}
+
+	// Sets every pixel of the region to the given pixel, ignoring whatever part of the region lies outside of this image
+	public void fill(Rectangle region, int pixel) throws IllegalArgumentException {
+		Rectangle clipped = region.intersection(bounds());
+		if (clipped.isEmpty()) {
+			return;
+		}
+		for (int y = clipped.y; y < clipped.y + clipped.height; y++) {
+			rows[y].fillBetween(clipped.x, clipped.x + clipped.width, pixel);
+		}
+	}
+
+	// Copies every pixel of the source so that its top left pixel lands at (x, y), clipping whatever falls outside of this image
+	public void blit(RLEImage source, int x, int y) {
+		// Blitting an image onto itself must read its rows as they were before any of them is overwritten
+		RLEImage from = source == this ? copy() : source;
+		Rectangle clipped = new Rectangle(x, y, from.width, from.rows.length).intersection(bounds());
+		if (clipped.isEmpty()) {
+			return;
+		}
+		for (int targetY = clipped.y; targetY < clipped.y + clipped.height; targetY++) {
+			RLESequenceV3 sourceRow = from.rows[targetY - y];
+			int sourceX = clipped.x - x;
+			rows[targetY].replaceBetween(clipped.x, clipped.x + clipped.width,
+					sourceRow.subsequenceBetween(sourceX, sourceX + clipped.width));
+		}
+	}
+
+	/**
+	 * Splits evenly by rows, so that each part of a parallel transform gets its own disjoint set of rows. The rows are
+	 * the image's own, so a transform may modify them in place as long as it keeps every row width() pixels long.
+	 */
+	public Spliterator<RLESequenceV3> rowSpliterator() {
+		return Arrays.spliterator(rows);
+	}
+
+	public Stream<RLESequenceV3> rows() {
+		return StreamSupport.stream(rowSpliterator(), false);
+	}
+
+	public Stream<RLESequenceV3> rowsParallel() {
+		return StreamSupport.stream(rowSpliterator(), true);
+	}
+
+	/**
+	 * @return the pixels of this image row by row, one unsigned byte per pixel
+	 */
+	public byte[] toByteArray() {
+		byte[] pixels = new byte[width * rows.length];
+		for (int y = 0; y < rows.length; y++) {
+			rows[y].copyInto(pixels, y * width);
+		}
+		return pixels;
+	}
+
+	public RLEImage copy() {
+		RLESequenceV3[] copiedRows = new RLESequenceV3[rows.length];
+		for (int y = 0; y < rows.length; y++) {
+			copiedRows[y] = rows[y].copy();
+		}
+		return new RLEImage(width, copiedRows);
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof RLEImage) {
+			RLEImage anotherRLEImage = (RLEImage)anotherObj;
+			return width == anotherRLEImage.width && Arrays.equals(rows, anotherRLEImage.rows);
+		}
+		return false;
+	}
+
+	// Hashes the width and each row's length and runs, as equals compares them
+	public int hashCode() {
+		return 31 * width + Arrays.hashCode(rows);
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (RLESequenceV3 row : rows) {
+			builder.append(row.toString());
+			builder.append(System.lineSeparator());
+		}
+		return builder.toString();
+	}
+
+	// Every row is always exactly width pixels long
+	private final int width;
+	private final RLESequenceV3[] rows;
+}
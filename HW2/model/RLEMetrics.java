@@ -0,0 +1,232 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what run length encoding costs and saves, for whichever sequences and converters it is handed to
+ *
+ * A RLESequenceV2 given one through enableMetrics() reports only its run and pixel counts, each time its number of
+ * runs changes, and each time it rebuilds all of its runs at once. The latency and allocation of each call are only
+ * reported for a sequence wrapped in a MeteredRLESequence. RLEConverter, once given one through setMetrics(), reports
+ * every full decode into pixels and every encode back into runs. All counters are safe to update from any number of
+ * threads at once, so one instance can watch a whole application, and register() publishes it to JMX.
+ */
+public class RLEMetrics implements RLEMetricsMXBean {
+
+	public RLEMetrics() {
+		reset();
+	}
+
+	/**
+	 * @return the bytes the current thread has allocated so far, or 0 on a JVM that does not track them
+	 */
+	public static long allocatedBytes() {
+		if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+			return Math.max(((com.sun.management.ThreadMXBean)THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId()), 0);
+		}
+		return 0;
+	}
+
+	// The following are called by the instrumented code
+
+	public void recordCall(String method, long latencyNanos, long allocatedBytes) {
+		MethodStats stats = methods.computeIfAbsent(method, name -> new MethodStats());
+		stats.calls.increment();
+		stats.latencyNanos.add(latencyNanos);
+		stats.allocatedBytes.add(allocatedBytes);
+		stats.latencies.record(latencyNanos);
+	}
+
+	public void recordShape(int pixels, int runs) {
+		sampledPixels.add(pixels);
+		sampledRuns.add(runs);
+		runCounts.record(runs);
+	}
+
+	public void recordDecode(int pixels) {
+		decodes.increment();
+		decodedPixels.add(pixels);
+	}
+
+	public void recordEncode(int pixels) {
+		encodes.increment();
+		encodedPixels.add(pixels);
+	}
+
+	// A rebuild replaces every run of a sequence at once rather than patching the runs around a change
+	public void recordRebuild() {
+		rebuilds.increment();
+	}
+
+	public long getCalls() {
+		long calls = 0;
+		for (MethodStats stats : methods.values()) {
+			calls += stats.calls.sum();
+		}
+		return calls;
+	}
+
+	public Map<String, Long> getCallsByMethod() {
+		Map<String, Long> calls = new TreeMap<String, Long>();
+		methods.forEach((method, stats) -> calls.put(method, stats.calls.sum()));
+		return calls;
+	}
+
+	public Map<String, Double> getMeanLatencyNanosByMethod() {
+		return meanByMethod(stats -> stats.latencyNanos.sum());
+	}
+
+	/**
+	 * @return for each method, a latency that at least 99% of its calls stayed under, accurate to within a factor of 2
+	 */
+	public Map<String, Long> getP99LatencyNanosByMethod() {
+		Map<String, Long> latencies = new TreeMap<String, Long>();
+		methods.forEach((method, stats) -> latencies.put(method, stats.latencies.percentile(0.99)));
+		return latencies;
+	}
+
+	public Map<String, Double> getMeanAllocatedBytesByMethod() {
+		return meanByMethod(stats -> stats.allocatedBytes.sum());
+	}
+
+	private Map<String, Double> meanByMethod(ToDoubleFunction<MethodStats> total) {
+		Map<String, Double> means = new TreeMap<String, Double>();
+		methods.forEach((method, stats) -> means.put(method, total.applyAsDouble(stats) / stats.calls.sum()));
+		return means;
+	}
+
+	public long getDecodes() {
+		return decodes.sum();
+	}
+
+	public long getDecodedPixels() {
+		return decodedPixels.sum();
+	}
+
+	public long getEncodes() {
+		return encodes.sum();
+	}
+
+	public long getEncodedPixels() {
+		return encodedPixels.sum();
+	}
+
+	public long getRebuilds() {
+		return rebuilds.sum();
+	}
+
+	/**
+	 * @return the average number of pixels per run over every shape recorded, or NaN before any is recorded. Runs pay
+	 * for themselves once this exceeds the bytes a single run takes compared to the bytes a single raw pixel takes.
+	 */
+	public double getMeanCompressionRatio() {
+		return (double)sampledPixels.sum() / sampledRuns.sum();
+	}
+
+	public long getMedianRunCount() {
+		return runCounts.percentile(0.5);
+	}
+
+	public void reset() {
+		methods = new ConcurrentHashMap<String, MethodStats>();
+		decodes = new LongAdder();
+		decodedPixels = new LongAdder();
+		encodes = new LongAdder();
+		encodedPixels = new LongAdder();
+		rebuilds = new LongAdder();
+		sampledPixels = new LongAdder();
+		sampledRuns = new LongAdder();
+		runCounts = new Log2Histogram();
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, under the domain of this package
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("model:type=RLEMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%-20s %10s %14s %14s %14s%n", "method", "calls", "mean ns", "p99 ns", "mean bytes"));
+		List<String> sortedMethods = new ArrayList<String>(methods.keySet());
+		sortedMethods.sort(null);
+		for (String method : sortedMethods) {
+			MethodStats stats = methods.get(method);
+			long calls = stats.calls.sum();
+			builder.append(String.format("%-20s %10d %14.1f %14d %14.1f%n", method, calls, (double)stats.latencyNanos.sum() / calls,
+					stats.latencies.percentile(0.99), (double)stats.allocatedBytes.sum() / calls));
+		}
+		builder.append(String.format("decodes: %d (%d pixels), encodes: %d (%d pixels), rebuilds: %d%n",
+				getDecodes(), getDecodedPixels(), getEncodes(), getEncodedPixels(), getRebuilds()));
+		builder.append(String.format("pixels per run: %.1f, median runs per sequence: %d", getMeanCompressionRatio(), getMedianRunCount()));
+		return builder.toString();
+	}
+
+	private static final class MethodStats {
+		final LongAdder calls = new LongAdder();
+		final LongAdder latencyNanos = new LongAdder();
+		final LongAdder allocatedBytes = new LongAdder();
+		final Log2Histogram latencies = new Log2Histogram();
+	}
+
+	// Bucket b counts the values from 2^(b - 1) (inclusive) to 2^b (exclusive), and bucket 0 counts the zeros
+	private static final class Log2Histogram {
+
+		Log2Histogram() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long value) {
+			buckets[Long.SIZE - Long.numberOfLeadingZeros(Math.max(value, 0))].increment();
+		}
+
+		// The upper end of the bucket holding the given fraction of the smallest values
+		long percentile(double fraction) {
+			long[] counts = new long[buckets.length];
+			long total = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				counts[i] = buckets[i].sum();
+				total += counts[i];
+			}
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen > 0 && seen >= fraction * total) {
+					return i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1;
+				}
+			}
+			return 0;
+		}
+
+		private final LongAdder[] buckets = new LongAdder[Long.SIZE + 1];
+	}
+
+	// Replaced all at once by reset, so each is only read through its field
+	private volatile Map<String, MethodStats> methods;
+	private volatile LongAdder decodes;
+	private volatile LongAdder decodedPixels;
+	private volatile LongAdder encodes;
+	private volatile LongAdder encodedPixels;
+	private volatile LongAdder rebuilds;
+	private volatile LongAdder sampledPixels;
+	private volatile LongAdder sampledRuns;
+	private volatile Log2Histogram runCounts;
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+}
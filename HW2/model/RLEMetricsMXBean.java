@@ -0,0 +1,25 @@
+package model;
+
+import java.util.Map;
+
+/**
+ * The attributes RLEMetrics exposes through JMX, each read live from its counters
+ */
+public interface RLEMetricsMXBean {
+	public long getCalls();
+	public Map<String, Long> getCallsByMethod();
+	public Map<String, Double> getMeanLatencyNanosByMethod();
+	public Map<String, Long> getP99LatencyNanosByMethod();
+	public Map<String, Double> getMeanAllocatedBytesByMethod();
+
+	public long getDecodes();
+	public long getDecodedPixels();
+	public long getEncodes();
+	public long getEncodedPixels();
+	public long getRebuilds();
+
+	public double getMeanCompressionRatio();
+	public long getMedianRunCount();
+
+	public void reset();
+}
@@ -6,6 +6,7 @@ public interface RLESequence<T, N extends Number, S extends RLESequence<T, N, S>
 	public N length();
 	
 	public boolean containsSubsequence(RLESequence<?, ?, ?> sequence);
+	public N indexOfSubsequence(RLESequence<?, ?, ?> sequence);
 	
 	public S subsequenceFrom(N startIndex);
 	public S subsequenceTo(N endIndex);
@@ -1,10 +1,17 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
-public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV1> {
+import func.IntIntConsumer;
+import func.RLESearcher;
+
+public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV1>, PixelRetrievable, BatchEditable {
 	
 	public RLESequenceV1() {
 		this(0);
@@ -64,36 +71,11 @@ public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV
 	}
 
 	public boolean contains(Integer... pixelSequence) {
-		int indexInPixelSequence = 0;
-		for (int i = 0; i < pixels.size(); i++) {
-			if (pixels.get(i).equals(pixelSequence[indexInPixelSequence])) {
-				indexInPixelSequence++;
-			} else {
-				indexInPixelSequence = 0;
-			}
-			if (indexInPixelSequence == pixelSequence.length) {
-				return true;
-			}
-		}
-		return false;
+		return contains(Arrays.asList(pixelSequence));
 	}
 
 	public boolean contains(List<Integer> pixelSequence) {
-		if (pixelSequence.isEmpty()) {
-			return true;
-		}
-		int indexInPixelSequence = 0;
-		for (int i = 0; i < pixels.size(); i++) {
-			if (pixels.get(i).equals(pixelSequence.get(indexInPixelSequence))) {
-				indexInPixelSequence++;
-			} else {
-				indexInPixelSequence = 0;
-			}
-			if (indexInPixelSequence == pixelSequence.size()) {
-				return true;
-			}
-		}
-		return false;
+		return new RLESearcher(pixelSequence).indexIn(this) != UNFOUND_INDEX;
 	}
 
 	public Integer indexOfFirst(Integer pixel) {
@@ -170,12 +152,25 @@ public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV
 	}
 
 	public void removeAll(Integer pixel) {
-		// The following is more computationally efficient than using #indexesOf 
-		Integer currentIndex = indexOfLast(pixel);
-		while (currentIndex != UNFOUND_INDEX) {
-			remove(currentIndex);
-			currentIndex = pixels.lastIndexOf(pixel);
+		// Throws when the pixel is absent, then compacts the remaining pixels in a single pass
+		assertIndexFound(pixels.indexOf(pixel), pixel);
+		pixels.removeIf(pixel::equals);
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		EditBatch batch = new EditBatch(pixels.size());
+		batchRecorder.accept(batch);
+		if (batch.isEmpty()) {
+			return;
 		}
+		List<Integer> editedPixels = new ArrayList<Integer>(pixels.size());
+		batch.applyTo(this, (pixel, count) -> {
+			Integer boxedPixel = pixel;
+			for (int i = 0; i < count; i++) {
+				editedPixels.add(boxedPixel);
+			}
+		});
+		pixels = editedPixels;
 	}
 
 	public void replaceAt(Integer index, Integer newPixel) throws IndexOutOfBoundsException, IllegalArgumentException {
@@ -194,12 +189,10 @@ public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV
 	}
 	
 	public void replaceAll(Integer oldPixel, Integer newPixel) {
-		// The following is more computationally efficient than using #indexesOf and #replaceAt
-		Integer currentIndex = indexOfFirst(oldPixel);
-		while (currentIndex != UNFOUND_INDEX) {
-			replaceAt(currentIndex, newPixel);
-			currentIndex = pixels.indexOf(oldPixel);
-		}
+		assertIsValid(newPixel);
+		// Throws when the old pixel is absent, then rewrites every match in a single pass
+		assertIndexFound(pixels.indexOf(oldPixel), oldPixel);
+		Collections.replaceAll(pixels, oldPixel, newPixel);
 	}
 
 	public Integer getAt(Integer index) throws IndexOutOfBoundsException {
@@ -210,13 +203,46 @@ public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV
 		return length() == 0;
 	}
 	
+	public int getAtInt(int index) throws IndexOutOfBoundsException {
+		return pixels.get(index);
+	}
+	
+	public void forEachRun(IntIntConsumer runConsumer) {
+		int runStart = 0;
+		for (int i = 1; i <= pixels.size(); i++) {
+			if (i == pixels.size() || !pixels.get(i).equals(pixels.get(runStart))) {
+				runConsumer.accept(pixels.get(runStart), i - runStart);
+				runStart = i;
+			}
+		}
+	}
+	
+	public int copyInto(byte[] dst, int offset) throws IndexOutOfBoundsException {
+		assertFitsInto(dst, offset);
+		for (int i = 0; i < pixels.size(); i++) {
+			dst[offset + i] = (byte)(int)pixels.get(i);
+		}
+		return pixels.size();
+	}
+	
+	private void assertFitsInto(byte[] dst, int offset) throws IndexOutOfBoundsException {
+		if (offset < 0 || offset > dst.length - pixels.size()) {
+			throw new IndexOutOfBoundsException("Cannot copy " + pixels.size() + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+	}
+	
+	public IntStream pixels() {
+		return pixels.stream().mapToInt(Integer::intValue);
+	}
+	
 	public List<Integer> getAll() {
 		return new ArrayList<Integer>(pixels);
 		// Only need to perform shallow copy as each Integer pixel element is immutable
 	}
 
 	public List<Integer> getBetween(Integer startIndex, Integer endIndex) throws IndexOutOfBoundsException {
-		return pixels.subList(startIndex, endIndex);
+		// Copies the view, so that callers can never modify this sequence's pixels through it
+		return new ArrayList<Integer>(pixels.subList(startIndex, endIndex));
 	}
 	
 	public List<Integer> getFrom(Integer startIndex) throws IndexOutOfBoundsException {
@@ -231,9 +257,17 @@ public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV
 		return pixels.size();
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@SuppressWarnings("rawtypes")
 	public boolean containsSubsequence(RLESequence sequence) {
-		return contains(sequence.getAll());
+		return RLESearcher.forPattern(sequence).indexIn(this) != UNFOUND_INDEX;
+	}
+	
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		int index = RLESearcher.forPattern(sequence).indexIn(this);
+		if (index == UNFOUND_INDEX) {
+			throw new NoSuchElementException("The RLESequence does not contain the given subsequence " + sequence);
+		}
+		return index;
 	}
 	
 	public RLESequenceV1 subsequenceFrom(Integer startIndex) {
@@ -269,6 +303,10 @@ public class RLESequenceV1 implements RLESequence<Integer, Integer, RLESequenceV
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return this.pixels.hashCode();
+	}
 	
 	public String toString() {
 		if (isEmpty()) {
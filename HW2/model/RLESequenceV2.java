@@ -1,11 +1,17 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+import func.IntIntConsumer;
 import func.RLEConverter;
+import func.RLESearcher;
 
-public class RLESequenceV2 implements RLESequence<Integer, Integer, RLESequenceV2>{
+public class RLESequenceV2 implements RLESequence<Integer, Integer, RLESequenceV2>, PixelRetrievable, BatchEditable, PixelCountable, PositionIndexed {
 
 	public RLESequenceV2() {
 		this(0);
@@ -16,27 +22,41 @@ public class RLESequenceV2 implements RLESequence<Integer, Integer, RLESequenceV
 	}
 
 	public RLESequenceV2(Integer... inPixels) {
+		for (int i = 0; i < inPixels.length; i++) {
+			assertIsValid(inPixels[i]);
+		}
 		initFieldCodePairs(RLEConverter.toSpace(inPixels));
 	}
 	
 	public RLESequenceV2(List<Integer> inPixels) {
+		for (Integer pixel : inPixels) {
+			assertIsValid(pixel);
+		}
 		initFieldCodePairs(RLEConverter.toSpace(inPixels));
 	}
 	
+	// Adopts the given field code pairs without copying, so callers must pass in pairs no one else references
+	private RLESequenceV2(List<FieldCodePair<Integer>> inFieldCodePairs, int inLength) {
+		fieldCodePairs = inFieldCodePairs;
+		length = inLength;
+	}
+
 	private boolean isValid(Integer pixel) {
 		return pixel >= 0 && pixel <= 255;
 	}
 	
 	private void initFieldCodePairs(Integer length) {
 		fieldCodePairs = new ArrayList<FieldCodePair<Integer>>(length);
+		this.length = 0;
 	}
 	
-	private void initFieldCodePairs(List<FieldCodePair<Integer>> fieldCodePairs) {
-		fieldCodePairs = new ArrayList<FieldCodePair<Integer>>();
-		for (FieldCodePair<Integer> fieldCodePair: fieldCodePairs) {
-			assertIsValid(fieldCodePair.getElement());
+	private void initFieldCodePairs(List<FieldCodePair<Integer>> inFieldCodePairs) {
+		// RLEConverter#toSpace already hands back freshly allocated pairs, so they can be adopted directly
+		fieldCodePairs = inFieldCodePairs;
+		length = 0;
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			length += fieldCodePair.getCount();
 		}
-		this.fieldCodePairs = new ArrayList<FieldCodePair<Integer>>(fieldCodePairs);
 	}
 	
 	private void assertIsValid(Integer pixel) throws IllegalArgumentException {
@@ -45,181 +65,705 @@ public class RLESequenceV2 implements RLESequence<Integer, Integer, RLESequenceV
 		}
 	}
 	
-	// As instructed by Step 2, all the following methods just borrow the functionality of RLESequenceV1
-	// (and as a result are terribly inefficient)
-	
+	private void assertIsInBounds(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+
+	private void assertIsInRange(int startIndex, int endIndex) throws IndexOutOfBoundsException {
+		if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Start index: " + startIndex + ", End index: " + endIndex + ", Length: " + length);
+		}
+	}
+
+	private void throwNoSuchElement(Integer pixel) throws NoSuchElementException {
+		throw new NoSuchElementException("The RLESequence does not contain the given pixel " + pixel);
+	}
+
+	// All of the following methods work directly on the runs, so no method ever expands the sequence into pixels
+	// unless the caller explicitly asks for a List of pixels back
+
 	public boolean contains(Integer pixel) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).contains(pixel);
+		if (histogram != null) {
+			return histogram.contains(pixel);
+		}
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			if (fieldCodePair.getElement().equals(pixel)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public boolean containsAll(Integer... pixels) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).contains(pixels);
+		for (int i = 0; i < pixels.length; i++) {
+			if (!contains(pixels[i])) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public boolean containsAll(List<Integer> pixels) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).containsAll(pixels);
+		for (Integer pixel : pixels) {
+			if (!contains(pixel)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public boolean contains(Integer... pixelSequence) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).contains(pixelSequence);
+		return contains(Arrays.asList(pixelSequence));
 	}
 
 	public boolean contains(List<Integer> pixelSequence) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).contains(pixelSequence);
+		return new RLESearcher(pixelSequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	private int firstRunOf(Integer pixel) {
+		if (positionIndexEnabled) {
+			return isValid(pixel) ? currentPositionIndex().firstRunOf(pixel) : UNFOUND_INDEX;
+		}
+		for (int i = 0; i < fieldCodePairs.size(); i++) {
+			if (fieldCodePairs.get(i).getElement().equals(pixel)) {
+				return i;
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	private int lastRunOf(Integer pixel) {
+		if (positionIndexEnabled) {
+			return isValid(pixel) ? currentPositionIndex().lastRunOf(pixel) : UNFOUND_INDEX;
+		}
+		for (int i = fieldCodePairs.size() - 1; i >= 0; i--) {
+			if (fieldCodePairs.get(i).getElement().equals(pixel)) {
+				return i;
+			}
+		}
+		return UNFOUND_INDEX;
 	}
 
 	public Integer indexOfFirst(Integer pixel) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).indexOfFirst(pixel);
+		int runIndex = firstRunOf(pixel);
+		if (runIndex == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return runStartOf(runIndex);
 	}
 
 	public Integer indexOfLast(Integer pixel) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).indexOfLast(pixel);
+		int runIndex = lastRunOf(pixel);
+		if (runIndex == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return runStartOf(runIndex) + fieldCodePairs.get(runIndex).getCount() - 1;
 	}
 
 	public List<Integer> indexesOf(Integer pixel) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).indexesOf(pixel);
+		List<Integer> indexes = new ArrayList<Integer>();
+		forEachRangeOf(pixel, (rangeStart, rangeLength) -> {
+			for (int i = 0; i < rangeLength; i++) {
+				indexes.add(rangeStart + i);
+			}
+		});
+		if (indexes.isEmpty()) {
+			throwNoSuchElement(pixel);
+		}
+		return indexes;
+	}
+
+	public void forEachRangeOf(Integer pixel, IntIntConsumer rangeConsumer) {
+		if (!isValid(pixel)) {
+			return;
+		}
+		if (positionIndexEnabled) {
+			currentPositionIndex().forEachRunOf(pixel, runIndex -> rangeConsumer.accept(runStartOf(runIndex), fieldCodePairs.get(runIndex).getCount()));
+			return;
+		}
+		int runStart = 0;
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			if (fieldCodePair.getElement().equals(pixel)) {
+				rangeConsumer.accept(runStart, fieldCodePair.getCount());
+			}
+			runStart += fieldCodePair.getCount();
+		}
 	}
 
 	public void replaceAt(Integer index, Integer newPixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.replaceAt(index, newPixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		assertIsValid(newPixel);
+		assertIsInBounds(index);
+		int runIndex = runIndexOf(index);
+		FieldCodePair<Integer> run = fieldCodePairs.get(runIndex);
+		if (run.getElement().equals(newPixel)) {
+			return;
+		}
+		int offset = index - runStartOf(runIndex);
+		int count = run.getCount();
+		if (count == 1) {
+			setRunPixel(runIndex, newPixel);
+			coalesceAround(runIndex);
+		} else if (offset == 0) {
+			setRunCount(runIndex, count - 1);
+			insertRun(runIndex, newPixel, 1);
+			coalesceAround(runIndex);
+		} else if (offset == count - 1) {
+			setRunCount(runIndex, count - 1);
+			insertRun(runIndex + 1, newPixel, 1);
+			coalesceAround(runIndex + 1);
+		} else {
+			splitRun(runIndex, offset);
+			insertRun(runIndex + 1, newPixel, 1);
+			setRunCount(runIndex + 2, fieldCodePairs.get(runIndex + 2).getCount() - 1);
+		}
 	}
 
 	public void replaceFirst(Integer oldPixel, Integer newPixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.replaceFirst(oldPixel, newPixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		replaceAt(indexOfFirst(oldPixel), newPixel);
 	}
 
 	public void replaceLast(Integer oldPixel, Integer newPixel)  {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.replaceLast(oldPixel, newPixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		replaceAt(indexOfLast(oldPixel), newPixel);
 	}
 
 	public void replaceAll(Integer oldPixel, Integer newPixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.replaceAll(oldPixel, newPixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		assertIsValid(newPixel);
+		if (!contains(oldPixel)) {
+			throwNoSuchElement(oldPixel);
+		}
+		List<FieldCodePair<Integer>> replacedPairs = new ArrayList<FieldCodePair<Integer>>(fieldCodePairs.size());
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			Integer pixel = fieldCodePair.getElement().equals(oldPixel) ? newPixel : fieldCodePair.getElement();
+			appendRunTo(replacedPairs, pixel, fieldCodePair.getCount());
+		}
+		fieldCodePairs = replacedPairs;
+		invalidateRunEndsFrom(0);
+		rebuildHistogram();
+		positionIndex = null;
+		recordRebuild();
 	}
 
 	public void insert(Integer newPixel, Integer index) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.insert(newPixel, index);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		if (isEmpty()) {
+			append(newPixel);
+			return;
+		}
+		assertIsValid(newPixel);
+		if (index == length) {
+			append(newPixel);
+			return;
+		}
+		assertIsInBounds(index);
+		int runIndex = runIndexOf(index);
+		FieldCodePair<Integer> run = fieldCodePairs.get(runIndex);
+		int offset = index - runStartOf(runIndex);
+		if (run.getElement().equals(newPixel)) {
+			setRunCount(runIndex, run.getCount() + 1);
+		} else if (offset == 0 && runIndex > 0 && fieldCodePairs.get(runIndex - 1).getElement().equals(newPixel)) {
+			setRunCount(runIndex - 1, fieldCodePairs.get(runIndex - 1).getCount() + 1);
+		} else if (offset == 0) {
+			insertRun(runIndex, newPixel, 1);
+		} else {
+			splitRun(runIndex, offset);
+			insertRun(runIndex + 1, newPixel, 1);
+		}
 	}
 
 	public void append(Integer newPixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.append(newPixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		assertIsValid(newPixel);
+		int lastRunIndex = fieldCodePairs.size() - 1;
+		if (lastRunIndex >= 0 && fieldCodePairs.get(lastRunIndex).getElement().equals(newPixel)) {
+			setRunCount(lastRunIndex, fieldCodePairs.get(lastRunIndex).getCount() + 1);
+		} else {
+			insertRun(lastRunIndex + 1, newPixel, 1);
+		}
 	}
 
 	public void prepend(Integer newPixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.prepend(newPixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		insert(newPixel, 0);
 	}
 
 	public void remove(Integer index) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.remove(index);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		assertIsInBounds(index);
+		int runIndex = runIndexOf(index);
+		int count = fieldCodePairs.get(runIndex).getCount();
+		if (count > 1) {
+			setRunCount(runIndex, count - 1);
+		} else {
+			removeRun(runIndex);
+			if (runIndex > 0) {
+				coalesceAround(runIndex - 1);
+			}
+		}
 	}
 
 	public void removeFirst(Integer pixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.removeFirst(pixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		remove(indexOfFirst(pixel));
 	}
 
 	public void removeLast(Integer pixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.removeLast(pixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		remove(indexOfLast(pixel));
 	}
 
 	public void removeAll(Integer pixel) {
-		RLESequenceV1 tempSequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSequence.removeAll(pixel);
-		this.fieldCodePairs = RLEConverter.toSpace(tempSequence.getAll());
+		if (!contains(pixel)) {
+			throwNoSuchElement(pixel);
+		}
+		List<FieldCodePair<Integer>> remainingPairs = new ArrayList<FieldCodePair<Integer>>(fieldCodePairs.size());
+		int remainingLength = 0;
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			if (!fieldCodePair.getElement().equals(pixel)) {
+				appendRunTo(remainingPairs, fieldCodePair.getElement(), fieldCodePair.getCount());
+				remainingLength += fieldCodePair.getCount();
+			}
+		}
+		fieldCodePairs = remainingPairs;
+		length = remainingLength;
+		invalidateRunEndsFrom(0);
+		rebuildHistogram();
+		positionIndex = null;
+		recordRebuild();
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		EditBatch batch = new EditBatch(length);
+		batchRecorder.accept(batch);
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<FieldCodePair<Integer>> editedPairs = new ArrayList<FieldCodePair<Integer>>(fieldCodePairs.size());
+		int[] editedLength = {0};
+		batch.applyTo(this, (pixel, count) -> {
+			appendRunTo(editedPairs, pixel, count);
+			editedLength[0] += count;
+		});
+		fieldCodePairs = editedPairs;
+		length = editedLength[0];
+		invalidateRunEndsFrom(0);
+		rebuildHistogram();
+		positionIndex = null;
+		recordRebuild();
 	}
 
 	public boolean isEmpty() {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).isEmpty();
+		return length == 0;
 	}
 
 	public Integer getAt(Integer index) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).getAt(index);
+		assertIsInBounds(index);
+		return fieldCodePairs.get(runIndexOf(index)).getElement();
+	}
+
+	public int getAtInt(int index) {
+		assertIsInBounds(index);
+		return fieldCodePairs.get(runIndexOf(index)).getElement();
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			runConsumer.accept(fieldCodePair.getElement(), fieldCodePair.getCount());
+		}
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		assertFitsInto(dst, offset);
+		int runStart = offset;
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			int runEnd = runStart + fieldCodePair.getCount();
+			Arrays.fill(dst, runStart, runEnd, (byte)(int)fieldCodePair.getElement());
+			runStart = runEnd;
+		}
+		return length;
+	}
+
+	private void assertFitsInto(byte[] dst, int offset) throws IndexOutOfBoundsException {
+		if (offset < 0 || offset > dst.length - length) {
+			throw new IndexOutOfBoundsException("Cannot copy " + length + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+	}
+
+	public IntStream pixels() {
+		return fieldCodePairs.stream().flatMapToInt(fieldCodePair -> {
+			int pixel = fieldCodePair.getElement();
+			return IntStream.range(0, fieldCodePair.getCount()).map(i -> pixel);
+		});
 	}
 
 	public List<Integer> getAll() {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).getAll();
+		return RLEConverter.toAPI(fieldCodePairs);
 	}
 
 	public List<Integer> getFrom(Integer startIndex) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).getFrom(startIndex);
+		return getBetween(startIndex, length);
 	}
 
 	public List<Integer> getTo(Integer endIndex) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).getTo(endIndex);
+		return getBetween(0, endIndex);
 	}
 
 	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).getBetween(startIndex, endIndex);
+		return RLEConverter.toAPI(pairsBetween(startIndex, endIndex));
 	}
 
 	public Integer length() {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).length();
+		return length;
 	}
 
 	@SuppressWarnings("rawtypes")
 	public boolean containsSubsequence(RLESequence sequence) {
-		return new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).containsSubsequence(sequence);
+		return RLESearcher.forPattern(sequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		int index = RLESearcher.forPattern(sequence).indexIn(this);
+		if (index == UNFOUND_INDEX) {
+			throw new NoSuchElementException("The RLESequence does not contain the given subsequence " + sequence);
+		}
+		return index;
 	}
 
 	public RLESequenceV2 subsequenceFrom(Integer startIndex) {
-		RLESequenceV1 tempSubsequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).subsequenceFrom(startIndex);
-		return new RLESequenceV2(tempSubsequence.getAll());
+		return subsequenceBetween(startIndex, length);
 	}
 
 	public RLESequenceV2 subsequenceTo(Integer endIndex) {
-		RLESequenceV1 tempSubsequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).subsequenceTo(endIndex);
-		return new RLESequenceV2(tempSubsequence.getAll());
+		return subsequenceBetween(0, endIndex);
 	}
 
 	public RLESequenceV2 subsequenceBetween(Integer startIndex, Integer endIndex) {
-		RLESequenceV1 tempSubsequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs)).subsequenceBetween(startIndex, endIndex);
-		return new RLESequenceV2(tempSubsequence.getAll());
+		return new RLESequenceV2(pairsBetween(startIndex, endIndex), endIndex - startIndex);
 	}
 
 	public void addToHead(RLESequence<?, ?, ?> sequence) {
-		RLESequenceV1 tempSubsequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSubsequence.addToHead(sequence);
-		fieldCodePairs = RLEConverter.toSpace(tempSubsequence.getAll());
+		List<FieldCodePair<Integer>> headPairs = pairsOf(sequence);
+		int headLength = 0;
+		List<FieldCodePair<Integer>> joinedPairs = new ArrayList<FieldCodePair<Integer>>(headPairs.size() + fieldCodePairs.size());
+		for (FieldCodePair<Integer> fieldCodePair : headPairs) {
+			appendRunTo(joinedPairs, fieldCodePair.getElement(), fieldCodePair.getCount());
+			headLength += fieldCodePair.getCount();
+		}
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			appendRunTo(joinedPairs, fieldCodePair.getElement(), fieldCodePair.getCount());
+		}
+		fieldCodePairs = joinedPairs;
+		length += headLength;
+		invalidateRunEndsFrom(0);
+		rebuildHistogram();
+		positionIndex = null;
+		recordRebuild();
 	}
 
 	public void addToTail(RLESequence<?, ?, ?> sequence) {
-		RLESequenceV1 tempSubsequence = new RLESequenceV1(RLEConverter.toAPI(fieldCodePairs));
-		tempSubsequence.addToTail(sequence);
-		fieldCodePairs = RLEConverter.toSpace(tempSubsequence.getAll());
+		for (FieldCodePair<Integer> fieldCodePair : pairsOf(sequence)) {
+			appendRun(fieldCodePair.getElement(), fieldCodePair.getCount());
+		}
 	}
 
 	public RLESequenceV2 copy() {
-		return new RLESequenceV2(RLEConverter.toAPI(fieldCodePairs));
+		List<FieldCodePair<Integer>> copiedPairs = new ArrayList<FieldCodePair<Integer>>(fieldCodePairs.size());
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			copiedPairs.add(new FieldCodePair<Integer>(fieldCodePair.getCount(), fieldCodePair.getElement()));
+		}
+		RLESequenceV2 copied = new RLESequenceV2(copiedPairs, length);
+		copied.histogram = histogram == null ? null : histogram.copy();
+		// The index is immutable, so the copy can share it until either sequence's runs change
+		copied.positionIndex = positionIndex;
+		copied.positionIndexEnabled = positionIndexEnabled;
+		return copied;
+	}
+
+	public void enableHistogram() {
+		if (histogram == null) {
+			histogram = PixelHistogram.of(this);
+		}
+	}
+
+	public void disableHistogram() {
+		histogram = null;
 	}
 
+	public int countOf(Integer pixel) {
+		return currentHistogram().countOf(pixel);
+	}
+
+	public int distinctValues() {
+		return currentHistogram().distinctValues();
+	}
+
+	public double mean() {
+		return currentHistogram().mean();
+	}
+
+	public double entropy() {
+		return currentHistogram().entropy();
+	}
+
+	// Without a histogram kept up to date, one is counted from the runs on demand
+	private PixelHistogram currentHistogram() {
+		return histogram != null ? histogram : PixelHistogram.of(this);
+	}
+
+	public void enablePositionIndex() {
+		positionIndexEnabled = true;
+	}
+
+	public void disablePositionIndex() {
+		positionIndexEnabled = false;
+		positionIndex = null;
+	}
+
+	/**
+	 * Reports every rebuild of the runs, along with the run and pixel counts each time the number of runs changes, to
+	 * the given metrics until disableMetrics() is called
+	 */
+	public void enableMetrics(RLEMetrics inMetrics) {
+		metrics = inMetrics;
+		recordShape();
+	}
+
+	public void disableMetrics() {
+		metrics = null;
+	}
+
+	private void recordShape() {
+		if (metrics != null) {
+			metrics.recordShape(length, fieldCodePairs.size());
+		}
+	}
+
+	private void recordRebuild() {
+		if (metrics != null) {
+			metrics.recordRebuild();
+			metrics.recordShape(length, fieldCodePairs.size());
+		}
+	}
+
+	// Rebuilds the index only when runs have been inserted, removed or recolored since it was last used
+	private PixelPositionIndex currentPositionIndex() {
+		if (positionIndex == null) {
+			positionIndex = new PixelPositionIndex(this);
+		}
+		return positionIndex;
+	}
+
+	private void rebuildHistogram() {
+		if (histogram != null) {
+			histogram = PixelHistogram.of(this);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<FieldCodePair<Integer>> pairsOf(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof RLESequenceV2) {
+			// Copies of the other sequence's runs, so adding a sequence to itself is safe even once its last run grows
+			return ((RLESequenceV2)sequence).copy().fieldCodePairs;
+		}
+		List<Integer> pixels = (List<Integer>)sequence.getAll();
+		for (Integer pixel : pixels) {
+			assertIsValid(pixel);
+		}
+		return RLEConverter.toSpace(pixels);
+	}
+
+	// Freshly allocated runs covering the pixels from startIndex (inclusive) to endIndex (exclusive)
+	private List<FieldCodePair<Integer>> pairsBetween(int startIndex, int endIndex) {
+		assertIsInRange(startIndex, endIndex);
+		List<FieldCodePair<Integer>> slicedPairs = new ArrayList<FieldCodePair<Integer>>();
+		if (startIndex == endIndex) {
+			return slicedPairs;
+		}
+		int runIndex = runIndexOf(startIndex);
+		int runStart = runStartOf(runIndex);
+		while (runStart < endIndex) {
+			FieldCodePair<Integer> run = fieldCodePairs.get(runIndex);
+			int runEnd = runStart + run.getCount();
+			int count = Math.min(runEnd, endIndex) - Math.max(runStart, startIndex);
+			slicedPairs.add(new FieldCodePair<Integer>(count, run.getElement()));
+			runStart = runEnd;
+			runIndex++;
+		}
+		return slicedPairs;
+	}
+
+	// Binary searches the prefix sums for the run holding the pixel at index, which must be in bounds
+	private int runIndexOf(int index) {
+		repairRunEnds();
+		int foundIndex = Arrays.binarySearch(runEnds, 0, fieldCodePairs.size(), index);
+		// A run ending exactly at index means the pixel is the first one of the following run
+		return foundIndex >= 0 ? foundIndex + 1 : -(foundIndex + 1);
+	}
+
+	private int runStartOf(int runIndex) {
+		if (runIndex == 0) {
+			return 0;
+		}
+		repairRunEnds();
+		return runEnds[runIndex - 1];
+	}
+
+	// Recomputes only the prefix sums at or after the first run changed since the last lookup,
+	// so appending stays cheap and a burst of edits costs at most one pass over the runs
+	private void repairRunEnds() {
+		int runCount = fieldCodePairs.size();
+		if (validRunEnds >= runCount) {
+			return;
+		}
+		if (runEnds.length < runCount) {
+			runEnds = Arrays.copyOf(runEnds, Math.max(runCount, runEnds.length * 2));
+		}
+		int runEnd = validRunEnds == 0 ? 0 : runEnds[validRunEnds - 1];
+		for (int i = validRunEnds; i < runCount; i++) {
+			runEnd += fieldCodePairs.get(i).getCount();
+			runEnds[i] = runEnd;
+		}
+		validRunEnds = runCount;
+	}
+
+	private void invalidateRunEndsFrom(int runIndex) {
+		validRunEnds = Math.min(validRunEnds, runIndex);
+	}
+
+	// Every structural change to the runs goes through the following few methods
+
+	private void insertRun(int runIndex, Integer pixel, int count) {
+		fieldCodePairs.add(runIndex, new FieldCodePair<Integer>(count, pixel));
+		length += count;
+		invalidateRunEndsFrom(runIndex);
+		positionIndex = null;
+		if (histogram != null) {
+			histogram.addRun(pixel, count);
+		}
+		recordShape();
+	}
+
+	private void removeRun(int runIndex) {
+		FieldCodePair<Integer> run = fieldCodePairs.remove(runIndex);
+		length -= run.getCount();
+		invalidateRunEndsFrom(runIndex);
+		positionIndex = null;
+		if (histogram != null) {
+			histogram.removeRun(run.getElement(), run.getCount());
+		}
+		recordShape();
+	}
+
+	private void setRunCount(int runIndex, int count) {
+		FieldCodePair<Integer> run = fieldCodePairs.get(runIndex);
+		if (histogram != null) {
+			histogram.resizeRun(run.getElement(), count - run.getCount());
+		}
+		length += count - run.getCount();
+		run.setCountTo(count);
+		invalidateRunEndsFrom(runIndex);
+	}
+
+	private void setRunPixel(int runIndex, Integer pixel) {
+		FieldCodePair<Integer> run = fieldCodePairs.get(runIndex);
+		if (histogram != null) {
+			histogram.removeRun(run.getElement(), run.getCount());
+			histogram.addRun(pixel, run.getCount());
+		}
+		run.setElementTo(pixel);
+		positionIndex = null;
+	}
+
+	// Adds count pixels to the end, extending the last run when it holds the same pixel
+	private void appendRun(Integer pixel, int count) {
+		if (count == 0) {
+			return;
+		}
+		int lastIndex = fieldCodePairs.size() - 1;
+		if (lastIndex >= 0 && fieldCodePairs.get(lastIndex).getElement().equals(pixel)) {
+			setRunCount(lastIndex, fieldCodePairs.get(lastIndex).getCount() + count);
+		} else {
+			insertRun(lastIndex + 1, pixel, count);
+		}
+	}
+
+	// Splits the run so that its first offset pixels stay at runIndex and the rest move to runIndex + 1
+	private void splitRun(int runIndex, int offset) {
+		FieldCodePair<Integer> run = fieldCodePairs.get(runIndex);
+		int count = run.getCount();
+		setRunCount(runIndex, offset);
+		insertRun(runIndex + 1, run.getElement(), count - offset);
+	}
+
+	// Merges the run at runIndex with any neighboring runs of the same pixel
+	private void coalesceAround(int runIndex) {
+		if (runIndex + 1 < fieldCodePairs.size()
+				&& fieldCodePairs.get(runIndex + 1).getElement().equals(fieldCodePairs.get(runIndex).getElement())) {
+			int mergedCount = fieldCodePairs.get(runIndex + 1).getCount();
+			removeRun(runIndex + 1);
+			setRunCount(runIndex, fieldCodePairs.get(runIndex).getCount() + mergedCount);
+		}
+		if (runIndex > 0
+				&& fieldCodePairs.get(runIndex - 1).getElement().equals(fieldCodePairs.get(runIndex).getElement())) {
+			int mergedCount = fieldCodePairs.get(runIndex).getCount();
+			removeRun(runIndex);
+			setRunCount(runIndex - 1, fieldCodePairs.get(runIndex - 1).getCount() + mergedCount);
+		}
+	}
+
+	private static void appendRunTo(List<FieldCodePair<Integer>> pairs, Integer pixel, int count) {
+		if (count == 0) {
+			return;
+		}
+		int lastIndex = pairs.size() - 1;
+		if (lastIndex >= 0 && pairs.get(lastIndex).getElement().equals(pixel)) {
+			FieldCodePair<Integer> lastPair = pairs.get(lastIndex);
+			lastPair.setCountTo(lastPair.getCount() + count);
+		} else {
+			pairs.add(new FieldCodePair<Integer>(count, pixel));
+		}
+	}
+
+	// Always kept in canonical form: no empty runs and no two neighboring runs of the same pixel
 	private List<FieldCodePair<Integer>> fieldCodePairs;
+	// Total number of pixels across all runs
+	private int length;
+	// Null unless enabled, in which case every change to the runs below keeps it up to date
+	private PixelHistogram histogram;
+	// Only used while enabled, and null whenever it is out of date with the runs
+	private PixelPositionIndex positionIndex;
+	private boolean positionIndexEnabled;
+	// Null unless enabled, and never copied along with the runs
+	private RLEMetrics metrics;
+	// runEnds[i] is the index just past the last pixel of run i, but only the first validRunEnds entries are current
+	private int[] runEnds = new int[0];
+	private int validRunEnds = 0;
 	
 	public boolean equals(Object anotherObj) {
 		if (anotherObj instanceof RLESequenceV2) {
 			RLESequenceV2 anotherRLESequenceV2 = (RLESequenceV2)anotherObj;
-			return RLEConverter.toAPI(fieldCodePairs).equals(anotherRLESequenceV2.getAll());
+			if (length != anotherRLESequenceV2.length || fieldCodePairs.size() != anotherRLESequenceV2.fieldCodePairs.size()) {
+				return false;
+			}
+			// Both sequences are canonical, so equal pixels imply equal runs
+			for (int i = 0; i < fieldCodePairs.size(); i++) {
+				FieldCodePair<Integer> fieldCodePair = fieldCodePairs.get(i);
+				FieldCodePair<Integer> anotherFieldCodePair = anotherRLESequenceV2.fieldCodePairs.get(i);
+				if (fieldCodePair.getCount() != anotherFieldCodePair.getCount()
+						|| !fieldCodePair.getElement().equals(anotherFieldCodePair.getElement())) {
+					return false;
+				}
+			}
+			return true;
 		}
 		return false;
 	}
 	
+	// Hashes the length and the runs, which are canonical, so equal sequences hash the same
+	public int hashCode() {
+		int hash = length;
+		for (FieldCodePair<Integer> fieldCodePair : fieldCodePairs) {
+			hash = 31 * hash + fieldCodePair.getElement();
+			hash = 31 * hash + fieldCodePair.getCount();
+		}
+		return hash;
+	}
+	
 	public String toString() {
 		if (isEmpty()) {
 			return "[]";
@@ -233,4 +777,6 @@ public class RLESequenceV2 implements RLESequence<Integer, Integer, RLESequenceV
 		builder.replace(currentLength - 1, currentLength, "]");
 		return builder.toString();
 	}
+
+	private static final int UNFOUND_INDEX = -1;
 }
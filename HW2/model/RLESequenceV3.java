@@ -0,0 +1,784 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+import func.RLESearcher;
+
+public class RLESequenceV3 implements RLESequence<Integer, Integer, RLESequenceV3>, PixelRetrievable, BatchEditable, PixelCountable, PositionIndexed {
+
+	public RLESequenceV3() {
+		this(0);
+	}
+
+	public RLESequenceV3(Integer inRunCapacity) {
+		initRuns(inRunCapacity);
+	}
+
+	public RLESequenceV3(Integer... inPixels) {
+		initRuns(0);
+		for (int i = 0; i < inPixels.length; i++) {
+			assertIsValid(inPixels[i]);
+			appendRun(inPixels[i], 1);
+		}
+	}
+
+	public RLESequenceV3(List<Integer> inPixels) {
+		initRuns(0);
+		for (Integer pixel : inPixels) {
+			assertIsValid(pixel);
+			appendRun(pixel, 1);
+		}
+	}
+
+	// Every byte is a valid pixel once read back as an unsigned value, so no validation is needed
+	public RLESequenceV3(byte[] inPixels) {
+		initRuns(0);
+		for (int i = 0; i < inPixels.length; i++) {
+			appendRun(inPixels[i] & PIXEL_MASK, 1);
+		}
+	}
+
+	private void initRuns(int runCapacity) {
+		runPixels = new byte[runCapacity];
+		runCounts = new int[runCapacity];
+		runEnds = new int[0];
+		runCount = 0;
+		validRunEnds = 0;
+		length = 0;
+	}
+
+	private boolean isValid(Integer pixel) {
+		return pixel >= 0 && pixel <= 255;
+	}
+
+	private void assertIsValid(Integer pixel) throws IllegalArgumentException {
+		if (!isValid(pixel)) {
+			throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+		}
+	}
+
+	private void assertIsInBounds(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+
+	private void assertIsInRange(int startIndex, int endIndex) throws IndexOutOfBoundsException {
+		if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Start index: " + startIndex + ", End index: " + endIndex + ", Length: " + length);
+		}
+	}
+
+	private void throwNoSuchElement(Integer pixel) throws NoSuchElementException {
+		throw new NoSuchElementException("The RLESequence does not contain the given pixel " + pixel);
+	}
+
+	private int pixelOf(int runIndex) {
+		return runPixels[runIndex] & PIXEL_MASK;
+	}
+
+	// Pixels outside of 0 to 255 would otherwise wrap around when narrowed to a byte and falsely match
+	private int firstRunOf(Integer pixel) {
+		if (!isValid(pixel)) {
+			return UNFOUND_INDEX;
+		}
+		if (positionIndexEnabled) {
+			return currentPositionIndex().firstRunOf(pixel);
+		}
+		for (int i = 0; i < runCount; i++) {
+			if (pixelOf(i) == pixel) {
+				return i;
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	private int lastRunOf(Integer pixel) {
+		if (!isValid(pixel)) {
+			return UNFOUND_INDEX;
+		}
+		if (positionIndexEnabled) {
+			return currentPositionIndex().lastRunOf(pixel);
+		}
+		for (int i = runCount - 1; i >= 0; i--) {
+			if (pixelOf(i) == pixel) {
+				return i;
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	public boolean contains(Integer pixel) {
+		if (histogram != null) {
+			return histogram.contains(pixel);
+		}
+		return firstRunOf(pixel) != UNFOUND_INDEX;
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		for (int i = 0; i < pixels.length; i++) {
+			if (!contains(pixels[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		for (Integer pixel : pixels) {
+			if (!contains(pixel)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		return contains(Arrays.asList(pixelSequence));
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		return new RLESearcher(pixelSequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		int runIndex = firstRunOf(pixel);
+		if (runIndex == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return runStartOf(runIndex);
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		int runIndex = lastRunOf(pixel);
+		if (runIndex == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return runStartOf(runIndex) + runCounts[runIndex] - 1;
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		forEachRangeOf(pixel, (rangeStart, rangeLength) -> {
+			for (int i = 0; i < rangeLength; i++) {
+				indexes.add(rangeStart + i);
+			}
+		});
+		if (indexes.isEmpty()) {
+			throwNoSuchElement(pixel);
+		}
+		return indexes;
+	}
+
+	public void forEachRangeOf(Integer pixel, IntIntConsumer rangeConsumer) {
+		if (!isValid(pixel)) {
+			return;
+		}
+		if (positionIndexEnabled) {
+			currentPositionIndex().forEachRunOf(pixel, runIndex -> rangeConsumer.accept(runStartOf(runIndex), runCounts[runIndex]));
+			return;
+		}
+		int runStart = 0;
+		for (int i = 0; i < runCount; i++) {
+			if (pixelOf(i) == pixel) {
+				rangeConsumer.accept(runStart, runCounts[i]);
+			}
+			runStart += runCounts[i];
+		}
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		assertIsValid(newPixel);
+		assertIsInBounds(index);
+		int runIndex = runIndexOf(index);
+		if (pixelOf(runIndex) == newPixel) {
+			return;
+		}
+		int offset = index - runStartOf(runIndex);
+		int count = runCounts[runIndex];
+		if (count == 1) {
+			setRunPixel(runIndex, newPixel);
+			coalesceAround(runIndex);
+		} else if (offset == 0) {
+			setRunCount(runIndex, count - 1);
+			insertRun(runIndex, newPixel, 1);
+			coalesceAround(runIndex);
+		} else if (offset == count - 1) {
+			setRunCount(runIndex, count - 1);
+			insertRun(runIndex + 1, newPixel, 1);
+			coalesceAround(runIndex + 1);
+		} else {
+			splitRun(runIndex, offset);
+			insertRun(runIndex + 1, newPixel, 1);
+			setRunCount(runIndex + 2, runCounts[runIndex + 2] - 1);
+		}
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		replaceAt(indexOfFirst(oldPixel), newPixel);
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		replaceAt(indexOfLast(oldPixel), newPixel);
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		assertIsValid(newPixel);
+		if (!contains(oldPixel)) {
+			throwNoSuchElement(oldPixel);
+		}
+		RLESequenceV3 replaced = new RLESequenceV3(runCount);
+		for (int i = 0; i < runCount; i++) {
+			replaced.appendRun(pixelOf(i) == oldPixel ? newPixel : pixelOf(i), runCounts[i]);
+		}
+		adoptRunsOf(replaced);
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		if (isEmpty()) {
+			append(newPixel);
+			return;
+		}
+		assertIsValid(newPixel);
+		if (index == length) {
+			append(newPixel);
+			return;
+		}
+		assertIsInBounds(index);
+		int runIndex = runIndexOf(index);
+		int offset = index - runStartOf(runIndex);
+		if (pixelOf(runIndex) == newPixel) {
+			setRunCount(runIndex, runCounts[runIndex] + 1);
+		} else if (offset == 0 && runIndex > 0 && pixelOf(runIndex - 1) == newPixel) {
+			setRunCount(runIndex - 1, runCounts[runIndex - 1] + 1);
+		} else if (offset == 0) {
+			insertRun(runIndex, newPixel, 1);
+		} else {
+			splitRun(runIndex, offset);
+			insertRun(runIndex + 1, newPixel, 1);
+		}
+	}
+
+	public void append(Integer newPixel) {
+		assertIsValid(newPixel);
+		appendRun(newPixel, 1);
+	}
+
+	public void prepend(Integer newPixel) {
+		insert(newPixel, 0);
+	}
+
+	public void remove(Integer index) {
+		assertIsInBounds(index);
+		int runIndex = runIndexOf(index);
+		if (runCounts[runIndex] > 1) {
+			setRunCount(runIndex, runCounts[runIndex] - 1);
+		} else {
+			removeRun(runIndex);
+			if (runIndex > 0) {
+				coalesceAround(runIndex - 1);
+			}
+		}
+	}
+
+	public void removeFirst(Integer pixel) {
+		remove(indexOfFirst(pixel));
+	}
+
+	public void removeLast(Integer pixel) {
+		remove(indexOfLast(pixel));
+	}
+
+	public void removeAll(Integer pixel) {
+		if (!contains(pixel)) {
+			throwNoSuchElement(pixel);
+		}
+		RLESequenceV3 remaining = new RLESequenceV3(runCount);
+		for (int i = 0; i < runCount; i++) {
+			if (pixelOf(i) != pixel) {
+				remaining.appendRun(pixelOf(i), runCounts[i]);
+			}
+		}
+		adoptRunsOf(remaining);
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		EditBatch batch = new EditBatch(length);
+		batchRecorder.accept(batch);
+		if (batch.isEmpty()) {
+			return;
+		}
+		RLESequenceV3 edited = new RLESequenceV3(runCount);
+		batch.applyTo(this, edited::appendRun);
+		adoptRunsOf(edited);
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	public Integer getAt(Integer index) {
+		assertIsInBounds(index);
+		return pixelOf(runIndexOf(index));
+	}
+
+	public List<Integer> getAll() {
+		return getBetween(0, length);
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		return getBetween(startIndex, length);
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		return getBetween(0, endIndex);
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		RLESequenceV3 slice = subsequenceBetween(startIndex, endIndex);
+		List<Integer> pixels = new ArrayList<Integer>(slice.length);
+		for (int i = 0; i < slice.runCount; i++) {
+			Integer pixel = slice.pixelOf(i);
+			for (int j = 0; j < slice.runCounts[i]; j++) {
+				pixels.add(pixel);
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * @return the pixels of this sequence, one unsigned byte per pixel
+	 */
+	public byte[] toByteArray() {
+		byte[] pixels = new byte[length];
+		copyInto(pixels, 0);
+		return pixels;
+	}
+
+	public int getAtInt(int index) {
+		assertIsInBounds(index);
+		return pixelOf(runIndexOf(index));
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		for (int i = 0; i < runCount; i++) {
+			runConsumer.accept(pixelOf(i), runCounts[i]);
+		}
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		assertFitsInto(dst, offset);
+		int runStart = offset;
+		for (int i = 0; i < runCount; i++) {
+			Arrays.fill(dst, runStart, runStart + runCounts[i], runPixels[i]);
+			runStart += runCounts[i];
+		}
+		return length;
+	}
+
+	private void assertFitsInto(byte[] dst, int offset) throws IndexOutOfBoundsException {
+		if (offset < 0 || offset > dst.length - length) {
+			throw new IndexOutOfBoundsException("Cannot copy " + length + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+	}
+
+	public IntStream pixels() {
+		return IntStream.range(0, runCount).flatMap(runIndex -> {
+			int pixel = pixelOf(runIndex);
+			return IntStream.range(0, runCounts[runIndex]).map(i -> pixel);
+		});
+	}
+
+	public Integer length() {
+		return length;
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean containsSubsequence(RLESequence sequence) {
+		return RLESearcher.forPattern(sequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		int index = RLESearcher.forPattern(sequence).indexIn(this);
+		if (index == UNFOUND_INDEX) {
+			throw new NoSuchElementException("The RLESequence does not contain the given subsequence " + sequence);
+		}
+		return index;
+	}
+
+	public RLESequenceV3 subsequenceFrom(Integer startIndex) {
+		return subsequenceBetween(startIndex, length);
+	}
+
+	public RLESequenceV3 subsequenceTo(Integer endIndex) {
+		return subsequenceBetween(0, endIndex);
+	}
+
+	public RLESequenceV3 subsequenceBetween(Integer startIndex, Integer endIndex) {
+		assertIsInRange(startIndex, endIndex);
+		RLESequenceV3 slice = new RLESequenceV3(0);
+		appendRunsBetween(slice, startIndex, endIndex);
+		return slice;
+	}
+
+	/**
+	 * Replaces the pixels from startIndex (inclusive) to endIndex (exclusive) with the pixels of replacement, which
+	 * may be of any length, in one pass over the runs
+	 */
+	public void replaceBetween(int startIndex, int endIndex, PixelRetrievable replacement) {
+		assertIsInRange(startIndex, endIndex);
+		RLESequenceV3 replaced = new RLESequenceV3(runCount + 2);
+		appendRunsBetween(replaced, 0, startIndex);
+		replacement.forEachRun(replaced::appendRun);
+		appendRunsBetween(replaced, endIndex, length);
+		adoptRunsOf(replaced);
+	}
+
+	public void fillBetween(int startIndex, int endIndex, int pixel) {
+		assertIsValid(pixel);
+		assertIsInRange(startIndex, endIndex);
+		replaceBetween(startIndex, endIndex, ofRun(pixel, endIndex - startIndex));
+	}
+
+	/**
+	 * @return a sequence of count copies of the given pixel, held in a single run
+	 * @throws IllegalArgumentException
+	 *             if the pixel is not from 0 to 255 or the count is negative
+	 */
+	public static RLESequenceV3 ofRun(int pixel, int count) throws IllegalArgumentException {
+		if (count < 0) {
+			throw new IllegalArgumentException("A run cannot have a count less than 0, not " + count);
+		}
+		RLESequenceV3 sequence = new RLESequenceV3(1);
+		sequence.assertIsValid(pixel);
+		sequence.appendRun(pixel, count);
+		return sequence;
+	}
+
+	/**
+	 * @return a sequence of the same pixels as the given one, built from its runs without visiting each pixel
+	 */
+	public static RLESequenceV3 ofRuns(PixelRetrievable sequence) {
+		RLESequenceV3 runs = new RLESequenceV3(0);
+		sequence.forEachRun(runs::appendRun);
+		return runs;
+	}
+
+	/**
+	 * @return the number of runs in this sequence
+	 */
+	public int runCount() {
+		return runCount;
+	}
+
+	private void appendRunsBetween(RLESequenceV3 sequence, int startIndex, int endIndex) {
+		if (startIndex == endIndex) {
+			return;
+		}
+		int runIndex = runIndexOf(startIndex);
+		int runStart = runStartOf(runIndex);
+		while (runStart < endIndex) {
+			int runEnd = runStart + runCounts[runIndex];
+			sequence.appendRun(pixelOf(runIndex), Math.min(runEnd, endIndex) - Math.max(runStart, startIndex));
+			runStart = runEnd;
+			runIndex++;
+		}
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> sequence) {
+		RLESequenceV3 joined = runsOf(sequence).copy();
+		for (int i = 0; i < runCount; i++) {
+			joined.appendRun(pixelOf(i), runCounts[i]);
+		}
+		adoptRunsOf(joined);
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> sequence) {
+		// Adding a sequence to itself reads from a copy, as appending grows the very last run being read
+		RLESequenceV3 tail = sequence == this ? copy() : runsOf(sequence);
+		int tailRunCount = tail.runCount;
+		for (int i = 0; i < tailRunCount; i++) {
+			appendRun(tail.pixelOf(i), tail.runCounts[i]);
+		}
+	}
+
+	public RLESequenceV3 copy() {
+		RLESequenceV3 copied = new RLESequenceV3(0);
+		copied.runPixels = Arrays.copyOf(runPixels, runCount);
+		copied.runCounts = Arrays.copyOf(runCounts, runCount);
+		copied.runCount = runCount;
+		copied.length = length;
+		copied.histogram = histogram == null ? null : histogram.copy();
+		// The index is immutable, so the copy can share it until either sequence's runs change
+		copied.positionIndex = positionIndex;
+		copied.positionIndexEnabled = positionIndexEnabled;
+		return copied;
+	}
+
+	public void enableHistogram() {
+		if (histogram == null) {
+			histogram = PixelHistogram.of(this);
+		}
+	}
+
+	public void disableHistogram() {
+		histogram = null;
+	}
+
+	public int countOf(Integer pixel) {
+		return currentHistogram().countOf(pixel);
+	}
+
+	public int distinctValues() {
+		return currentHistogram().distinctValues();
+	}
+
+	public double mean() {
+		return currentHistogram().mean();
+	}
+
+	public double entropy() {
+		return currentHistogram().entropy();
+	}
+
+	// Without a histogram kept up to date, one is counted from the runs on demand
+	private PixelHistogram currentHistogram() {
+		return histogram != null ? histogram : PixelHistogram.of(this);
+	}
+
+	public void enablePositionIndex() {
+		positionIndexEnabled = true;
+	}
+
+	public void disablePositionIndex() {
+		positionIndexEnabled = false;
+		positionIndex = null;
+	}
+
+	// Rebuilds the index only when runs have been inserted, removed or recolored since it was last used
+	private PixelPositionIndex currentPositionIndex() {
+		if (positionIndex == null) {
+			positionIndex = new PixelPositionIndex(this);
+		}
+		return positionIndex;
+	}
+
+	private void rebuildHistogram() {
+		if (histogram != null) {
+			histogram = PixelHistogram.of(this);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private RLESequenceV3 runsOf(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof RLESequenceV3) {
+			return (RLESequenceV3)sequence;
+		}
+		if (sequence instanceof PixelRetrievable) {
+			return ofRuns((PixelRetrievable)sequence);
+		}
+		return new RLESequenceV3((List<Integer>)sequence.getAll());
+	}
+
+	// Binary searches the prefix sums for the run holding the pixel at index, which must be in bounds
+	private int runIndexOf(int index) {
+		repairRunEnds();
+		int foundIndex = Arrays.binarySearch(runEnds, 0, runCount, index);
+		// A run ending exactly at index means the pixel is the first one of the following run
+		return foundIndex >= 0 ? foundIndex + 1 : -(foundIndex + 1);
+	}
+
+	private int runStartOf(int runIndex) {
+		if (runIndex == 0) {
+			return 0;
+		}
+		repairRunEnds();
+		return runEnds[runIndex - 1];
+	}
+
+	// Recomputes only the prefix sums at or after the first run changed since the last lookup
+	private void repairRunEnds() {
+		if (validRunEnds >= runCount) {
+			return;
+		}
+		if (runEnds.length < runCount) {
+			runEnds = Arrays.copyOf(runEnds, Math.max(runCount, runEnds.length * 2));
+		}
+		int runEnd = validRunEnds == 0 ? 0 : runEnds[validRunEnds - 1];
+		for (int i = validRunEnds; i < runCount; i++) {
+			runEnd += runCounts[i];
+			runEnds[i] = runEnd;
+		}
+		validRunEnds = runCount;
+	}
+
+	private void invalidateRunEndsFrom(int runIndex) {
+		validRunEnds = Math.min(validRunEnds, runIndex);
+	}
+
+	// Every structural change to the runs goes through the following few methods
+
+	private void ensureRunCapacity(int minimumCapacity) {
+		if (runPixels.length < minimumCapacity) {
+			int newCapacity = Math.max(minimumCapacity, Math.max(runPixels.length * 2, MINIMUM_RUN_CAPACITY));
+			runPixels = Arrays.copyOf(runPixels, newCapacity);
+			runCounts = Arrays.copyOf(runCounts, newCapacity);
+		}
+	}
+
+	private void insertRun(int runIndex, int pixel, int count) {
+		ensureRunCapacity(runCount + 1);
+		System.arraycopy(runPixels, runIndex, runPixels, runIndex + 1, runCount - runIndex);
+		System.arraycopy(runCounts, runIndex, runCounts, runIndex + 1, runCount - runIndex);
+		runPixels[runIndex] = (byte)pixel;
+		runCounts[runIndex] = count;
+		runCount++;
+		length += count;
+		invalidateRunEndsFrom(runIndex);
+		positionIndex = null;
+		if (histogram != null) {
+			histogram.addRun(pixel, count);
+		}
+	}
+
+	private void removeRun(int runIndex) {
+		if (histogram != null) {
+			histogram.removeRun(pixelOf(runIndex), runCounts[runIndex]);
+		}
+		length -= runCounts[runIndex];
+		System.arraycopy(runPixels, runIndex + 1, runPixels, runIndex, runCount - runIndex - 1);
+		System.arraycopy(runCounts, runIndex + 1, runCounts, runIndex, runCount - runIndex - 1);
+		runCount--;
+		invalidateRunEndsFrom(runIndex);
+		positionIndex = null;
+	}
+
+	private void setRunCount(int runIndex, int count) {
+		if (histogram != null) {
+			histogram.resizeRun(pixelOf(runIndex), count - runCounts[runIndex]);
+		}
+		length += count - runCounts[runIndex];
+		runCounts[runIndex] = count;
+		invalidateRunEndsFrom(runIndex);
+	}
+
+	private void setRunPixel(int runIndex, int pixel) {
+		if (histogram != null) {
+			histogram.removeRun(pixelOf(runIndex), runCounts[runIndex]);
+			histogram.addRun(pixel, runCounts[runIndex]);
+		}
+		runPixels[runIndex] = (byte)pixel;
+		positionIndex = null;
+	}
+
+	// Adds count pixels to the end, extending the last run when it holds the same pixel
+	private void appendRun(int pixel, int count) {
+		if (count == 0) {
+			return;
+		}
+		if (runCount > 0 && pixelOf(runCount - 1) == pixel) {
+			setRunCount(runCount - 1, runCounts[runCount - 1] + count);
+		} else {
+			insertRun(runCount, pixel, count);
+		}
+	}
+
+	// Splits the run so that its first offset pixels stay at runIndex and the rest move to runIndex + 1
+	private void splitRun(int runIndex, int offset) {
+		int count = runCounts[runIndex];
+		setRunCount(runIndex, offset);
+		insertRun(runIndex + 1, pixelOf(runIndex), count - offset);
+	}
+
+	// Merges the run at runIndex with any neighboring runs of the same pixel
+	private void coalesceAround(int runIndex) {
+		if (runIndex + 1 < runCount && runPixels[runIndex + 1] == runPixels[runIndex]) {
+			int mergedCount = runCounts[runIndex + 1];
+			removeRun(runIndex + 1);
+			setRunCount(runIndex, runCounts[runIndex] + mergedCount);
+		}
+		if (runIndex > 0 && runPixels[runIndex - 1] == runPixels[runIndex]) {
+			int mergedCount = runCounts[runIndex];
+			removeRun(runIndex);
+			setRunCount(runIndex - 1, runCounts[runIndex - 1] + mergedCount);
+		}
+	}
+
+	private void adoptRunsOf(RLESequenceV3 sequence) {
+		runPixels = sequence.runPixels;
+		runCounts = sequence.runCounts;
+		runCount = sequence.runCount;
+		length = sequence.length;
+		invalidateRunEndsFrom(0);
+		rebuildHistogram();
+		positionIndex = null;
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof RLESequenceV3) {
+			RLESequenceV3 anotherRLESequenceV3 = (RLESequenceV3)anotherObj;
+			if (length != anotherRLESequenceV3.length || runCount != anotherRLESequenceV3.runCount) {
+				return false;
+			}
+			// Both sequences are canonical, so equal pixels imply equal runs
+			for (int i = 0; i < runCount; i++) {
+				if (runPixels[i] != anotherRLESequenceV3.runPixels[i] || runCounts[i] != anotherRLESequenceV3.runCounts[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	// Hashes the length and the runs, which are canonical, so equal sequences hash the same
+	public int hashCode() {
+		int hash = length;
+		for (int i = 0; i < runCount; i++) {
+			hash = 31 * hash + (runPixels[i] & PIXEL_MASK);
+			hash = 31 * hash + runCounts[i];
+		}
+		return hash;
+	}
+
+	public String toString() {
+		if (isEmpty()) {
+			return "[]";
+		}
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < runCount; i++) {
+			builder.append("[" + runCounts[i] + " " + pixelOf(i) + "]");
+			builder.append(" ");
+		}
+		int currentLength = builder.length();
+		builder.replace(currentLength - 1, currentLength, "]");
+		return builder.toString();
+	}
+
+	// Runs are stored as parallel arrays, so a sequence holds no object per run or per pixel.
+	// Only the first runCount entries are in use, and they are always kept in canonical form:
+	// no empty runs and no two neighboring runs of the same pixel
+	private byte[] runPixels;
+	private int[] runCounts;
+	private int runCount;
+	// Total number of pixels across all runs
+	private int length;
+	// runEnds[i] is the index just past the last pixel of run i, but only the first validRunEnds entries are current
+	private int[] runEnds;
+	private int validRunEnds;
+	// Null unless enabled, in which case every change to the runs below keeps it up to date
+	private PixelHistogram histogram;
+	// Only used while enabled, and null whenever it is out of date with the runs
+	private PixelPositionIndex positionIndex;
+	private boolean positionIndexEnabled;
+
+	private static final int PIXEL_MASK = 0xFF;
+	private static final int MINIMUM_RUN_CAPACITY = 8;
+	private static final int UNFOUND_INDEX = -1;
+}
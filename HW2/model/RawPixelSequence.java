@@ -0,0 +1,440 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+import func.RLESearcher;
+
+// Stores one unsigned byte per pixel with no encoding at all, which suits noisy data better than runs do.
+// It still counts its runs as it is edited, so that AdaptiveRLESequence can tell when encoding them would pay off
+class RawPixelSequence implements RLESequence<Integer, Integer, RawPixelSequence>, PixelRetrievable, BatchEditable {
+
+	RawPixelSequence(byte[] inPixels, int inLength) {
+		pixels = inPixels;
+		length = inLength;
+		countBoundaries();
+	}
+
+	private boolean isValid(Integer pixel) {
+		return pixel >= 0 && pixel <= 255;
+	}
+
+	private void assertIsValid(Integer pixel) throws IllegalArgumentException {
+		if (!isValid(pixel)) {
+			throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+		}
+	}
+
+	private void assertIsInBounds(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+		}
+	}
+
+	private void assertIsInRange(int startIndex, int endIndex) throws IndexOutOfBoundsException {
+		if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Start index: " + startIndex + ", End index: " + endIndex + ", Length: " + length);
+		}
+	}
+
+	private void throwNoSuchElement(Integer pixel) throws NoSuchElementException {
+		throw new NoSuchElementException("The RLESequence does not contain the given pixel " + pixel);
+	}
+
+	private int pixelAt(int index) {
+		return pixels[index] & PIXEL_MASK;
+	}
+
+	public boolean contains(Integer pixel) {
+		return firstIndexOf(pixel) != UNFOUND_INDEX;
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		for (int i = 0; i < pixels.length; i++) {
+			if (!contains(pixels[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		for (Integer pixel : pixels) {
+			if (!contains(pixel)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		return contains(Arrays.asList(pixelSequence));
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		return new RLESearcher(pixelSequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	// Pixels outside of 0 to 255 would otherwise wrap around when narrowed to a byte and falsely match
+	private int firstIndexOf(Integer pixel) {
+		if (isValid(pixel)) {
+			for (int i = 0; i < length; i++) {
+				if (pixelAt(i) == pixel) {
+					return i;
+				}
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	private int lastIndexOf(Integer pixel) {
+		if (isValid(pixel)) {
+			for (int i = length - 1; i >= 0; i--) {
+				if (pixelAt(i) == pixel) {
+					return i;
+				}
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		int index = firstIndexOf(pixel);
+		if (index == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return index;
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		int index = lastIndexOf(pixel);
+		if (index == UNFOUND_INDEX) {
+			throwNoSuchElement(pixel);
+		}
+		return index;
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		if (isValid(pixel)) {
+			for (int i = 0; i < length; i++) {
+				if (pixelAt(i) == pixel) {
+					indexes.add(i);
+				}
+			}
+		}
+		if (indexes.isEmpty()) {
+			throwNoSuchElement(pixel);
+		}
+		return indexes;
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		assertIsValid(newPixel);
+		assertIsInBounds(index);
+		boundaries -= boundariesAround(index);
+		pixels[index] = (byte)(int)newPixel;
+		boundaries += boundariesAround(index);
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		replaceAt(indexOfFirst(oldPixel), newPixel);
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		replaceAt(indexOfLast(oldPixel), newPixel);
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		assertIsValid(newPixel);
+		// Throws when the old pixel is absent
+		indexOfFirst(oldPixel);
+		for (int i = 0; i < length; i++) {
+			if (pixelAt(i) == oldPixel) {
+				pixels[i] = (byte)(int)newPixel;
+			}
+		}
+		countBoundaries();
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		assertIsValid(newPixel);
+		if (index != length) {
+			assertIsInBounds(index);
+		}
+		boundaries -= boundaryBefore(index);
+		ensureCapacity(length + 1);
+		System.arraycopy(pixels, index, pixels, index + 1, length - index);
+		pixels[index] = (byte)(int)newPixel;
+		length++;
+		boundaries += boundariesAround(index);
+	}
+
+	public void append(Integer newPixel) {
+		insert(newPixel, length);
+	}
+
+	public void prepend(Integer newPixel) {
+		insert(newPixel, 0);
+	}
+
+	public void remove(Integer index) {
+		assertIsInBounds(index);
+		boundaries -= boundariesAround(index);
+		System.arraycopy(pixels, index + 1, pixels, index, length - index - 1);
+		length--;
+		boundaries += boundaryBefore(index);
+	}
+
+	public void removeFirst(Integer pixel) {
+		remove(indexOfFirst(pixel));
+	}
+
+	public void removeLast(Integer pixel) {
+		remove(indexOfLast(pixel));
+	}
+
+	public void removeAll(Integer pixel) {
+		// Throws when the pixel is absent
+		indexOfFirst(pixel);
+		int remaining = 0;
+		for (int i = 0; i < length; i++) {
+			if (pixelAt(i) != pixel) {
+				pixels[remaining++] = pixels[i];
+			}
+		}
+		length = remaining;
+		countBoundaries();
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		EditBatch batch = new EditBatch(length);
+		batchRecorder.accept(batch);
+		if (batch.isEmpty()) {
+			return;
+		}
+		RawPixelSequence edited = new RawPixelSequence(new byte[length], 0);
+		batch.applyTo(this, edited::appendRun);
+		pixels = edited.pixels;
+		length = edited.length;
+		boundaries = edited.boundaries;
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	public Integer getAt(Integer index) {
+		return getAtInt(index);
+	}
+
+	public List<Integer> getAll() {
+		return getBetween(0, length);
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		return getBetween(startIndex, length);
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		return getBetween(0, endIndex);
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		assertIsInRange(startIndex, endIndex);
+		List<Integer> pixelList = new ArrayList<Integer>(endIndex - startIndex);
+		for (int i = startIndex; i < endIndex; i++) {
+			pixelList.add(pixelAt(i));
+		}
+		return pixelList;
+	}
+
+	public int getAtInt(int index) {
+		assertIsInBounds(index);
+		return pixelAt(index);
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		int runStart = 0;
+		for (int i = 1; i <= length; i++) {
+			if (i == length || pixels[i] != pixels[runStart]) {
+				runConsumer.accept(pixelAt(runStart), i - runStart);
+				runStart = i;
+			}
+		}
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		if (offset < 0 || offset > dst.length - length) {
+			throw new IndexOutOfBoundsException("Cannot copy " + length + " pixels into an array of length " + dst.length + " at offset " + offset);
+		}
+		System.arraycopy(pixels, 0, dst, offset, length);
+		return length;
+	}
+
+	public IntStream pixels() {
+		return IntStream.range(0, length).map(this::pixelAt);
+	}
+
+	public Integer length() {
+		return length;
+	}
+
+	public int runCount() {
+		return length == 0 ? 0 : boundaries + 1;
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean containsSubsequence(RLESequence sequence) {
+		return RLESearcher.forPattern(sequence).indexIn(this) != UNFOUND_INDEX;
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		int index = RLESearcher.forPattern(sequence).indexIn(this);
+		if (index == UNFOUND_INDEX) {
+			throw new NoSuchElementException("The RLESequence does not contain the given subsequence " + sequence);
+		}
+		return index;
+	}
+
+	public RawPixelSequence subsequenceFrom(Integer startIndex) {
+		return subsequenceBetween(startIndex, length);
+	}
+
+	public RawPixelSequence subsequenceTo(Integer endIndex) {
+		return subsequenceBetween(0, endIndex);
+	}
+
+	public RawPixelSequence subsequenceBetween(Integer startIndex, Integer endIndex) {
+		assertIsInRange(startIndex, endIndex);
+		return new RawPixelSequence(Arrays.copyOfRange(pixels, startIndex, endIndex), endIndex - startIndex);
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> sequence) {
+		byte[] head = bytesOf(sequence);
+		byte[] joined = new byte[head.length + length];
+		System.arraycopy(head, 0, joined, 0, head.length);
+		System.arraycopy(pixels, 0, joined, head.length, length);
+		pixels = joined;
+		length = joined.length;
+		countBoundaries();
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> sequence) {
+		byte[] tail = bytesOf(sequence);
+		ensureCapacity(length + tail.length);
+		System.arraycopy(tail, 0, pixels, length, tail.length);
+		length += tail.length;
+		// Only the boundaries from the old last pixel on can have changed
+		for (int i = length - tail.length; i < length; i++) {
+			boundaries += boundaryBefore(i);
+		}
+	}
+
+	public RawPixelSequence copy() {
+		return new RawPixelSequence(Arrays.copyOf(pixels, length), length);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static byte[] bytesOf(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof PixelRetrievable) {
+			byte[] bytes = new byte[sequence.length().intValue()];
+			((PixelRetrievable)sequence).copyInto(bytes, 0);
+			return bytes;
+		}
+		List<Integer> pixelList = (List<Integer>)sequence.getAll();
+		byte[] bytes = new byte[pixelList.size()];
+		for (int i = 0; i < bytes.length; i++) {
+			Integer pixel = pixelList.get(i);
+			if (pixel < 0 || pixel > 255) {
+				throw new IllegalArgumentException("A pixel to be stored in a RLESSequence must be an integer value from 0 (inclusive) to 255 (inclusive).");
+			}
+			bytes[i] = (byte)(int)pixel;
+		}
+		return bytes;
+	}
+
+	private void appendRun(int pixel, int count) {
+		ensureCapacity(length + count);
+		Arrays.fill(pixels, length, length + count, (byte)pixel);
+		length += count;
+		boundaries += boundaryBefore(length - count);
+	}
+
+	private void ensureCapacity(int minimumCapacity) {
+		if (pixels.length < minimumCapacity) {
+			pixels = Arrays.copyOf(pixels, Math.max(minimumCapacity, Math.max(pixels.length * 2, MINIMUM_CAPACITY)));
+		}
+	}
+
+	// 1 if a run starts at index, that is if the pixels at index - 1 and index both exist and differ, and 0 otherwise
+	private int boundaryBefore(int index) {
+		return index > 0 && index < length && pixels[index] != pixels[index - 1] ? 1 : 0;
+	}
+
+	private int boundariesAround(int index) {
+		return boundaryBefore(index) + boundaryBefore(index + 1);
+	}
+
+	private void countBoundaries() {
+		boundaries = 0;
+		for (int i = 1; i < length; i++) {
+			boundaries += boundaryBefore(i);
+		}
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof RawPixelSequence) {
+			RawPixelSequence anotherRawPixelSequence = (RawPixelSequence)anotherObj;
+			if (length != anotherRawPixelSequence.length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (pixels[i] != anotherRawPixelSequence.pixels[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	// Hashes the length and the runs as RLESequenceV3 does, so AdaptiveRLESequence hashes the same in either form
+	public int hashCode() {
+		int[] hash = {length};
+		forEachRun((pixel, count) -> {
+			hash[0] = 31 * hash[0] + pixel;
+			hash[0] = 31 * hash[0] + count;
+		});
+		return hash[0];
+	}
+
+	public String toString() {
+		if (isEmpty()) {
+			return "[]";
+		}
+		StringBuilder builder = new StringBuilder("[");
+		forEachRun((pixel, count) -> {
+			builder.append("[" + count + " " + pixel + "]");
+			builder.append(" ");
+		});
+		int currentLength = builder.length();
+		builder.replace(currentLength - 1, currentLength, "]");
+		return builder.toString();
+	}
+
+	// Only the first length entries are in use
+	private byte[] pixels;
+	private int length;
+	// Number of neighboring pixel pairs that differ, which is one less than the number of runs
+	private int boundaries;
+
+	private static final int PIXEL_MASK = 0xFF;
+	private static final int MINIMUM_CAPACITY = 8;
+	private static final int UNFOUND_INDEX = -1;
+}
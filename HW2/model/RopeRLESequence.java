@@ -0,0 +1,264 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import func.IntIntConsumer;
+
+/**
+ * A RLESequence built for assembling long sequences out of many pieces, such as stitching tiles into a panorama
+ *
+ * Adding a sequence to the head or the tail only queues a snapshot of its runs as another segment, which costs time in
+ * the runs of the added sequence but none in the length of this one. The segments are joined into one RLESequenceV3,
+ * merging the runs that meet at their boundaries, the first time any other operation needs the pixels, so a sequence
+ * assembled from n pieces of r runs each costs O(n * r) to build and flatten no matter which end each piece went to.
+ */
+public class RopeRLESequence implements RLESequence<Integer, Integer, RopeRLESequence>, PixelRetrievable, BatchEditable {
+
+	public RopeRLESequence() {
+		this(new RLESequenceV3());
+	}
+
+	public RopeRLESequence(Integer... inPixels) {
+		this(new RLESequenceV3(inPixels));
+	}
+
+	public RopeRLESequence(List<Integer> inPixels) {
+		this(new RLESequenceV3(inPixels));
+	}
+
+	private RopeRLESequence(RLESequenceV3 inRuns) {
+		segments = new ArrayDeque<RLESequenceV3>();
+		segments.add(inRuns);
+		length = inRuns.length();
+	}
+
+	/**
+	 * @return how many segments are waiting to be joined, which is 1 once the sequence has been flattened
+	 */
+	public int segmentCount() {
+		return segments.size();
+	}
+
+	// Joins every queued segment into the first one, which only this sequence ever holds
+	private RLESequenceV3 runs() {
+		if (segments.size() > 1) {
+			RLESequenceV3 joined = segments.pollFirst();
+			while (!segments.isEmpty()) {
+				joined.addToTail(segments.pollFirst());
+			}
+			segments.add(joined);
+		}
+		return segments.peekFirst();
+	}
+
+	// Snapshots the pixels of the given sequence, so that later changes to it do not leak into this one
+	@SuppressWarnings("unchecked")
+	private static RLESequenceV3 segmentOf(RLESequence<?, ?, ?> sequence) {
+		if (sequence instanceof PixelRetrievable) {
+			return RLESequenceV3.ofRuns((PixelRetrievable)sequence);
+		}
+		return new RLESequenceV3((List<Integer>)sequence.getAll());
+	}
+
+	// Every mutation goes through the flattened runs, after which only the length needs to be brought up to date
+	private void afterMutation() {
+		length = segments.peekFirst().length();
+	}
+
+	public boolean contains(Integer pixel) {
+		return runs().contains(pixel);
+	}
+
+	public boolean containsAll(Integer... pixels) {
+		return runs().containsAll(pixels);
+	}
+
+	public boolean containsAll(List<Integer> pixels) {
+		return runs().containsAll(pixels);
+	}
+
+	public boolean contains(Integer... pixelSequence) {
+		return runs().contains(pixelSequence);
+	}
+
+	public boolean contains(List<Integer> pixelSequence) {
+		return runs().contains(pixelSequence);
+	}
+
+	public Integer indexOfFirst(Integer pixel) {
+		return runs().indexOfFirst(pixel);
+	}
+
+	public Integer indexOfLast(Integer pixel) {
+		return runs().indexOfLast(pixel);
+	}
+
+	public List<Integer> indexesOf(Integer pixel) {
+		return runs().indexesOf(pixel);
+	}
+
+	public void replaceAt(Integer index, Integer newPixel) {
+		runs().replaceAt(index, newPixel);
+	}
+
+	public void replaceFirst(Integer oldPixel, Integer newPixel) {
+		runs().replaceFirst(oldPixel, newPixel);
+	}
+
+	public void replaceLast(Integer oldPixel, Integer newPixel) {
+		runs().replaceLast(oldPixel, newPixel);
+	}
+
+	public void replaceAll(Integer oldPixel, Integer newPixel) {
+		runs().replaceAll(oldPixel, newPixel);
+	}
+
+	public void insert(Integer newPixel, Integer index) {
+		runs().insert(newPixel, index);
+		afterMutation();
+	}
+
+	public void append(Integer newPixel) {
+		runs().append(newPixel);
+		afterMutation();
+	}
+
+	public void prepend(Integer newPixel) {
+		runs().prepend(newPixel);
+		afterMutation();
+	}
+
+	public void remove(Integer index) {
+		runs().remove(index);
+		afterMutation();
+	}
+
+	public void removeFirst(Integer pixel) {
+		runs().removeFirst(pixel);
+		afterMutation();
+	}
+
+	public void removeLast(Integer pixel) {
+		runs().removeLast(pixel);
+		afterMutation();
+	}
+
+	public void removeAll(Integer pixel) {
+		runs().removeAll(pixel);
+		afterMutation();
+	}
+
+	public void edit(Consumer<EditBatch> batchRecorder) {
+		runs().edit(batchRecorder);
+		afterMutation();
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	public Integer getAt(Integer index) {
+		return runs().getAt(index);
+	}
+
+	public List<Integer> getAll() {
+		return runs().getAll();
+	}
+
+	public List<Integer> getFrom(Integer startIndex) {
+		return runs().getFrom(startIndex);
+	}
+
+	public List<Integer> getTo(Integer endIndex) {
+		return runs().getTo(endIndex);
+	}
+
+	public List<Integer> getBetween(Integer startIndex, Integer endIndex) {
+		return runs().getBetween(startIndex, endIndex);
+	}
+
+	public int getAtInt(int index) {
+		return runs().getAtInt(index);
+	}
+
+	public void forEachRun(IntIntConsumer runConsumer) {
+		runs().forEachRun(runConsumer);
+	}
+
+	public int copyInto(byte[] dst, int offset) {
+		return runs().copyInto(dst, offset);
+	}
+
+	public IntStream pixels() {
+		return runs().pixels();
+	}
+
+	public Integer length() {
+		return length;
+	}
+
+	@SuppressWarnings("rawtypes")
+	public boolean containsSubsequence(RLESequence sequence) {
+		return runs().containsSubsequence(sequence);
+	}
+
+	public Integer indexOfSubsequence(RLESequence<?, ?, ?> sequence) {
+		return runs().indexOfSubsequence(sequence);
+	}
+
+	public RopeRLESequence subsequenceFrom(Integer startIndex) {
+		return new RopeRLESequence(runs().subsequenceFrom(startIndex));
+	}
+
+	public RopeRLESequence subsequenceTo(Integer endIndex) {
+		return new RopeRLESequence(runs().subsequenceTo(endIndex));
+	}
+
+	public RopeRLESequence subsequenceBetween(Integer startIndex, Integer endIndex) {
+		return new RopeRLESequence(runs().subsequenceBetween(startIndex, endIndex));
+	}
+
+	public void addToHead(RLESequence<?, ?, ?> sequence) {
+		RLESequenceV3 head = segmentOf(sequence);
+		if (!head.isEmpty()) {
+			segments.addFirst(head);
+			length += head.length();
+		}
+	}
+
+	public void addToTail(RLESequence<?, ?, ?> sequence) {
+		RLESequenceV3 tail = segmentOf(sequence);
+		if (!tail.isEmpty()) {
+			segments.addLast(tail);
+			length += tail.length();
+		}
+	}
+
+	public RopeRLESequence copy() {
+		return new RopeRLESequence(runs().copy());
+	}
+
+	public boolean equals(Object anotherObj) {
+		if (anotherObj instanceof RopeRLESequence) {
+			RopeRLESequence anotherRopeRLESequence = (RopeRLESequence)anotherObj;
+			return runs().equals(anotherRopeRLESequence.runs());
+		}
+		return false;
+	}
+
+	// Hashes the joined segments' length and runs, as equals compares them
+	public int hashCode() {
+		return runs().hashCode();
+	}
+
+	public String toString() {
+		return runs().toString();
+	}
+
+	// Segments in order from head to tail, never empty, and never shared with another sequence
+	private final ArrayDeque<RLESequenceV3> segments;
+	private int length;
+}
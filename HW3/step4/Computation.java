@@ -1,5 +1,11 @@
 package step4;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * Holds information for a {@link Terminal} computation that can be continuously
  * updated and then observed at any point
@@ -12,6 +18,10 @@ package step4;
  * Updating by passing in an appropriate item of .tsv file, which is an item of
  * just filtered record.
  * 
+ * Computations can also be updated separately over consecutive partitions of
+ * a .tsv file's records, starting from {@link #newPartition()}, and then
+ * combined in order with {@link #merge(Computation)}.
+ * 
  * @author Joseph O'Connor (jgo2115)
  * 
  */
@@ -26,6 +36,9 @@ public class Computation {
 	 */
 	public Computation(Terminal terminal) {
 		this.terminal = terminal;
+		if (terminal == Terminal.STATS) {
+			sketch = new QuantileSketch(SKETCH_ACCURACY);
+		}
 	}
 
 	/**
@@ -45,6 +58,7 @@ public class Computation {
 	 *            An item of a just-filtered record
 	 */
 	public void update(Comparable item, String record) {
+		count++;
 		switch (this.terminal) {
 		case ALLSAME:
 			updateAllsame(item);
@@ -72,6 +86,85 @@ public class Computation {
 		}
 	}
 
+	/**
+	 * Constructs a new Computation for the same {@link Terminal} as this one,
+	 * which has not been updated yet, to be updated over a partition of the
+	 * records and then merged into a Computation updated over the records
+	 * before them
+	 * 
+	 * A partition for {@link Terminal#FIRSTDIFF} also counts each item it is
+	 * updated with after its own rogue item, since any of them could turn out
+	 * to be the rogue item of the records before it.
+	 * 
+	 * @return The new partition Computation
+	 */
+	public Computation newPartition() {
+		Computation partition = new Computation(this.terminal);
+		if (this.terminal == Terminal.FIRSTDIFF) {
+			partition.itemCounts = new TreeMap<>();
+		}
+		return partition;
+	}
+
+	/**
+	 * Progresses the Computation forward as if it had been updated with every
+	 * item the given Computation was updated with, in the same order, after
+	 * every item it was already updated with
+	 * 
+	 * Merging is associative, so consecutive partitions can be merged in any
+	 * grouping as long as their order is kept. For {@link Terminal#FIRSTDIFF},
+	 * the result is exact for items that are not null, which is every item a
+	 * {@link TSVPipeline} updates with.
+	 * 
+	 * @param other
+	 *            A Computation for the same Terminal, updated over the items
+	 *            after those of this Computation. For Terminal.FIRSTDIFF, it
+	 *            must have been made by {@link #newPartition()}
+	 * @throws IllegalArgumentException
+	 *             if other is for a different Terminal, or other is for
+	 *             Terminal.FIRSTDIFF and was not made by newPartition()
+	 */
+	public void merge(Computation other) {
+		assertMergeable(other);
+		switch (this.terminal) {
+		case ALLSAME:
+			mergeAllsame(other);
+			break;
+		case COUNT:
+		case SUM:
+			accumulation += other.accumulation;
+			break;
+		case MIN:
+			updateMin(other.temp);
+			break;
+		case MAX:
+			updateMax(other.temp);
+			break;
+		case FIRSTDIFF:
+			mergeFirstdiff(other);
+			break;
+		case STATS:
+			mergeStats(other);
+			break;
+		default:
+			break;
+		}
+		count += other.count;
+	}
+
+	private void assertMergeable(Computation other) {
+		if (other.terminal != this.terminal) {
+			throw new IllegalArgumentException("A " + other.terminal.name()
+					+ " terminal computation cannot be merged into a "
+					+ this.terminal.name() + " terminal computation");
+		}
+		if (this.terminal == Terminal.FIRSTDIFF && other.itemCounts == null) {
+			throw new IllegalArgumentException(
+					"Only a FIRSTDIFF terminal computation made by "
+							+ "Computation#newPartition() can be merged");
+		}
+	}
+
 	/**
 	 * @return Formatted string representation of the computation at the current
 	 *         moment
@@ -103,13 +196,102 @@ public class Computation {
 		}
 	}
 	
-	// This uses the Naive algorithm linked to in Step 4 of the assignment
+	/**
+	 * @return The average of the items a {@link Terminal#STATS} Computation
+	 *         has been updated with, or NaN if it has not been updated
+	 * @throws IllegalStateException
+	 *             if this Computation is not for Terminal.STATS
+	 */
+	public double getAverage() {
+		assertIsStats();
+		if (count == 0) {
+			return Double.NaN;
+		}
+		BigInteger sum = BigInteger.valueOf(sumHigh).shiftLeft(Long.SIZE)
+				.add(new BigInteger(Long.toUnsignedString(accumulation)));
+		return new BigDecimal(sum).divide(BigDecimal.valueOf(count),
+				MathContext.DECIMAL128).doubleValue();
+	}
+
+	/**
+	 * @return The population standard deviation of the items a
+	 *         {@link Terminal#STATS} Computation has been updated with, or NaN
+	 *         if it has not been updated
+	 * @throws IllegalStateException
+	 *             if this Computation is not for Terminal.STATS
+	 */
+	public double getStandardDeviation() {
+		assertIsStats();
+		return Math.sqrt(m2 / count);
+	}
+
+	/**
+	 * @return The skewness of the items a {@link Terminal#STATS} Computation
+	 *         has been updated with, or NaN if they are all the same
+	 * @throws IllegalStateException
+	 *             if this Computation is not for Terminal.STATS
+	 */
+	public double getSkewness() {
+		assertIsStats();
+		return Math.sqrt(count) * m3 / Math.pow(m2, 1.5);
+	}
+
+	/**
+	 * @return The excess kurtosis of the items a {@link Terminal#STATS}
+	 *         Computation has been updated with, which is 0 for normally
+	 *         distributed items, or NaN if they are all the same
+	 * @throws IllegalStateException
+	 *             if this Computation is not for Terminal.STATS
+	 */
+	public double getKurtosis() {
+		assertIsStats();
+		return count * m4 / (m2 * m2) - 3;
+	}
+
+	/**
+	 * Estimates the item at the given fraction of the way through the items a
+	 * {@link Terminal#STATS} Computation has been updated with, in ascending
+	 * order
+	 * 
+	 * The estimate comes from a sketch of a bounded size, so its rank is only
+	 * within about a percent of the requested one, and merging partitions can
+	 * give a slightly different estimate than updating over the same items.
+	 * 
+	 * @param fraction
+	 *            Between 0 and 1, e.g. 0.99 for the 99th percentile
+	 * @return The estimated item, or NaN if this Computation has not been
+	 *         updated
+	 * @throws IllegalStateException
+	 *             if this Computation is not for Terminal.STATS
+	 * @throws IllegalArgumentException
+	 *             if fraction is not between 0 and 1
+	 */
+	public double getQuantile(double fraction) {
+		assertIsStats();
+		return sketch.quantile(fraction);
+	}
+
+	/**
+	 * @return The estimated median of the items a {@link Terminal#STATS}
+	 *         Computation has been updated with, as by
+	 *         {@link #getQuantile(double)}
+	 * @throws IllegalStateException
+	 *             if this Computation is not for Terminal.STATS
+	 */
+	public double getMedian() {
+		return getQuantile(MEDIAN);
+	}
+
+	private void assertIsStats() {
+		if (this.terminal != Terminal.STATS) {
+			throw new IllegalStateException("A " + this.terminal.name()
+					+ " terminal computation does not compute statistics");
+		}
+	}
+
 	private String statsStatus() {
-		double average = accumulation / count;
-		double variance = ((squaresAccumulation / count) - average * average);
-		double std = Math.sqrt(variance) / count;
 		return String.format(" has a count of %d, an average of %f, and a standard deviation of %f",
-				count, average, std);
+				count, getAverage(), getStandardDeviation());
 	}
 
 	private String firstdiffStatus() {
@@ -141,29 +323,168 @@ public class Computation {
 		}
 	}
 	
+	// Welford's online update of the mean and second central moment, extended
+	// by Terriberry to the third and fourth, where count already includes item.
+	// Items are shifted by the first one, exactly, so that large items close
+	// together keep the precision of their differences
 	private void updateStats(Object item) {
-		count++;
 		assertIsLong(item);
-		long nextVal = Long.parseLong(item.toString());
-		accumulation += nextVal;
-		squaresAccumulation += nextVal * nextVal;
-		
+		long longVal = Long.parseLong(item.toString());
+		addToSum(longVal >> (Long.SIZE - 1), longVal);
+		if (count == 1) {
+			shift = longVal;
+		}
+		double nextVal = differenceOf(longVal, shift);
+		double n = count;
+		double delta = nextVal - mean;
+		double deltaN = delta / n;
+		double deltaN2 = deltaN * deltaN;
+		double term = delta * deltaN * (n - 1);
+		mean += deltaN;
+		m4 += term * deltaN2 * (n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4
+				* deltaN * m3;
+		m3 += term * deltaN * (n - 2) - 3 * deltaN * m2;
+		m2 += term;
+		sketch.update(longVal);
+	}
+
+	// Exact unless the two are so far apart that their difference overflows
+	private static double differenceOf(long value, long anotherValue) {
+		long difference = value - anotherValue;
+		if (((value ^ anotherValue) & (value ^ difference)) < 0) {
+			return (double) value - anotherValue;
+		}
+		return difference;
+	}
+
+	// Adds to the sum of the items as the high and low halves of a 128 bit
+	// number, so that the average is exact however the items are partitioned
+	private void addToSum(long high, long low) {
+		long oldLow = accumulation;
+		accumulation += low;
+		boolean carried = Long.compareUnsigned(accumulation, oldLow) < 0;
+		sumHigh += high + (carried ? 1 : 0);
+	}
+
+	// Chan's pairwise combination of the moments, as extended by Pebay to the
+	// third and fourth, which needs count to be that of this computation alone
+	private void mergeStats(Computation other) {
+		if (other.count == 0) {
+			return;
+		}
+		addToSum(other.sumHigh, other.accumulation);
+		if (count == 0) {
+			shift = other.shift;
+		}
+		double n1 = count;
+		double n2 = other.count;
+		double n = n1 + n2;
+		double delta = other.mean + differenceOf(other.shift, shift) - mean;
+		double delta2 = delta * delta;
+		double weight = n1 * n2 / n;
+		double mergedM4 = m4 + other.m4 + delta2 * delta2 * weight
+				* (n1 * n1 - n1 * n2 + n2 * n2) / (n * n) + 6 * delta2
+				* (n1 * n1 * other.m2 + n2 * n2 * m2) / (n * n) + 4 * delta
+				* (n1 * other.m3 - n2 * m3) / n;
+		double mergedM3 = m3 + other.m3 + delta2 * delta * weight * (n1 - n2)
+				/ n + 3 * delta * (n1 * other.m2 - n2 * m2) / n;
+		m2 += other.m2 + delta2 * weight;
+		m3 = mergedM3;
+		m4 = mergedM4;
+		mean += delta * n2 / n;
+		sketch.merge(other.sketch);
 	}
 
 	private void updateFirstdiff(Comparable item, String record) {
 		if (rogueRecord == null) {
+			if (sameCount == 0) {
+				firstItem = item;
+				firstRecord = record;
+			}
 			if (item == null && temp != null) {
 				rogueRecord = record;
 			} else if (item != null && temp != null
 					&& item.compareTo(temp) != 0) {
 				rogueRecord = record;
 			}
+			if (rogueRecord == null) {
+				sameCount++;
+			} else {
+				countItem(item, 1);
+			}
 			temp = item;
-		} else if (item.compareTo(temp) == 0) {
-			accumulation++;
+		} else {
+			if (item.compareTo(temp) == 0) {
+				accumulation++;
+			}
+			countItem(item, 1);
 		}
 		
 	}
+
+	@SuppressWarnings("rawtypes")
+	private void countItem(Comparable item, long occurrences) {
+		if (itemCounts != null && item != null && occurrences > 0) {
+			itemCounts.merge(item, occurrences, Long::sum);
+		}
+	}
+
+	// Before its rogue item, every item a FIRSTDIFF computation is updated
+	// with is the same as its first, so whether the rogue item of the merged
+	// records is in this computation or other depends on whether other's
+	// first item matches
+	private void mergeFirstdiff(Computation other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			firstItem = other.firstItem;
+			firstRecord = other.firstRecord;
+			sameCount = other.sameCount;
+			rogueRecord = other.rogueRecord;
+			temp = other.temp;
+			accumulation = other.accumulation;
+			countAllItemsOf(other);
+		} else if (rogueRecord == null && isSame(other.firstItem, temp)) {
+			sameCount += other.sameCount;
+			rogueRecord = other.rogueRecord;
+			temp = other.temp;
+			accumulation = other.accumulation;
+			countAllItemsOf(other);
+		} else if (rogueRecord == null) {
+			rogueRecord = other.firstRecord;
+			temp = other.firstItem;
+			accumulation = other.occurrencesOf(other.firstItem) - 1;
+			countItem(other.firstItem, other.sameCount);
+			countAllItemsOf(other);
+		} else {
+			accumulation += other.occurrencesOf(temp);
+			countItem(other.firstItem, other.sameCount);
+			countAllItemsOf(other);
+		}
+	}
+
+	// Counts the items other was updated with from its rogue item on, which
+	// are the only ones it counts
+	private void countAllItemsOf(Computation other) {
+		other.itemCounts.forEach(this::countItem);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private long occurrencesOf(Comparable item) {
+		long occurrences = isSame(item, firstItem) ? sameCount : 0;
+		Long countedOccurrences = item == null ? null : itemCounts.get(item);
+		return occurrences
+				+ (countedOccurrences == null ? 0 : countedOccurrences);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private boolean isSame(Comparable item, Comparable anotherItem) {
+		if (item == null || anotherItem == null) {
+			return item == anotherItem;
+		}
+		return item.compareTo(anotherItem) == 0;
+	}
 	
 	private void updateSum(Object item) {
 		assertIsLong(item);
@@ -211,6 +532,14 @@ public class Computation {
 		accumulation++;
 	}
 
+	private void mergeAllsame(Computation other) {
+		if (!other.allsame) {
+			allsame = false;
+		} else if (other.count > 0) {
+			updateAllsame(other.temp);
+		}
+	}
+
 	private void updateAllsame(Comparable item) {
 		if (allsame) {
 			if (item == null && temp != null) {
@@ -224,16 +553,36 @@ public class Computation {
 		}
 	}
 
-	// Stats
-	private long count = 0;
-	private long squaresAccumulation = 0;
+	// Stats, where mean is that of the items less shift, the first item, m2,
+	// m3 and m4 are the sums of the second, third and fourth powers of the
+	// items' differences from their mean, and sumHigh is the high half of
+	// their sum, whose low half is accumulation
+	private long sumHigh = 0;
+	private long shift = 0;
+	private double mean = 0;
+	private double m2 = 0;
+	private double m3 = 0;
+	private double m4 = 0;
+	private QuantileSketch sketch;
 	// Firstdiff
 	private String rogueRecord;
+	@SuppressWarnings("rawtypes")
+	private Comparable firstItem;
+	private String firstRecord;
+	// The number of items before the rogue item, all the same as firstItem
+	private long sameCount = 0;
+	// For a partition, the occurrences of each item from the rogue item on
+	@SuppressWarnings("rawtypes")
+	private Map<Comparable, Long> itemCounts;
 	// Allsame
 	private boolean allsame = true;
 	// General
+	private long count = 0;
 	private long accumulation = 0;
 	private Comparable temp = null;
 
 	private Terminal terminal;
+
+	private static final int SKETCH_ACCURACY = 200;
+	private static final double MEDIAN = 0.5;
 }
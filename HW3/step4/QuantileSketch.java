@@ -0,0 +1,211 @@
+package step4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates the quantiles of a stream of values in a bounded amount of memory,
+ * following the KLL sketch of Karnin, Lang and Liberty
+ *
+ * Values are kept in levels of compactors, each value at level h standing for
+ * 2^h values of the stream. When the sketch is full, the lowest full level is
+ * sorted and every other value of it is promoted to the level above, so a
+ * sketch never holds more than about 3k values however many it is updated
+ * with. A quantile is then estimated to within a rank error of a small
+ * fraction of the values, shrinking as k grows.
+ *
+ * Which half of a level is promoted alternates, rather than being chosen at
+ * random, so the same updates and merges always give the same estimates.
+ *
+ * @author Joseph O'Connor (jgo2115)
+ *
+ */
+class QuantileSketch {
+
+	/**
+	 * Constructs a new, empty QuantileSketch keeping about k values at its
+	 * highest level
+	 *
+	 * @param k
+	 *            The accuracy of the new sketch, at least 2
+	 */
+	QuantileSketch(int k) {
+		if (k < MIN_CAPACITY) {
+			throw new IllegalArgumentException("A QuantileSketch must keep at "
+					+ "least " + MIN_CAPACITY + " values per level");
+		}
+		this.k = k;
+		addLevel();
+	}
+
+	/**
+	 * @return The number of values this sketch has been updated with
+	 */
+	long count() {
+		return count;
+	}
+
+	/**
+	 * Updates this sketch with the given value
+	 *
+	 * @param value
+	 *            The next value of the stream
+	 */
+	void update(double value) {
+		levels.get(0).add(value);
+		count++;
+		size++;
+		if (size >= maxSize) {
+			compress();
+		}
+	}
+
+	/**
+	 * Updates this sketch as if it had also been updated with every value the
+	 * given sketch was updated with
+	 *
+	 * @param other
+	 *            The sketch to merge into this one, which is left unchanged
+	 */
+	void merge(QuantileSketch other) {
+		while (levels.size() < other.levels.size()) {
+			addLevel();
+		}
+		for (int h = 0; h < other.levels.size(); h++) {
+			levels.get(h).addAll(other.levels.get(h));
+		}
+		count += other.count;
+		size += other.size;
+		while (size >= maxSize) {
+			compress();
+		}
+	}
+
+	/**
+	 * Estimates the value at the given fraction of the way through the values
+	 * this sketch has been updated with, in ascending order
+	 *
+	 * @param fraction
+	 *            Between 0 and 1, e.g. 0.5 for the median
+	 * @return The estimated value, or NaN if this sketch has not been updated
+	 * @throws IllegalArgumentException
+	 *             if fraction is not between 0 and 1
+	 */
+	double quantile(double fraction) {
+		if (!(fraction >= 0 && fraction <= 1)) {
+			throw new IllegalArgumentException("A quantile must be between 0 "
+					+ "and 1, not " + fraction);
+		}
+		if (count == 0) {
+			return Double.NaN;
+		}
+		double[] values = new double[size];
+		long[] weights = new long[size];
+		Integer[] order = new Integer[size];
+		int i = 0;
+		for (int h = 0; h < levels.size(); h++) {
+			Compactor level = levels.get(h);
+			for (int j = 0; j < level.size; j++, i++) {
+				values[i] = level.values[j];
+				weights[i] = 1L << h;
+				order[i] = i;
+			}
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+		long totalWeight = 0;
+		for (long weight : weights) {
+			totalWeight += weight;
+		}
+		double targetWeight = fraction * totalWeight;
+		long cumulativeWeight = 0;
+		for (int index : order) {
+			cumulativeWeight += weights[index];
+			if (cumulativeWeight >= targetWeight) {
+				return values[index];
+			}
+		}
+		return values[order[size - 1]];
+	}
+
+	// Promotes half of the lowest level that is at its capacity, adding a
+	// level on top when the highest one is promoted
+	private void compress() {
+		for (int h = 0; h < levels.size(); h++) {
+			Compactor level = levels.get(h);
+			if (level.size >= capacity(h)) {
+				if (h + 1 == levels.size()) {
+					addLevel();
+				}
+				int sizeBefore = level.size;
+				level.promoteHalfTo(levels.get(h + 1));
+				size -= (sizeBefore - level.size) / 2;
+				return;
+			}
+		}
+	}
+
+	// Lower levels get geometrically smaller capacities, which is what bounds
+	// the whole sketch to about 3k values
+	private int capacity(int h) {
+		int depth = levels.size() - h - 1;
+		return Math.max(MIN_CAPACITY,
+				(int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+	}
+
+	private void addLevel() {
+		levels.add(new Compactor());
+		maxSize = 0;
+		for (int h = 0; h < levels.size(); h++) {
+			maxSize += capacity(h);
+		}
+	}
+
+	// The values at one level of the sketch
+	private static class Compactor {
+
+		void add(double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void addAll(Compactor other) {
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values,
+						Math.max(size + other.size, size * 2));
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		// Leaves behind the last value when there is an odd number of them
+		void promoteHalfTo(Compactor above) {
+			int pairs = size / 2;
+			Arrays.sort(values, 0, pairs * 2);
+			int offset = promoteOdd ? 1 : 0;
+			promoteOdd = !promoteOdd;
+			for (int i = 0; i < pairs; i++) {
+				above.add(values[2 * i + offset]);
+			}
+			values[0] = values[size - 1];
+			size -= pairs * 2;
+		}
+
+		private double[] values = new double[INITIAL_CAPACITY];
+		private int size = 0;
+		private boolean promoteOdd = false;
+	}
+
+	private final List<Compactor> levels = new ArrayList<Compactor>();
+	// The number of values held across all levels, and the number at which
+	// the sketch compresses
+	private int size = 0;
+	private int maxSize;
+	private long count = 0;
+	private final int k;
+
+	private static final int MIN_CAPACITY = 2, INITIAL_CAPACITY = 8;
+	private static final double CAPACITY_DECAY = 2.0 / 3;
+}
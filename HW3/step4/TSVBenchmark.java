@@ -0,0 +1,190 @@
+package step4;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Compares the time {@link TSVRecordReader} takes to tokenize a large
+ * generated .tsv file against the per-character Reader#read() and
+ * String#split(String) tokenizing that {@link TSVPipeline} used before it, and
+ * times {@link TSVPipeline#copyTo(File)} and
+ * {@link TSVPipeline#copyToInParallel(File)} with a filter keeping most records
+ *
+ * Each tokenizer visits every item of every record, checking the long column
+ * as {@link TSVPipeline} would, and each is warmed up before it is timed.
+ *
+ * @author Joseph O'Connor (jgo2115)
+ *
+ */
+public class TSVBenchmark {
+
+	/**
+	 * Entry point for running the benchmark
+	 *
+	 * @param args
+	 *            Optionally, the number of records to generate
+	 * @throws IOException
+	 *             if the generated .tsv file cannot be written or read
+	 */
+	public static void main(String[] args) throws IOException {
+		int recordCount = args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_RECORD_COUNT;
+		File tsvFile = File.createTempFile("benchmark", ".tsv");
+		try {
+			generate(tsvFile, recordCount);
+			System.out.println("Tokenizing " + recordCount + " records ("
+					+ tsvFile.length() / BYTES_PER_MEGABYTE + " MB)...");
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				tokenizeByChar(tsvFile);
+				tokenizeByBlock(tsvFile);
+				copy(tsvFile, false);
+				copy(tsvFile, true);
+			}
+			report("per-char read + split", timeByChar(tsvFile));
+			report("TSVRecordReader", timeByBlock(tsvFile));
+			report("TSVPipeline#copyTo", timeCopy(tsvFile, false));
+			report("TSVPipeline#copyToInParallel", timeCopy(tsvFile, true));
+		} finally {
+			tsvFile.delete();
+		}
+	}
+
+	private static void generate(File tsvFile, int recordCount)
+			throws IOException {
+		Random random = new Random(SEED);
+		try (Writer tsvWriter = new BufferedWriter(new FileWriter(tsvFile))) {
+			tsvWriter.write("Name\tCar\tCity\n");
+			tsvWriter.write("String\tlong\tString\n");
+			for (int i = 0; i < recordCount; i++) {
+				tsvWriter.write(NAMES[random.nextInt(NAMES.length)] + "\t"
+						+ random.nextInt(MAX_CAR) + "\t"
+						+ CITIES[random.nextInt(CITIES.length)] + "\n");
+			}
+		}
+	}
+
+	private static long timeByChar(File tsvFile) throws IOException {
+		long bestNanos = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			long startNanos = System.nanoTime();
+			sink += tokenizeByChar(tsvFile);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+		}
+		return bestNanos;
+	}
+
+	private static long timeByBlock(File tsvFile) throws IOException {
+		long bestNanos = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			long startNanos = System.nanoTime();
+			sink += tokenizeByBlock(tsvFile);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+		}
+		return bestNanos;
+	}
+
+	private static long timeCopy(File tsvFile, boolean inParallel)
+			throws IOException {
+		long bestNanos = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			long startNanos = System.nanoTime();
+			copy(tsvFile, inParallel);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+		}
+		return bestNanos;
+	}
+
+	// Keeps every name but one, so most records pass the filter
+	private static void copy(File tsvFile, boolean inParallel)
+			throws IOException {
+		File destinationTSVFile = File.createTempFile("benchmark", ".tsv");
+		try {
+			TSVFilter filter = new TSVFilter.Builder(tsvFile)
+					.selectAny("Name", "Alice", "Bob", "Carol", "Dave", "Eve",
+							"Mallory", "Oscar", "Peggy", "Trent").done();
+			if (inParallel) {
+				new TSVPipeline(filter).copyToInParallel(destinationTSVFile);
+			} else {
+				new TSVPipeline(filter).copyTo(destinationTSVFile);
+			}
+			sink += destinationTSVFile.length();
+		} finally {
+			destinationTSVFile.delete();
+		}
+	}
+
+	private static void report(String tokenizer, long nanos) {
+		System.out.println(String.format("     %-30s %8d ms", tokenizer, nanos
+				/ NANOS_PER_MILLI));
+	}
+
+	// The tokenizing TSVPipeline did before TSVRecordReader
+	private static long tokenizeByChar(File tsvFile) throws IOException {
+		long longItems = 0;
+		try (Reader tsvReader = new FileReader(tsvFile)) {
+			boolean atEOF = false;
+			while (!atEOF) {
+				StringBuilder recordBuilder = new StringBuilder();
+				int nextCharVal = tsvReader.read();
+				while (nextCharVal != EOF_CHAR_VAL && nextCharVal != '\n') {
+					if (nextCharVal != '\r') {
+						recordBuilder.append((char) nextCharVal);
+					}
+					nextCharVal = tsvReader.read();
+				}
+				atEOF = nextCharVal == EOF_CHAR_VAL;
+				String record = recordBuilder.toString();
+				String[] items = record.trim().equals("") ? new String[0]
+						: record.split("\t");
+				if (items.length == COLUMN_COUNT && isLong(items[LONG_COLUMN])) {
+					longItems++;
+				}
+			}
+		}
+		return longItems;
+	}
+
+	private static boolean isLong(String str) {
+		try {
+			Long.parseLong(str);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	private static long tokenizeByBlock(File tsvFile) throws IOException {
+		long longItems = 0;
+		try (TSVRecordReader tsvReader = new TSVRecordReader(
+				new FileInputStream(tsvFile).getChannel(),
+				Charset.defaultCharset())) {
+			while (tsvReader.nextRecord()) {
+				if (tsvReader.itemCount() == COLUMN_COUNT
+						&& tsvReader.isLongItem(LONG_COLUMN)) {
+					longItems++;
+				}
+			}
+		}
+		return longItems;
+	}
+
+	// Keeps the JIT from discarding the tokenizing as unused
+	private static long sink;
+
+	private static final String[] NAMES = { "Alice", "Bob", "Carol", "Dave",
+			"Eve", "Mallory", "Oscar", "Peggy", "Trent", "Walter" }, CITIES = { "New York", "Boston", "Chicago", "Seattle" };
+	private static final int DEFAULT_RECORD_COUNT = 2000000, MAX_CAR = 1000,
+			COLUMN_COUNT = 3, LONG_COLUMN = 1, WARMUP_RUNS = 2,
+			MEASURED_RUNS = 3, EOF_CHAR_VAL = -1,
+			BYTES_PER_MEGABYTE = 1 << 20;
+	private static final long SEED = 42, NANOS_PER_MILLI = 1000000;
+
+}
@@ -1,16 +1,27 @@
 package step4;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Reader;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Pipeline for copying one .tsv file to one or more destination .tsv file
@@ -18,7 +29,11 @@ import java.util.Map;
  * Given a {@link TSVFilter}, checks the origin .tsv file from the TSVFilter for
  * proper form, filters out any records not matching conditions set by the
  * TSVFilter, and outputs the tab separated data to a destination .tsv file.
- * This is all performed one record at a time.
+ * This is all performed one record at a time, with records read in large
+ * blocks by a {@link TSVRecordReader} so that an item only becomes a String
+ * when a {@link Terminal} computation needs it. Runs of records that are
+ * copied exactly as they were read are written as raw bytes, and long runs
+ * are transferred from file to file without passing through the pipeline.
  * 
  * @author Joseph O'Connor (jgo2115)
  * 
@@ -92,30 +107,339 @@ public class TSVPipeline {
 	 */
 	public void copyTo(File destinationTSVFile) throws FileNotFoundException,
 			IOException {
-		atEOF = false;
-		Reader tsvReader = null;
-		Writer tsvWriter = null;
+		TSVRecordReader tsvReader = null;
+		FileOutputStream tsvFileOutput = null;
+		OutputStream tsvOutput = null;
 		try {
-			tsvReader = new FileReader(filter.getOriginTSVFile());
-			tsvWriter = new PrintWriter(destinationTSVFile);
+			tsvReader = openReader();
+			tsvFileOutput = new FileOutputStream(destinationTSVFile);
+			tsvOutput = new BufferedOutputStream(tsvFileOutput);
+			destinationChannel = tsvFileOutput.getChannel();
 			// .tsv file exists. Otherwise, FileNotFoundException would have
 			// been thrown
 			prepareStream(tsvReader);
 			// .tsv file's header w/ types properly formatted.
-			outputHeader(tsvWriter);
-			while (!atEOF) {
-				copyRecord(tsvReader, tsvWriter);
+			outputHeader(tsvOutput);
+			prepareFilter();
+			while (tsvReader.nextRecord()) {
+				copyRecord(tsvReader, tsvOutput);
 			}
+			flushRun(tsvReader, tsvOutput);
+			tsvOutput.flush();
 			printTerminalComputations();
 		} finally {
 			close(tsvReader);
-			close(tsvWriter);
-			if (!atEOF) {
+			close(tsvOutput);
+			close(tsvFileOutput);
+			originChannel = null;
+			destinationChannel = null;
+			if (tsvReader == null || !tsvReader.isAtEOF()) {
 				destinationTSVFile.delete();
 			}
 		}
 	}
 
+	/**
+	 * Copies the origin .tsv file denoted by the instance's {@link TSVFilter}
+	 * and filtered by the instance's {@link TSVFilter} to the given destination
+	 * .tsv file, just as {@link #copyTo(File)} does, but checking and
+	 * filtering records on every thread of the common {@link ForkJoinPool}
+	 * 
+	 * @param destinationTSVFile
+	 *            The destination .tsv file to which to copy the filtered origin
+	 *            .tsv file
+	 * @throws FileNotFoundException
+	 *             if the argument for destinationTSVFile is not actually .tsv
+	 *             file
+	 * @throws IOException
+	 *             if there is origin .tsv file is not properly formatted or if
+	 *             there is some more general IOException
+	 */
+	public void copyToInParallel(File destinationTSVFile)
+			throws FileNotFoundException, IOException {
+		copyToInParallel(destinationTSVFile, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Copies the origin .tsv file denoted by the instance's {@link TSVFilter}
+	 * and filtered by the instance's {@link TSVFilter} to the given destination
+	 * .tsv file, just as {@link #copyTo(File)} does, but checking and
+	 * filtering records on the threads of the given {@link ForkJoinPool}
+	 * 
+	 * Past its header and types, the origin .tsv file is split into chunks of
+	 * several megabytes that each end in a newline. Each chunk is memory-mapped
+	 * and checked and filtered on its own, updating its own partitions of the
+	 * {@link Terminal} computations. The results of the chunks are then
+	 * written, printed and merged into the computations in the order of the
+	 * chunks, so the destination .tsv file, the output and the computations
+	 * are the same as from {@link #copyTo(File)}. Only a few chunks per thread
+	 * are held in memory at once. In a charset that is not
+	 * ASCII compatible, the copy is made by {@link #copyTo(File)} instead.
+	 * 
+	 * @param destinationTSVFile
+	 *            The destination .tsv file to which to copy the filtered origin
+	 *            .tsv file
+	 * @param pool
+	 *            The ForkJoinPool on which to check and filter the chunks
+	 * @throws FileNotFoundException
+	 *             if the argument for destinationTSVFile is not actually .tsv
+	 *             file
+	 * @throws IOException
+	 *             if there is origin .tsv file is not properly formatted or if
+	 *             there is some more general IOException
+	 */
+	public void copyToInParallel(File destinationTSVFile, ForkJoinPool pool)
+			throws FileNotFoundException, IOException {
+		if (!TSVRecordReader.isASCIICompatible(CHARSET)) {
+			copyTo(destinationTSVFile);
+			return;
+		}
+		boolean copied = false;
+		originReadToEnd = false;
+		FileChannel tsvChannel = null;
+		OutputStream tsvOutput = null;
+		TSVRecordReader headerReader = null;
+		try {
+			tsvChannel = new FileInputStream(filter.getOriginTSVFile())
+					.getChannel();
+			tsvOutput = new FileOutputStream(destinationTSVFile);
+			headerReader = new TSVRecordReader(tsvChannel, CHARSET);
+			prepareStream(headerReader);
+			outputHeader(tsvOutput);
+			prepareFilter();
+			long dataOffset = headerReader.rawOffset()
+					+ headerReader.rawLength();
+			copyChunks(tsvChannel, findChunkBounds(tsvChannel, dataOffset),
+					tsvOutput, pool);
+			copied = true;
+			printTerminalComputations();
+		} finally {
+			close(tsvChannel);
+			close(tsvOutput);
+			// As with copyTo, the destination .tsv file is only kept once the
+			// whole origin .tsv file has been read
+			if (!copied && !originReadToEnd
+					&& (headerReader == null || !headerReader.isAtEOF())) {
+				destinationTSVFile.delete();
+			}
+		}
+	}
+
+	// Every chunk but the last ends just past the first newline at least
+	// CHUNK_LENGTH bytes after it starts
+	private List<Long> findChunkBounds(FileChannel tsvChannel, long dataOffset)
+			throws IOException {
+		List<Long> chunkBounds = new ArrayList<Long>();
+		long size = tsvChannel.size();
+		long chunkStart = dataOffset;
+		chunkBounds.add(chunkStart);
+		ByteBuffer block = ByteBuffer.allocate(BOUND_SCAN_LENGTH);
+		while (chunkStart < size) {
+			long position = chunkStart + CHUNK_LENGTH;
+			long chunkEnd = size;
+			while (position < size) {
+				block.clear();
+				int readCount = tsvChannel.read(block, position);
+				int newlineIndex = indexOf(block.array(), readCount,
+						NEWLINE_BYTE);
+				if (newlineIndex != UNFOUND_INDEX) {
+					chunkEnd = position + newlineIndex + 1;
+					break;
+				}
+				position += readCount;
+			}
+			if (chunkEnd - chunkStart > Integer.MAX_VALUE) {
+				throw new IOException(
+						"A record in the .tsv file is too long to map into memory.");
+			}
+			chunkBounds.add(chunkEnd);
+			chunkStart = chunkEnd;
+		}
+		return chunkBounds;
+	}
+
+	private int indexOf(byte[] bytes, int length, byte target) {
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] == target) {
+				return i;
+			}
+		}
+		return UNFOUND_INDEX;
+	}
+
+	// Keeps up to CHUNKS_PER_THREAD chunks per thread being scanned, and
+	// applies the result of each chunk once every chunk before it is applied
+	private void copyChunks(final FileChannel tsvChannel,
+			List<Long> chunkBounds, OutputStream tsvOutput, ForkJoinPool pool)
+			throws IOException {
+		int maxScanning = pool.getParallelism() * CHUNKS_PER_THREAD;
+		Deque<Future<ChunkResult>> scanning =
+				new ArrayDeque<Future<ChunkResult>>();
+		try {
+			for (int i = 0; i + 1 < chunkBounds.size(); i++) {
+				final long chunkStart = chunkBounds.get(i);
+				final long chunkEnd = chunkBounds.get(i + 1);
+				scanning.add(pool.submit(() -> scanChunk(tsvChannel,
+						chunkStart, chunkEnd)));
+				if (scanning.size() == maxScanning) {
+					applyChunk(awaitChunk(scanning.poll()), tsvOutput);
+				}
+			}
+			while (!scanning.isEmpty()) {
+				applyChunk(awaitChunk(scanning.poll()), tsvOutput);
+			}
+		} finally {
+			for (Future<ChunkResult> chunk : scanning) {
+				chunk.cancel(true);
+			}
+		}
+	}
+
+	private ChunkResult awaitChunk(Future<ChunkResult> chunk)
+			throws IOException {
+		try {
+			return chunk.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while copying the .tsv file.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	// Checks and filters one chunk on a worker thread, updating partitions of
+	// the Terminal computations and leaving System.out to applyChunk. Like
+	// copyTo, it stops at the first record a computation fails on.
+	private ChunkResult scanChunk(FileChannel tsvChannel, long chunkStart,
+			long chunkEnd) throws IOException {
+		ChunkResult result = new ChunkResult(newPartitions());
+		TSVRecordReader chunkReader = new TSVRecordReader(tsvChannel.map(
+				FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart),
+				CHARSET);
+		while (chunkReader.nextRecord()) {
+			if (isProperlyFormatted(chunkReader)) {
+				if (allSatisfyFilter(chunkReader)) {
+					try {
+						updateTerminalConditions(chunkReader, result.partitions);
+					} catch (RuntimeException e) {
+						result.events.add(new ChunkEvent(null, e, chunkReader
+								.isAtEOF()));
+						return result;
+					}
+					chunkReader.writeRecordTo(result.output, CHARSET);
+				}
+			} else if (chunkReader.itemCount() > 0) {
+				result.events.add(new ChunkEvent(toImproperRecordMessage(chunkReader
+						.items()), null, chunkReader.isAtEOF()));
+			}
+		}
+		return result;
+	}
+
+	private Computation[] newPartitions() {
+		Computation[] partitions = new Computation[terminalComputations.length];
+		for (int i = 0; i < partitions.length; i++) {
+			if (terminalComputations[i] != null) {
+				partitions[i] = terminalComputations[i].newPartition();
+			}
+		}
+		return partitions;
+	}
+
+	private void applyChunk(ChunkResult result, OutputStream tsvOutput)
+			throws IOException {
+		for (ChunkEvent event : result.events) {
+			originReadToEnd = event.atEOF;
+			if (event.failure != null) {
+				throw event.failure;
+			}
+			System.out.println(event.message);
+		}
+		for (int i = 0; i < terminalComputations.length; i++) {
+			if (terminalComputations[i] != null) {
+				terminalComputations[i].merge(result.partitions[i]);
+			}
+		}
+		result.output.writeTo(tsvOutput);
+	}
+
+	// The output of one chunk and its partitions of the Terminal computations,
+	// along with what it leaves to print or throw in the order its records
+	// came in
+	private static final class ChunkResult {
+
+		ChunkResult(Computation[] partitions) {
+			this.partitions = partitions;
+		}
+
+		final Computation[] partitions;
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final List<ChunkEvent> events = new ArrayList<ChunkEvent>();
+	}
+
+	// Either the message for an improperly formatted record, or what a
+	// Terminal computation threw for a filtered record
+	private static final class ChunkEvent {
+
+		ChunkEvent(String message, RuntimeException failure, boolean atEOF) {
+			this.message = message;
+			this.failure = failure;
+			this.atEOF = atEOF;
+		}
+
+		final String message;
+		final RuntimeException failure;
+		// Whether the record ran to the end of the origin .tsv file
+		final boolean atEOF;
+	}
+
+	// Reads the bytes of the origin .tsv file straight from its channel when
+	// the charset allows it, keeping the channel to transfer runs from
+	private TSVRecordReader openReader() throws FileNotFoundException {
+		runOffset = 0;
+		runLength = 0;
+		if (!TSVRecordReader.isASCIICompatible(CHARSET)) {
+			return new TSVRecordReader(new FileReader(
+					filter.getOriginTSVFile()));
+		}
+		originChannel = new FileInputStream(filter.getOriginTSVFile())
+				.getChannel();
+		return new TSVRecordReader(originChannel, CHARSET);
+	}
+
+	// Looks up the conditions and terminal computation of every column once,
+	// rather than once per item
+	private void prepareFilter() {
+		conditions = new String[headers.length][];
+		terminalComputations = new Computation[headers.length];
+		for (int i = 0; i < headers.length; i++) {
+			if (filter.hasConditionsFor(headers[i])) {
+				conditions[i] = toConditionStrs(filter
+						.getConditionsFor(headers[i]));
+			}
+			if (filter.hasTerminalComputationFor(headers[i])) {
+				terminalComputations[i] = filter
+						.getTerminalComputationFor(headers[i]);
+			}
+		}
+	}
+
+	private String[] toConditionStrs(List<Object> filters) {
+		String[] conditionStrs = new String[filters.size()];
+		for (int i = 0; i < conditionStrs.length; i++) {
+			conditionStrs[i] = filters.get(i).toString();
+		}
+		return conditionStrs;
+	}
+
 	private void printTerminalComputations() {
 		for (String header : headers) {
 			if (filter.hasTerminalComputationFor(header)) {
@@ -125,50 +449,102 @@ public class TSVPipeline {
 		}
 	}
 
-	private void copyRecord(Reader tsvReader, Writer tsvWriter)
+	private void copyRecord(TSVRecordReader tsvReader, OutputStream tsvOutput)
+			throws IOException {
+		if (isProperlyFormatted(tsvReader)) {
+			outputByFilter(tsvOutput, tsvReader);
+		} else if (tsvReader.itemCount() > 0) {
+			System.out.println(toImproperRecordMessage(tsvReader.items()));
+		}
+	}
+
+	private String toImproperRecordMessage(String[] items) {
+		return "The following record does not contain items that match the "
+				+ "designated types of the second record in the .tsv file: "
+				+ String.join("\\t", items);
+	}
+
+	private void outputByFilter(OutputStream tsvOutput,
+			TSVRecordReader tsvReader) throws IOException {
+		if (allSatisfyFilter(tsvReader)) {
+			updateTerminalConditions(tsvReader, terminalComputations);
+			outputRecord(tsvReader, tsvOutput);
+		}
+	}
+
+	// Verbatim records only extend the current run, which is written once a
+	// record that is not part of it has to be written
+	private void outputRecord(TSVRecordReader tsvReader, OutputStream tsvOutput)
 			throws IOException {
-		String[] items = nextRecordItemStrs(tsvReader);
-		if (isProperlyFormatted(items)) {
-			outputByFilter(tsvWriter, items);
-		} else if (items.length > 0) {
-			System.out
-					.println("The following record does not contain items that match the "
-							+ "designated types of the second record in the .tsv file: "
-							+ String.join("\\t", items));
+		if (originChannel != null && tsvReader.isVerbatim()) {
+			if (runOffset + runLength != tsvReader.rawOffset()) {
+				flushRun(tsvReader, tsvOutput);
+				runOffset = tsvReader.rawOffset();
+			}
+			runLength += tsvReader.rawLength();
+		} else {
+			flushRun(tsvReader, tsvOutput);
+			tsvReader.writeRecordTo(tsvOutput, CHARSET);
 		}
 	}
 
-	private void outputByFilter(Writer tsvWriter, String[] items)
+	// Short runs are usually still buffered by the TSVRecordReader, while
+	// long ones are transferred between the files' channels
+	private void flushRun(TSVRecordReader tsvReader, OutputStream tsvOutput)
 			throws IOException {
-		if (allSatisfyFilter(items)) {
-			updateTerminalConditions(items);
-			outputRecord(items, tsvWriter);
+		if (runLength == 0) {
+			return;
+		}
+		if (runLength >= MIN_TRANSFER_LENGTH
+				|| !tsvReader.writeRawTo(runOffset, (int) runLength, tsvOutput)) {
+			tsvOutput.flush();
+			transferRun();
 		}
+		runLength = 0;
 	}
 
-	private void updateTerminalConditions(String[] items) {	
-		for (int i = 0; i < items.length; i++) {
-			if (filter.hasTerminalComputationFor(headers[i])) {
-				Computation terminalComputation = filter.getTerminalComputationFor(headers[i]);
-				terminalComputation.update(items[i], toRecord(items));
+	private void transferRun() throws IOException {
+		long position = runOffset;
+		long remaining = runLength;
+		while (remaining > 0) {
+			long transferCount = originChannel.transferTo(position, remaining,
+					destinationChannel);
+			if (transferCount == 0) {
+				throw new IOException(
+						"Origin .tsv file was truncated while being copied.");
+			}
+			position += transferCount;
+			remaining -= transferCount;
+		}
+	}
+
+	private void updateTerminalConditions(TSVRecordReader tsvReader,
+			Computation[] computations) {
+		String record = null;
+		for (int i = 0; i < computations.length; i++) {
+			if (computations[i] != null) {
+				if (record == null) {
+					record = tsvReader.record();
+				}
+				computations[i].update(tsvReader.item(i), record);
 			}
 		}
 	}
 
-	private boolean allSatisfyFilter(String[] items) {
-		for (int i = 0; i < items.length; i++) {
-			if (filter.hasConditionsFor(headers[i])
-					&& !isOneOfFilters(headers[i], items[i])) {
+	private boolean allSatisfyFilter(TSVRecordReader tsvReader) {
+		for (int i = 0; i < conditions.length; i++) {
+			if (conditions[i] != null
+					&& !isOneOfFilters(conditions[i], tsvReader, i)) {
 				return false;
 			}
 		}
 		return true;
 	}
 
-	private boolean isOneOfFilters(String header, String item) {
-		List<Object> filters = filter.getConditionsFor(header);
-		for (Object filter : filters) {
-			if (filter.toString().equals(item)) {
+	private boolean isOneOfFilters(String[] conditionStrs,
+			TSVRecordReader tsvReader, int index) {
+		for (String conditionStr : conditionStrs) {
+			if (tsvReader.itemEquals(index, conditionStr)) {
 				return true;
 			}
 		}
@@ -186,9 +562,9 @@ public class TSVPipeline {
 		}
 	}
 
-	private void outputHeader(Writer tsvWriter) throws IOException {
-		outputRecord(headers, tsvWriter);
-		outputRecord(buildTypeNames(), tsvWriter);
+	private void outputHeader(OutputStream tsvOutput) throws IOException {
+		outputRecord(headers, tsvOutput);
+		outputRecord(buildTypeNames(), tsvOutput);
 	}
 
 	private String[] buildTypeNames() throws IOException {
@@ -199,7 +575,7 @@ public class TSVPipeline {
 		return typeNames;
 	}
 
-	private void prepareStream(Reader tsvReader) throws IOException {
+	private void prepareStream(TSVRecordReader tsvReader) throws IOException {
 		headers = nextRecordItemStrs(tsvReader);
 		typeCodes = parseTypes(tsvReader);
 		assertHeaderProperlyFormatted();
@@ -212,46 +588,38 @@ public class TSVPipeline {
 		}
 	}
 
-	private void outputRecord(String[] items, Writer tsvWriter)
+	private void outputRecord(String[] items, OutputStream tsvOutput)
 			throws IOException {
 		String record = toRecord(items);
-		tsvWriter.write(record);
+		tsvOutput.write(record.getBytes(CHARSET));
 	}
 
 	private String toRecord(String[] items) {
 		return String.join(ITEM_DELIMITER, items) + RECORD_DELIMITER;
 	}
 
-	private boolean isProperlyFormatted(String[] items) {
-		if (!isProperLength(items)) {
+	private boolean isProperlyFormatted(TSVRecordReader tsvReader) {
+		if (!isProperLength(tsvReader)) {
 			return false;
 		}
-		for (int i = 0; i < items.length; i++) {
-			if (!isMatchingFormat(items[i], typeCodes[i])) {
+		for (int i = 0; i < typeCodes.length; i++) {
+			if (!isMatchingFormat(tsvReader, i, typeCodes[i])) {
 				return false;
 			}
 		}
 		return true;
 	}
 
-	private boolean isMatchingFormat(String item, byte typeCode) {
-		return typeCode != LONG_TYPE_CODE || isLong(item);
+	private boolean isMatchingFormat(TSVRecordReader tsvReader, int index,
+			byte typeCode) {
+		return typeCode != LONG_TYPE_CODE || tsvReader.isLongItem(index);
 	}
 
-	private boolean isLong(String str) {
-		try {
-			Long.parseLong(str);
-		} catch (NumberFormatException e) {
-			return false;
-		}
-		return true;
+	private boolean isProperLength(TSVRecordReader tsvReader) {
+		return tsvReader.itemCount() == typeCodes.length;
 	}
 
-	private boolean isProperLength(String[] items) {
-		return items.length == typeCodes.length;
-	}
-
-	private byte[] parseTypes(Reader tsvReader) throws IOException {
+	private byte[] parseTypes(TSVRecordReader tsvReader) throws IOException {
 		String[] typeNames = nextRecordItemStrs(tsvReader);
 		return fetchCodes(typeNames);
 	}
@@ -282,53 +650,30 @@ public class TSVPipeline {
 		return TYPE_MAP.get(lowercaseName);
 	}
 
-	private String[] nextRecordItemStrs(Reader tsvReader) throws IOException {
-		String record = nextRecord(tsvReader);
-		return parseItemsStrs(record);
-	}
-
-	private String[] parseItemsStrs(String record) {
-		if (isEmpty(record)) {
+	private String[] nextRecordItemStrs(TSVRecordReader tsvReader)
+			throws IOException {
+		if (!tsvReader.nextRecord()) {
 			return new String[0];
 		}
-		return record.split(ITEM_DELIMITER);
-	}
-
-	private boolean isEmpty(String record) {
-		return record.trim().equals("");
-	}
-
-	private String nextRecord(Reader tsvReader) throws IOException {
-		StringBuilder recordBuilder = new StringBuilder();
-		int nextCharVal = tsvReader.read();
-		while (!isTerminatingChar(nextCharVal)) {
-			if (!isCarrageReturnChar(nextCharVal)) {
-				appendCharOf(nextCharVal, recordBuilder);
-			}
-			nextCharVal = tsvReader.read();
-		}
-		return recordBuilder.toString();
-	}
-
-	private boolean isCarrageReturnChar(int nextCharVal) {
-		return nextCharVal == CARRIAGE_RETURN_CHAR_VAL;
-	}
-
-	private boolean isTerminatingChar(int charVal) {
-		if (charVal == EOF_CHAR_VAL) {
-			atEOF = true;
-		}
-		return atEOF || charVal == NEWLINE_CHAR_VAL;
-	}
-
-	private void appendCharOf(int charVal, StringBuilder builder) {
-		char nextChar = (char) charVal;
-		builder.append(nextChar);
+		return tsvReader.items();
 	}
 
 	private String[] headers;
 	private byte[] typeCodes;
-	private boolean atEOF;
+	// Per column, the conditions as Strings and the terminal computation, or
+	// null where the filter has none
+	private String[][] conditions;
+	private Computation[] terminalComputations;
+	// Whether copyToInParallel has reached the record running to the end of
+	// the origin .tsv file
+	private boolean originReadToEnd;
+	// The origin .tsv file's channel, or null if its bytes cannot be copied as
+	// they were read, and the destination .tsv file's channel
+	private FileChannel originChannel;
+	private FileChannel destinationChannel;
+	// The raw bytes of the accepted records not yet written
+	private long runOffset;
+	private long runLength;
 
 	@SuppressWarnings("serial")
 	private static final Map<String, Byte> TYPE_MAP = new HashMap<String, Byte>() {
@@ -342,9 +687,14 @@ public class TSVPipeline {
 			LONG_TYPE_NAME = "long";
 	private static final byte STRING_TYPE_CODE = 0, LONG_TYPE_CODE = 1;
 
-	private static final int NEWLINE_CHAR_VAL = (int) '\n',
-			CARRIAGE_RETURN_CHAR_VAL = (int) '\r', EOF_CHAR_VAL = -1;
 	private static final String ITEM_DELIMITER = "\t", RECORD_DELIMITER = "\n";
+	// The charset FileReader and PrintWriter use
+	private static final Charset CHARSET = Charset.defaultCharset();
+	private static final long MIN_TRANSFER_LENGTH = 1 << 15,
+			CHUNK_LENGTH = 1 << 23;
+	private static final int CHUNKS_PER_THREAD = 2, BOUND_SCAN_LENGTH = 1 << 13,
+			UNFOUND_INDEX = -1;
+	private static final byte NEWLINE_BYTE = '\n';
 
 	private TSVFilter filter;
 
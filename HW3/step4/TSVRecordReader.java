@@ -0,0 +1,681 @@
+package step4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a .tsv file one at a time, exposing the items of the
+ * current record as slices of a large byte buffer
+ *
+ * Bytes are read in blocks of many kilobytes, and record and item boundaries
+ * are found by scanning each block, so no per-character read call is made and
+ * no String is built for an item unless {@link #item(int)} or {@link #items()}
+ * is called. Items can be compared against Strings and checked for long values
+ * in place, and the current record can be written out straight from the
+ * buffer. Only items holding non-ASCII bytes are ever decoded to compare or
+ * check them.
+ *
+ * Records and items are split exactly as splitting each line on tabs with
+ * {@link String#split(String)} would: every carriage return is dropped, a
+ * record of only whitespace has no items, and empty items at the end of a
+ * record are dropped. The last record is whatever follows the last newline,
+ * even if it is empty.
+ *
+ * @author Joseph O'Connor (jgo2115)
+ *
+ */
+class TSVRecordReader implements Closeable {
+
+	/**
+	 * Constructs a new TSVRecordReader reading records from the given
+	 * {@link Reader}
+	 *
+	 * The characters are encoded to UTF-8 as they are read, so
+	 * {@link #rawOffset()} does not correspond to any position in whatever the
+	 * Reader reads from.
+	 *
+	 * @param reader
+	 *            The Reader from which to read characters, which need not be
+	 *            buffered
+	 */
+	TSVRecordReader(Reader reader) {
+		this(new EncodingChannel(reader), StandardCharsets.UTF_8,
+				DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a new TSVRecordReader reading records from the remaining bytes
+	 * of the given buffer, such as a memory-mapped region of a .tsv file, in
+	 * the given charset
+	 *
+	 * @param bytes
+	 *            The buffer from which to read bytes, starting at the first
+	 *            record, which is read without changing its position
+	 * @param charset
+	 *            The charset of the bytes, which must be ASCII compatible
+	 * @throws IllegalArgumentException
+	 *             if the charset is not ASCII compatible
+	 */
+	TSVRecordReader(ByteBuffer bytes, Charset charset) {
+		this(new ByteBufferChannel(bytes.duplicate()), charset,
+				DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a new TSVRecordReader reading records from the given channel
+	 * of bytes in the given charset
+	 *
+	 * @param channel
+	 *            The channel from which to read bytes, starting at the first
+	 *            record
+	 * @param charset
+	 *            The charset of the bytes, which must be ASCII compatible
+	 * @throws IllegalArgumentException
+	 *             if the charset is not ASCII compatible
+	 */
+	TSVRecordReader(ReadableByteChannel channel, Charset charset) {
+		this(channel, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a new TSVRecordReader reading records from the given channel
+	 * of bytes in the given charset, in blocks of the given size
+	 *
+	 * @param channel
+	 *            The channel from which to read bytes, starting at the first
+	 *            record
+	 * @param charset
+	 *            The charset of the bytes, which must be ASCII compatible
+	 * @param bufferSize
+	 *            The number of bytes to start buffering at once, which grows
+	 *            whenever a single record takes up most of the buffer
+	 * @throws IllegalArgumentException
+	 *             if the charset is not ASCII compatible
+	 */
+	TSVRecordReader(ReadableByteChannel channel, Charset charset,
+			int bufferSize) {
+		if (!isASCIICompatible(charset)) {
+			throw new IllegalArgumentException(
+					"A TSVRecordReader cannot read bytes in the charset "
+							+ charset);
+		}
+		this.channel = channel;
+		this.charset = charset;
+		this.buffer = new byte[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+	}
+
+	/**
+	 * Indicates whether bytes in the given charset can be read by a
+	 * TSVRecordReader
+	 *
+	 * A charset is ASCII compatible if it is UTF-8 or it takes a single byte
+	 * per character and decodes every ASCII byte to the same character, so that
+	 * tabs, newlines and carriage returns can be found without decoding.
+	 *
+	 * @param charset
+	 *            The charset to check
+	 * @return true if the charset is ASCII compatible
+	 */
+	static boolean isASCIICompatible(Charset charset) {
+		if (charset.equals(StandardCharsets.UTF_8)) {
+			return true;
+		}
+		if (!charset.canEncode()
+				|| charset.newEncoder().maxBytesPerChar() != 1) {
+			return false;
+		}
+		byte[] asciiBytes = new byte[ASCII_CHAR_COUNT];
+		for (int i = 0; i < ASCII_CHAR_COUNT; i++) {
+			asciiBytes[i] = (byte) i;
+		}
+		String asciiChars = new String(asciiBytes, charset);
+		if (asciiChars.length() != ASCII_CHAR_COUNT) {
+			return false;
+		}
+		for (int i = 0; i < ASCII_CHAR_COUNT; i++) {
+			if (asciiChars.charAt(i) != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Advances to the next record
+	 *
+	 * @return true if there was another record to advance to, or false once
+	 *         every record has been read
+	 * @throws IOException
+	 *             if the underlying channel cannot be read
+	 */
+	boolean nextRecord() throws IOException {
+		if (afterLastRecord) {
+			itemCount = 0;
+			return false;
+		}
+		recordStart = nextRecordStart;
+		int newlineIndex = indexOfNewline();
+		if (newlineIndex == UNFOUND_INDEX) {
+			// Every record has a newline after it, except the last one
+			recordEnd = limit;
+			nextRecordStart = limit;
+			afterLastRecord = true;
+		} else {
+			recordEnd = newlineIndex;
+			nextRecordStart = newlineIndex + 1;
+		}
+		decodedItems = null;
+		dropCarriageReturns();
+		if (decodedItems == null) {
+			splitItems();
+		}
+		return true;
+	}
+
+	/**
+	 * Indicates whether the underlying channel has been read to its end, which
+	 * happens upon advancing to the last record
+	 *
+	 * @return true if every byte has been read
+	 */
+	boolean isAtEOF() {
+		return atEOF;
+	}
+
+	// Finds the newline ending the current record, reading more blocks
+	// whenever the buffered bytes run out before one is found
+	private int indexOfNewline() throws IOException {
+		int scanFrom = recordStart;
+		while (true) {
+			for (int i = scanFrom; i < limit; i++) {
+				if (buffer[i] == NEWLINE_BYTE) {
+					return i;
+				}
+			}
+			if (atEOF) {
+				return UNFOUND_INDEX;
+			}
+			scanFrom = limit - recordStart;
+			fill();
+			scanFrom += recordStart;
+		}
+	}
+
+	// Moves the current record to the front of the buffer, growing the buffer
+	// if the record takes up most of it, and then reads another block after it
+	private void fill() throws IOException {
+		int recordLength = limit - recordStart;
+		if (recordLength > buffer.length / 2) {
+			buffer = Arrays.copyOfRange(buffer, recordStart, recordStart
+					+ buffer.length * 2);
+		} else if (recordStart > 0) {
+			System.arraycopy(buffer, recordStart, buffer, 0, recordLength);
+		}
+		bufferOffset += recordStart;
+		recordStart = 0;
+		limit = recordLength;
+		int readCount = channel.read(ByteBuffer.wrap(buffer, limit,
+				buffer.length - limit));
+		if (readCount == EOF_BYTE_VAL) {
+			atEOF = true;
+		} else {
+			limit += readCount;
+		}
+	}
+
+	// Carriage returns are rare, so the record is only compacted when one is
+	// actually found in it. Whether the record is all ASCII is found along the
+	// way.
+	private void dropCarriageReturns() {
+		int writeIndex = recordStart;
+		int highBits = 0;
+		while (writeIndex < recordEnd
+				&& buffer[writeIndex] != CARRIAGE_RETURN_BYTE) {
+			highBits |= buffer[writeIndex];
+			writeIndex++;
+		}
+		if (writeIndex < recordEnd && charset.equals(StandardCharsets.UTF_8)
+				&& (highBits < 0 || hasNonASCII(writeIndex, recordEnd))) {
+			decodeItems();
+			return;
+		}
+		for (int readIndex = writeIndex; readIndex < recordEnd; readIndex++) {
+			byte nextByte = buffer[readIndex];
+			if (nextByte != CARRIAGE_RETURN_BYTE) {
+				highBits |= nextByte;
+				buffer[writeIndex++] = nextByte;
+			}
+		}
+		recordEnd = writeIndex;
+		ascii = highBits >= 0;
+	}
+
+	private boolean hasNonASCII(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Dropping a carriage return from between the bytes of a malformed UTF-8
+	// character can make them decode differently, so a record with both is
+	// decoded before dropping them, just as a Reader would
+	private void decodeItems() {
+		ascii = false;
+		String record = new String(buffer, recordStart, recordEnd
+				- recordStart, charset).replace(CARRIAGE_RETURN_STR, "");
+		decodedItems = record.trim().equals("") ? new String[0] : record
+				.split(ITEM_DELIMITER_STR);
+		itemCount = decodedItems.length;
+	}
+
+	private void splitItems() {
+		itemCount = 0;
+		if (isBlank()) {
+			return;
+		}
+		int itemStart = recordStart;
+		for (int i = recordStart; i < recordEnd; i++) {
+			if (buffer[i] == ITEM_DELIMITER_BYTE) {
+				addItem(itemStart, i);
+				itemStart = i + 1;
+			}
+		}
+		addItem(itemStart, recordEnd);
+		// String#split drops every empty item at the end of the record
+		while (itemCount > 0
+				&& itemStarts[itemCount - 1] == itemEnds[itemCount - 1]) {
+			itemCount--;
+		}
+	}
+
+	// The same test as String#trim().equals(""), as every non-ASCII byte is
+	// part of a character above ' '
+	private boolean isBlank() {
+		for (int i = recordStart; i < recordEnd; i++) {
+			if (buffer[i] > ' ' || buffer[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addItem(int start, int end) {
+		if (itemCount == itemStarts.length) {
+			itemStarts = Arrays.copyOf(itemStarts, itemCount * 2);
+			itemEnds = Arrays.copyOf(itemEnds, itemCount * 2);
+		}
+		itemStarts[itemCount] = start;
+		itemEnds[itemCount] = end;
+		itemCount++;
+	}
+
+	/**
+	 * @return The number of items in the current record
+	 */
+	int itemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * Builds a String of one item of the current record
+	 *
+	 * @param index
+	 *            The index of the item, from 0 to {@link #itemCount()}
+	 *            (exclusive)
+	 * @return The item at the given index
+	 */
+	String item(int index) {
+		if (decodedItems != null) {
+			return decodedItems[index];
+		}
+		return new String(buffer, itemStarts[index], itemEnds[index]
+				- itemStarts[index], charset);
+	}
+
+	/**
+	 * @return Every item of the current record, as String#split would have
+	 *         returned them
+	 */
+	String[] items() {
+		String[] items = new String[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			items[i] = item(i);
+		}
+		return items;
+	}
+
+	/**
+	 * Compares one item of the current record against a String, only building
+	 * a String of the item if it holds non-ASCII bytes
+	 *
+	 * @param index
+	 *            The index of the item, from 0 to {@link #itemCount()}
+	 *            (exclusive)
+	 * @param str
+	 *            The String to compare the item against
+	 * @return true if the item has exactly the characters of str
+	 */
+	boolean itemEquals(int index, String str) {
+		if (decodedItems != null) {
+			return decodedItems[index].equals(str);
+		}
+		int start = itemStarts[index];
+		int length = itemEnds[index] - start;
+		// Every ASCII byte before the first non-ASCII one is a character of its
+		// own, so a mismatch among them is a mismatch of the decoded item
+		for (int i = 0; i < length; i++) {
+			byte nextByte = buffer[start + i];
+			if (nextByte < 0) {
+				return item(index).equals(str);
+			}
+			if (i == str.length() || nextByte != str.charAt(i)) {
+				return false;
+			}
+		}
+		return length == str.length();
+	}
+
+	/**
+	 * Checks whether one item of the current record is a long value, only
+	 * building a String of the item if it holds non-ASCII bytes
+	 *
+	 * Accepts exactly what {@link Long#parseLong(String)} accepts, using the
+	 * same overflow checks.
+	 *
+	 * @param index
+	 *            The index of the item, from 0 to {@link #itemCount()}
+	 *            (exclusive)
+	 * @return true if the item can be parsed as a long
+	 */
+	boolean isLongItem(int index) {
+		if (decodedItems != null) {
+			return isLong(decodedItems[index]);
+		}
+		int i = itemStarts[index];
+		int end = itemEnds[index];
+		if (i == end) {
+			return false;
+		}
+		long limit = -Long.MAX_VALUE;
+		byte firstByte = buffer[i];
+		if (firstByte >= 0 && firstByte < '0') {
+			if (firstByte == '-') {
+				limit = Long.MIN_VALUE;
+			} else if (firstByte != '+') {
+				return false;
+			}
+			if (end - i == 1) {
+				return false;
+			}
+			i++;
+		}
+		long multiplicationLimit = limit / RADIX;
+		long result = 0;
+		while (i < end) {
+			byte nextByte = buffer[i++];
+			if (nextByte < 0) {
+				// Long#parseLong also accepts digits outside of ASCII
+				return isLong(item(index));
+			}
+			int digit = Character.digit((char) nextByte, RADIX);
+			if (digit < 0 || result < multiplicationLimit) {
+				return false;
+			}
+			result *= RADIX;
+			if (result < limit + digit) {
+				return false;
+			}
+			result -= digit;
+		}
+		return true;
+	}
+
+	private boolean isLong(String str) {
+		try {
+			Long.parseLong(str);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The current record as its items joined by tabs and followed by a
+	 *         newline
+	 */
+	String record() {
+		if (decodedItems != null) {
+			return String.join(ITEM_DELIMITER_STR, decodedItems)
+					+ (char) NEWLINE_BYTE;
+		}
+		return new String(buffer, recordStart, joinedLength(), charset)
+				+ (char) NEWLINE_BYTE;
+	}
+
+	/**
+	 * Writes the current record, as its items joined by tabs and followed by a
+	 * newline, in the given charset
+	 *
+	 * The bytes are written straight from the buffer when the record is all
+	 * ASCII and the charsets match, and are otherwise decoded and re-encoded.
+	 *
+	 * @param out
+	 *            The OutputStream to which to write the record
+	 * @param outputCharset
+	 *            The charset in which to write the record
+	 * @throws IOException
+	 *             if the OutputStream cannot be written to
+	 */
+	void writeRecordTo(OutputStream out, Charset outputCharset)
+			throws IOException {
+		if (ascii && outputCharset.equals(charset)) {
+			out.write(buffer, recordStart, joinedLength());
+			out.write(NEWLINE_BYTE);
+		} else {
+			out.write(record().getBytes(outputCharset));
+		}
+	}
+
+	// With carriage returns and trailing empty items gone, the joined items
+	// are exactly the bytes from the first item to the end of the last
+	private int joinedLength() {
+		return itemCount == 0 ? 0 : itemEnds[itemCount - 1] - recordStart;
+	}
+
+	/**
+	 * Indicates whether the raw bytes of the current record, from
+	 * {@link #rawOffset()} through its newline, are exactly the bytes
+	 * {@link #writeRecordTo(OutputStream, Charset)} would write in this
+	 * reader's charset
+	 *
+	 * This holds for any record that is all ASCII, ends in a newline, and had
+	 * no carriage returns or empty items dropped from it.
+	 *
+	 * @return true if the raw bytes of the current record can be copied as is
+	 */
+	boolean isVerbatim() {
+		return ascii && !afterLastRecord
+				&& rawLength() == joinedLength() + 1;
+	}
+
+	/**
+	 * @return The offset of the current record's first byte from the first
+	 *         byte the underlying channel read
+	 */
+	long rawOffset() {
+		return bufferOffset + recordStart;
+	}
+
+	/**
+	 * @return The number of raw bytes in the current record, including its
+	 *         newline
+	 */
+	int rawLength() {
+		return nextRecordStart - recordStart;
+	}
+
+	/**
+	 * Writes raw bytes that are still buffered, as they were read
+	 *
+	 * Bytes of records that were {@link #isVerbatim()} stay as they were read
+	 * until the buffer moves past them.
+	 *
+	 * @param offset
+	 *            The offset of the first byte to write, as from
+	 *            {@link #rawOffset()}
+	 * @param length
+	 *            The number of bytes to write
+	 * @param out
+	 *            The OutputStream to which to write the bytes
+	 * @return true if the bytes were written, or false if some are no longer
+	 *         buffered
+	 * @throws IOException
+	 *             if the OutputStream cannot be written to
+	 */
+	boolean writeRawTo(long offset, int length, OutputStream out)
+			throws IOException {
+		if (offset < bufferOffset || offset + length > bufferOffset + limit) {
+			return false;
+		}
+		out.write(buffer, (int) (offset - bufferOffset), length);
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// Encodes the characters of a Reader to UTF-8 as they are read
+	private static final class EncodingChannel implements ReadableByteChannel {
+
+		EncodingChannel(Reader reader) {
+			this.reader = reader;
+			chars.flip();
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			int start = dst.position();
+			while (!flushed && dst.hasRemaining()) {
+				CoderResult result = encoder.encode(chars, dst, endOfInput);
+				if (result.isOverflow()) {
+					break;
+				}
+				if (endOfInput) {
+					if (encoder.flush(dst).isOverflow()) {
+						break;
+					}
+					flushed = true;
+				} else {
+					chars.compact();
+					endOfInput = reader.read(chars) == EOF_BYTE_VAL;
+					chars.flip();
+				}
+			}
+			int readCount = dst.position() - start;
+			return readCount == 0 && flushed ? EOF_BYTE_VAL : readCount;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return !closed;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			reader.close();
+		}
+
+		private final Reader reader;
+		private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8
+				.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private boolean endOfInput;
+		private boolean flushed;
+		private boolean closed;
+	}
+
+	// Reads the remaining bytes of a buffer
+	private static final class ByteBufferChannel implements
+			ReadableByteChannel {
+
+		ByteBufferChannel(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!bytes.hasRemaining()) {
+				return EOF_BYTE_VAL;
+			}
+			int readCount = Math.min(bytes.remaining(), dst.remaining());
+			ByteBuffer block = bytes.duplicate();
+			block.limit(block.position() + readCount);
+			dst.put(block);
+			bytes.position(bytes.position() + readCount);
+			return readCount;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return !closed;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		private final ByteBuffer bytes;
+		private boolean closed;
+	}
+
+	private final ReadableByteChannel channel;
+	private final Charset charset;
+	private byte[] buffer;
+	// Bytes from 0 to limit (exclusive) have been read into the buffer, and
+	// bufferOffset bytes were read before the first of them
+	private long bufferOffset;
+	private int limit;
+	private boolean atEOF;
+	private boolean afterLastRecord;
+
+	// The current record, without its newline
+	private int recordStart;
+	private int recordEnd;
+	private int nextRecordStart;
+	private boolean ascii;
+	// The items of the current record if it had to be decoded as a whole, or
+	// null if they are slices of the buffer
+	private String[] decodedItems;
+
+	private int[] itemStarts = new int[INITIAL_ITEM_CAPACITY];
+	private int[] itemEnds = new int[INITIAL_ITEM_CAPACITY];
+	private int itemCount;
+
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 16,
+			MIN_BUFFER_SIZE = 16, CHAR_BUFFER_SIZE = 1 << 13,
+			INITIAL_ITEM_CAPACITY = 16, UNFOUND_INDEX = -1, EOF_BYTE_VAL = -1,
+			RADIX = 10, ASCII_CHAR_COUNT = 128;
+	private static final byte NEWLINE_BYTE = '\n',
+			CARRIAGE_RETURN_BYTE = '\r', ITEM_DELIMITER_BYTE = '\t';
+	private static final String CARRIAGE_RETURN_STR = "\r",
+			ITEM_DELIMITER_STR = "\t";
+}
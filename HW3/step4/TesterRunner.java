@@ -1,13 +1,25 @@
 package step4;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Tests {@link TSVPipeline} and {@link TSVFilter} against several happy cases
  * and unhappy cases targeted at {@link TSVFilter.Builder} and {@link TSVFilter}
  * terminal computation with {@link Terminal}
  * 
+ * Also tests that {@link TSVPipeline#copyToInParallel(File)} and
+ * {@link Computation#merge(Computation)} agree with a single pass, against a
+ * generated .tsv file spanning several chunks that needs no "tsvFiles" folder,
+ * and the statistics of {@link Terminal#STATS} against known values.
+ * 
  * *** In order to run the tests yourself: The .tsv files used for the different
  * tests are located in the included "tsvFiles" folder. Reassign BASE_URL to the
  * full URL of the "tsvFiles" directory.
@@ -30,6 +42,8 @@ public class TesterRunner {
 	 */
 	public static void main(String[] args) {
 		testTerminalComputations();
+		testParallelComputations();
+		testStatsComputations();
 	}
 
 	private static void testTerminalComputations() {
@@ -308,6 +322,376 @@ public class TesterRunner {
 		}
 	}
 
+	private static void testParallelComputations() {
+		System.out.println("Testing parallel computations...");
+		testParallelHappyCases();
+		testParallelUnhappyCases();
+	}
+
+	private static void testParallelUnhappyCases() {
+		System.out
+				.println("     Testing unhappy cases of merging terminal computations...");
+		System.out
+				.println("           Testing merging a max terminal computation into a min terminal computation...");
+		try {
+			new Computation(Terminal.MIN).merge(new Computation(Terminal.MAX));
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out
+				.println("           Testing merging a firstdiff terminal computation not made by newPartition()...");
+		try {
+			new Computation(Terminal.FIRSTDIFF).merge(new Computation(
+					Terminal.FIRSTDIFF));
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out
+				.println("           Testing sum terminal computation on String column in parallel...");
+		File tsvFile = null;
+		File destinationTSVFile = null;
+		try {
+			tsvFile = generateMultiChunkTSVFile();
+			destinationTSVFile = File.createTempFile("parallel", ".tsv");
+			TSVFilter filter = new TSVFilter.Builder(tsvFile).compute("Name",
+					Terminal.SUM).done();
+			new TSVPipeline(filter).copyToInParallel(destinationTSVFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (NumberFormatException e) {
+			System.out.println("NumberFormatException correctly thrown");
+		} finally {
+			deleteIfMade(tsvFile);
+			deleteIfMade(destinationTSVFile);
+		}
+	}
+
+	private static void testParallelHappyCases() {
+		System.out
+				.println("     Testing happy cases of merging terminal computations...");
+		testMergeAllTerminals();
+		testMergeFirstdiffRogueItemStartingPartition();
+		testMergeFirstdiffRogueItemEndingPartition();
+		testPipelineInParallelMatchesCopyTo();
+	}
+
+	private static void testMergeAllTerminals() {
+		System.out
+				.println("           Testing every terminal computation merged from partitions against a single pass...");
+		String[] items = { "4", "4", "-2", "9", "4", "-2", "7", "4" };
+		for (Terminal terminal : Terminal.values()) {
+			printComparison(terminal.name() + " statuses",
+					computeInOnePass(terminal, items).status(),
+					computeInPartitions(terminal, items, 3, 4, 7).status());
+		}
+	}
+
+	private static void testMergeFirstdiffRogueItemStartingPartition() {
+		System.out
+				.println("           Testing a firstdiff terminal computation whose rogue item starts a partition...");
+		String[] items = { "7", "7", "7", "9", "7", "9", "9" };
+		printComparison("FIRSTDIFF statuses",
+				computeInOnePass(Terminal.FIRSTDIFF, items).status(),
+				computeInPartitions(Terminal.FIRSTDIFF, items, 3).status());
+	}
+
+	private static void testMergeFirstdiffRogueItemEndingPartition() {
+		System.out
+				.println("           Testing a firstdiff terminal computation whose rogue item ends a partition...");
+		String[] items = { "7", "7", "9", "9", "7", "9", "9" };
+		printComparison("FIRSTDIFF statuses",
+				computeInOnePass(Terminal.FIRSTDIFF, items).status(),
+				computeInPartitions(Terminal.FIRSTDIFF, items, 3, 5).status());
+	}
+
+	private static void testPipelineInParallelMatchesCopyTo() {
+		System.out
+				.println("           Testing copyToInParallel against copyTo over a .tsv file spanning several chunks,"
+						+ " whose firstdiff rogue item is past the first chunk...");
+		File tsvFile = null;
+		File destinationTSVFile = null;
+		File parallelDestinationTSVFile = null;
+		try {
+			tsvFile = generateMultiChunkTSVFile();
+			destinationTSVFile = File.createTempFile("parallel", ".tsv");
+			parallelDestinationTSVFile = File.createTempFile("parallel", ".tsv");
+			TSVFilter filter = new TSVFilter.Builder(tsvFile)
+					.selectAny("Name", "Alice", "Bob", "Carol")
+					.compute("Car", Terminal.SUM).compute("Name", Terminal.MAX)
+					.compute("City", Terminal.FIRSTDIFF).done();
+			TSVFilter parallelFilter = new TSVFilter.Builder(tsvFile)
+					.selectAny("Name", "Alice", "Bob", "Carol")
+					.compute("Car", Terminal.SUM).compute("Name", Terminal.MAX)
+					.compute("City", Terminal.FIRSTDIFF).done();
+			new TSVPipeline(filter).copyTo(destinationTSVFile);
+			new TSVPipeline(parallelFilter)
+					.copyToInParallel(parallelDestinationTSVFile);
+			for (String header : new String[] { "Name", "Car", "City" }) {
+				printComparison(header + " statuses", filter
+						.getTerminalComputationFor(header).status(),
+						parallelFilter.getTerminalComputationFor(header)
+								.status());
+			}
+			if (Arrays.equals(Files.readAllBytes(destinationTSVFile.toPath()),
+					Files.readAllBytes(parallelDestinationTSVFile.toPath()))) {
+				System.out.println("Copied .tsv files correctly match");
+			} else {
+				System.out.println("Copied .tsv files do not match");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			deleteIfMade(tsvFile);
+			deleteIfMade(destinationTSVFile);
+			deleteIfMade(parallelDestinationTSVFile);
+		}
+	}
+
+	private static void testStatsComputations() {
+		System.out.println("Testing stats computations...");
+		testStatsHappyCases();
+		testStatsUnhappyCases();
+	}
+
+	private static void testStatsUnhappyCases() {
+		System.out
+				.println("     Testing unhappy cases of stats computations...");
+		System.out
+				.println("           Testing the median of a count terminal computation...");
+		try {
+			computeInOnePass(Terminal.COUNT, KNOWN_STATS_ITEMS).getMedian();
+		} catch (IllegalStateException e) {
+			System.out.println("IllegalStateException correctly thrown");
+		}
+		System.out
+				.println("           Testing a quantile past the largest item...");
+		try {
+			computeInOnePass(Terminal.STATS, KNOWN_STATS_ITEMS).getQuantile(1.5);
+		} catch (IllegalArgumentException e) {
+			System.out.println("IllegalArgumentException correctly thrown");
+		}
+		System.out
+				.println("           Testing stats terminal computation on a String item...");
+		try {
+			computeInOnePass(Terminal.STATS, new String[] { "4", "Alice" });
+		} catch (NumberFormatException e) {
+			System.out.println("NumberFormatException correctly thrown");
+		}
+	}
+
+	private static void testStatsHappyCases() {
+		System.out
+				.println("     Testing happy cases of stats computations...");
+		testStatsKnownMoments();
+		testStatsKnownMomentsOfLargeItems();
+		testStatsExactQuantiles();
+		testStatsSketchedQuantiles();
+		testPipelineInParallelStats();
+	}
+
+	private static void testStatsKnownMoments() {
+		System.out
+				.println("           Testing the moments of items with a mean of 5 and a standard deviation of 2,"
+						+ " in one pass and merged from partitions...");
+		for (Computation computation : new Computation[] {
+				computeInOnePass(Terminal.STATS, KNOWN_STATS_ITEMS),
+				computeInPartitions(Terminal.STATS, KNOWN_STATS_ITEMS, 3, 5) }) {
+			printComparison("Statuses", KNOWN_STATS_STATUS, computation.status());
+			printComparison("Skewnesses", KNOWN_SKEWNESS,
+					String.format("%f", computation.getSkewness()));
+			printComparison("Kurtoses", KNOWN_KURTOSIS,
+					String.format("%f", computation.getKurtosis()));
+		}
+	}
+
+	// The same items shifted by a trillion, whose squares would overflow a
+	// long sum of squares
+	private static void testStatsKnownMomentsOfLargeItems() {
+		System.out
+				.println("           Testing the moments of the same items plus a trillion...");
+		String[] items = new String[KNOWN_STATS_ITEMS.length];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = Long.toString(Long.parseLong(KNOWN_STATS_ITEMS[i])
+					+ LARGE_ITEM_SHIFT);
+		}
+		for (Computation computation : new Computation[] {
+				computeInOnePass(Terminal.STATS, items),
+				computeInPartitions(Terminal.STATS, items, 3, 5) }) {
+			printComparison("Statuses", " has a count of 8, an average of "
+					+ "1000000000005.000000, and a standard deviation of "
+					+ "2.000000", computation.status());
+			printComparison("Skewnesses", KNOWN_SKEWNESS,
+					String.format("%f", computation.getSkewness()));
+		}
+	}
+
+	private static void testStatsExactQuantiles() {
+		System.out
+				.println("           Testing the median and 99th percentile of 1 to 100, few enough to be kept exactly...");
+		Computation computation = computeInPartitions(Terminal.STATS,
+				shuffledRange(EXACT_QUANTILE_ITEM_COUNT), 40);
+		printComparison("Medians", "50.0",
+				Double.toString(computation.getMedian()));
+		printComparison("99th percentiles", "99.0",
+				Double.toString(computation.getQuantile(P99)));
+	}
+
+	private static void testStatsSketchedQuantiles() {
+		System.out
+				.println("           Testing the median and 99th percentile of 1 to 1000000, merged from partitions...");
+		String[] items = shuffledRange(SKETCHED_QUANTILE_ITEM_COUNT);
+		int[] partitionStarts = new int[SKETCHED_QUANTILE_PARTITION_COUNT - 1];
+		for (int i = 0; i < partitionStarts.length; i++) {
+			partitionStarts[i] = (i + 1) * items.length
+					/ SKETCHED_QUANTILE_PARTITION_COUNT;
+		}
+		Computation computation = computeInPartitions(Terminal.STATS, items,
+				partitionStarts);
+		double rankTolerance = SKETCH_RANK_TOLERANCE * items.length;
+		printWithinTolerance("Median", items.length * 0.5,
+				computation.getMedian(), rankTolerance);
+		printWithinTolerance("99th percentile", items.length * P99,
+				computation.getQuantile(P99), rankTolerance);
+	}
+
+	private static void testPipelineInParallelStats() {
+		System.out
+				.println("           Testing stats terminal computation with copyToInParallel against copyTo...");
+		File tsvFile = null;
+		File destinationTSVFile = null;
+		try {
+			tsvFile = generateMultiChunkTSVFile();
+			destinationTSVFile = File.createTempFile("parallel", ".tsv");
+			TSVFilter filter = new TSVFilter.Builder(tsvFile).compute("Car",
+					Terminal.STATS).done();
+			TSVFilter parallelFilter = new TSVFilter.Builder(tsvFile).compute(
+					"Car", Terminal.STATS).done();
+			new TSVPipeline(filter).copyTo(destinationTSVFile);
+			new TSVPipeline(parallelFilter).copyToInParallel(destinationTSVFile);
+			Computation computation = filter.getTerminalComputationFor("Car");
+			Computation parallelComputation = parallelFilter
+					.getTerminalComputationFor("Car");
+			printComparison("Averages",
+					Double.toString(computation.getAverage()),
+					Double.toString(parallelComputation.getAverage()));
+			printWithinTolerance("Standard deviation",
+					computation.getStandardDeviation(),
+					parallelComputation.getStandardDeviation(),
+					MERGED_MOMENT_TOLERANCE);
+			printWithinTolerance("Kurtosis", computation.getKurtosis(),
+					parallelComputation.getKurtosis(), MERGED_MOMENT_TOLERANCE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			deleteIfMade(tsvFile);
+			deleteIfMade(destinationTSVFile);
+		}
+	}
+
+	private static String[] shuffledRange(int itemCount) {
+		String[] items = new String[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			items[i] = Integer.toString(i + 1);
+		}
+		Random random = new Random(SEED);
+		for (int i = itemCount - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			String item = items[i];
+			items[i] = items[j];
+			items[j] = item;
+		}
+		return items;
+	}
+
+	private static void printWithinTolerance(String description,
+			double expected, double actual, double tolerance) {
+		if (Math.abs(expected - actual) <= tolerance) {
+			System.out.println(description + " correctly within " + tolerance
+					+ " of " + expected);
+		} else {
+			System.out.println(description + " is not within " + tolerance
+					+ " of " + expected + ": got " + actual);
+		}
+	}
+
+	private static Computation computeInOnePass(Terminal terminal,
+			String[] items) {
+		Computation computation = new Computation(terminal);
+		for (int i = 0; i < items.length; i++) {
+			computation.update(items[i], "record " + i);
+		}
+		return computation;
+	}
+
+	// Updates a partition for each run of items before, between and after
+	// the given indexes, then merges them in order
+	private static Computation computeInPartitions(Terminal terminal,
+			String[] items, int... partitionStarts) {
+		Computation computation = new Computation(terminal);
+		int start = 0;
+		for (int i = 0; i <= partitionStarts.length; i++) {
+			int end = i < partitionStarts.length ? partitionStarts[i]
+					: items.length;
+			Computation partition = computation.newPartition();
+			for (int j = start; j < end; j++) {
+				partition.update(items[j], "record " + j);
+			}
+			computation.merge(partition);
+			start = end;
+		}
+		return computation;
+	}
+
+	private static void printComparison(String description, String expected,
+			String actual) {
+		if (expected.equals(actual)) {
+			System.out.println(description + " correctly match");
+		} else {
+			System.out.println(description + " do not match: expected"
+					+ expected + " but got" + actual);
+		}
+	}
+
+	// Every record before the middle has the same city, so the firstdiff
+	// rogue item is past the first chunk
+	private static File generateMultiChunkTSVFile() throws IOException {
+		File tsvFile = File.createTempFile("parallel", ".tsv");
+		Random random = new Random(SEED);
+		try (Writer tsvWriter = new BufferedWriter(new FileWriter(tsvFile))) {
+			tsvWriter.write("Name\tCar\tCity\n");
+			tsvWriter.write("String\tlong\tString\n");
+			for (int i = 0; i < PARALLEL_RECORD_COUNT; i++) {
+				String city = i < PARALLEL_RECORD_COUNT / 2 ? CITIES[0]
+						: CITIES[random.nextInt(CITIES.length)];
+				tsvWriter.write(NAMES[random.nextInt(NAMES.length)] + "\t"
+						+ random.nextInt(MAX_CAR) + "\t" + city + "\n");
+			}
+		}
+		return tsvFile;
+	}
+
+	private static void deleteIfMade(File file) {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	private static final String[] NAMES = { "Alice", "Bob", "Carol", "Dave",
+			"Eve" }, CITIES = { "Boston", "Chicago", "Seattle" };
+	// Enough records, at about 20 bytes each, to span three chunks
+	private static final int PARALLEL_RECORD_COUNT = 1000000, MAX_CAR = 1000;
+	private static final long SEED = 42, LARGE_ITEM_SHIFT = 1000000000000L;
+	private static final String[] KNOWN_STATS_ITEMS = { "2", "4", "4", "4",
+			"5", "5", "7", "9" };
+	private static final String KNOWN_STATS_STATUS = " has a count of 8, an "
+			+ "average of 5.000000, and a standard deviation of 2.000000",
+			KNOWN_SKEWNESS = "0.656250", KNOWN_KURTOSIS = "-0.218750";
+	private static final int EXACT_QUANTILE_ITEM_COUNT = 100,
+			SKETCHED_QUANTILE_ITEM_COUNT = 1000000,
+			SKETCHED_QUANTILE_PARTITION_COUNT = 10;
+	// The sketch keeps estimates within about a percent of the right rank
+	private static final double P99 = 0.99, SKETCH_RANK_TOLERANCE = 0.01,
+			MERGED_MOMENT_TOLERANCE = 1e-9;
 	private static final String EXAMPLE_NAME = "example.tsv",
 			EXAMPLE_ALLSAME_DESTINATION_NAME = "exampleD4Allsame.tsv",
 			EXAMPLE_COUNT_DESTINATION_NAME = "exampleD4Count.tsv",